@@ -0,0 +1,428 @@
+package examples.solid.srp;
+
+/**
+ * Cache de leitura por email com filtro de Bloom na frente do UserRepository
+ * Cenário: picos de cadastro em que quase toda checagem de email duplicado
+ * é de um email novo e, sem cache, vira uma ida ao banco
+ */
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+// Filtro de Bloom de emails: "não está" é definitivo, "talvez esteja" precisa do banco.
+// Dimensionado pelo número esperado de emails e pela taxa de falso positivo desejada;
+// acima do esperado a taxa real sobe. add é lock-free e pode rodar junto com mightContain.
+class EmailBloomFilter {
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashCount;
+
+    public EmailBloomFilter(long expectedEmails, double falsePositiveRate) {
+        if (expectedEmails <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("expectedEmails > 0 e 0 < falsePositiveRate < 1");
+        }
+        // m = -n ln p / (ln 2)², k = m/n ln 2
+        long bits = (long) Math.ceil(-expectedEmails * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        long wordCount = Math.max(1, (bits + 63) / 64);
+        if (wordCount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Filtro grande demais: " + bits + " bits");
+        }
+        this.words = new AtomicLongArray((int) wordCount);
+        this.bitCount = wordCount * 64;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedEmails * Math.log(2)));
+    }
+
+    public void add(String normalizedEmail) {
+        long hash = hash64(normalizedEmail);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = words.get(word);
+            // Bit já ligado: evita o CAS e a escrita na linha de cache compartilhada
+            while ((current & mask) == 0 && !words.weakCompareAndSetVolatile(word, current, current | mask)) {
+                current = words.get(word);
+            }
+        }
+    }
+
+    public boolean mightContain(String normalizedEmail) {
+        long hash = hash64(normalizedEmail);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getBitCount() { return bitCount; }
+    public int getHashCount() { return hashCount; }
+
+    // FNV-1a sobre os chars, finalizado com o mix do MurmurHash3 para espalhar os bits altos
+    static long hash64(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
+
+// Decorator: mesma interface, então o UserService não muda.
+// findByEmail consulta primeiro o cache de usuários encontrados; se não estiver lá e o
+// filtro de Bloom disser que o email nunca foi salvo, responde null sem ir ao banco.
+// save e saveAll alimentam o filtro e o cache depois de gravar no repositório real.
+//
+// O filtro só conhece o que passou por este decorator: até seed receber os emails já
+// existentes no banco (por exemplo, de um export), toda consulta que não está no cache
+// vai ao banco, e um email existente nunca é dado como novo.
+// O cache de positivos é dividido em segmentos LRU, cada um com o próprio lock, e cada
+// entrada expira depois do TTL para refletir alterações feitas fora deste processo.
+class CachingUserRepository implements UserRepository {
+    private static final int SEGMENTS = 16;
+
+    private final UserRepository delegate;
+    private final EmailBloomFilter bloomFilter;
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    // O filtro só responde "não está" depois de conhecer os emails do banco
+    private volatile boolean seeded;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder bloomRejections = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    public CachingUserRepository(UserRepository delegate, long expectedEmails, double falsePositiveRate,
+                                 int maxCachedUsers, java.time.Duration ttl) {
+        this(delegate, expectedEmails, falsePositiveRate, maxCachedUsers, ttl, System::nanoTime);
+    }
+
+    CachingUserRepository(UserRepository delegate, long expectedEmails, double falsePositiveRate,
+                          int maxCachedUsers, java.time.Duration ttl, LongSupplier clock) {
+        if (maxCachedUsers < SEGMENTS) {
+            throw new IllegalArgumentException("maxCachedUsers deve ser pelo menos " + SEGMENTS);
+        }
+        this.delegate = delegate;
+        this.bloomFilter = new EmailBloomFilter(expectedEmails, falsePositiveRate);
+        this.ttlNanos = ttl.toNanos();
+        this.clock = clock;
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(maxCachedUsers / SEGMENTS);
+        }
+    }
+
+    // Carrega os emails existentes e passa a usar o filtro; chamar de novo só acrescenta
+    public void seed(Iterable<String> existingEmails) {
+        for (String email : existingEmails) {
+            markExisting(email);
+        }
+        seeded = true;
+    }
+
+    // Email gravado no banco por fora deste decorator
+    public void markExisting(String email) {
+        bloomFilter.add(UserValidator.normalizeEmail(email));
+    }
+
+    public boolean isSeeded() {
+        return seeded;
+    }
+
+    // O email entra no filtro antes da gravação: se entrasse depois, um findByEmail
+    // concorrente receberia "não está" definitivo e dois cadastros iguais passariam.
+    // Uma gravação que falha deixa só bits a mais, ou seja, um falso positivo.
+    @Override
+    public void save(User user) {
+        addToFilter(user);
+        delegate.save(user);
+        remember(user);
+    }
+
+    @Override
+    public void saveAll(List<User> users) {
+        for (User user : users) {
+            addToFilter(user);
+        }
+        try {
+            delegate.saveAll(users);
+        } catch (PartialBatchException partial) {
+            // Os do início foram salvos e podem ir para o cache
+            users.subList(0, partial.getCompleted()).forEach(this::remember);
+            throw partial;
+        }
+        for (User user : users) {
+            remember(user);
+        }
+    }
+
+    @Override
+    public User findByEmail(String email) {
+        if (email == null) {
+            return delegate.findByEmail(null);
+        }
+        String key = UserValidator.normalizeEmail(email);
+        User cached = segmentFor(key).get(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        boolean filtered = seeded;
+        if (filtered && !bloomFilter.mightContain(key)) {
+            bloomRejections.increment();
+            return null;
+        }
+        loads.increment();
+        User user = delegate.findByEmail(email);
+        if (user == null) {
+            if (filtered) {
+                falsePositives.increment();
+            }
+        } else {
+            segmentFor(key).put(key, user);
+        }
+        return user;
+    }
+
+    // Para quando o usuário foi alterado ou removido por fora deste decorator
+    public void invalidate(String email) {
+        String key = UserValidator.normalizeEmail(email);
+        segmentFor(key).remove(key);
+    }
+
+    // Encontrados no cache, sem ir ao banco
+    public long getHitCount() { return hits.sum(); }
+    // Emails que o filtro garantiu serem novos, sem ir ao banco
+    public long getBloomRejectionCount() { return bloomRejections.sum(); }
+    // Consultas que foram ao banco
+    public long getLoadCount() { return loads.sum(); }
+    // Foram ao banco porque o filtro disse "talvez" e o email não existia
+    public long getFalsePositiveCount() { return falsePositives.sum(); }
+    public long getEvictionCount() { return evictions.sum(); }
+    public long getExpirationCount() { return expirations.sum(); }
+
+    // Fração das consultas respondida sem ir ao banco
+    public double getOffloadRate() {
+        long answered = hits.sum() + bloomRejections.sum();
+        long total = answered + loads.sum();
+        return total == 0 ? 0 : (double) answered / total;
+    }
+
+    // Falsos positivos entre as consultas de emails que não existiam
+    public double getObservedFalsePositiveRate() {
+        long absent = bloomRejections.sum() + falsePositives.sum();
+        return absent == 0 ? 0 : (double) falsePositives.sum() / absent;
+    }
+
+    public int getCachedUserCount() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("cache: %d acertos, %d rejeitados pelo filtro, %d idas ao banco "
+                + "(%d falsos positivos, %.3f%%), %.1f%% sem banco, %d despejos, %d expirados",
+            getHitCount(), getBloomRejectionCount(), getLoadCount(), getFalsePositiveCount(),
+            getObservedFalsePositiveRate() * 100, getOffloadRate() * 100, getEvictionCount(), getExpirationCount());
+    }
+
+    private void addToFilter(User user) {
+        if (user.getEmail() != null) {
+            bloomFilter.add(UserValidator.normalizeEmail(user.getEmail()));
+        }
+    }
+
+    // Só o cache positivo: o filtro já foi atualizado antes da gravação
+    private void remember(User user) {
+        if (user.getEmail() == null) {
+            return;
+        }
+        String key = UserValidator.normalizeEmail(user.getEmail());
+        segmentFor(key).put(key, user);
+    }
+
+    private Segment segmentFor(String key) {
+        int h = key.hashCode();
+        return segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    private static final class Entry {
+        final User user;
+        final long expiresAt;
+
+        Entry(User user, long expiresAt) {
+            this.user = user;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final class Segment {
+        private final int capacity;
+        private final ReentrantLock lock = new ReentrantLock();
+        // accessOrder = true: a iteração começa pelo menos usado recentemente
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+        }
+
+        User get(String key) {
+            lock.lock();
+            try {
+                Entry entry = entries.get(key);
+                if (entry == null) {
+                    return null;
+                }
+                if (clock.getAsLong() - entry.expiresAt >= 0) {
+                    entries.remove(key);
+                    expirations.increment();
+                    return null;
+                }
+                return entry.user;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void put(String key, User user) {
+            lock.lock();
+            try {
+                entries.put(key, new Entry(user, clock.getAsLong() + ttlNanos));
+                var iterator = entries.values().iterator();
+                while (entries.size() > capacity) {
+                    iterator.next();
+                    iterator.remove();
+                    evictions.increment();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void remove(String key) {
+            lock.lock();
+            try {
+                entries.remove(key);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int size() {
+            lock.lock();
+            try {
+                return entries.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
+
+// Verificação: pico de cadastro com 1 milhão de usuários existentes e 95% de emails novos
+// Uso: CachingUserRepositoryCheck [existentes] [consultas]
+class CachingUserRepositoryCheck {
+    public static void main(String[] args) throws InterruptedException {
+        int existing = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+
+        // Banco simulado: conta as consultas que chegam até ele
+        java.util.Map<String, User> table = new java.util.concurrent.ConcurrentHashMap<>();
+        LongAdder databaseReads = new LongAdder();
+        UserRepository database = new UserRepository() {
+            @Override
+            public void save(User user) {
+                table.put(UserValidator.normalizeEmail(user.getEmail()), user);
+            }
+
+            @Override
+            public User findByEmail(String email) {
+                databaseReads.increment();
+                return table.get(UserValidator.normalizeEmail(email));
+            }
+        };
+        for (int i = 0; i < existing; i++) {
+            database.save(new User("Usuário " + i, "user" + i + "@example.com", "senha123"));
+        }
+
+        long[] now = {0};
+        CachingUserRepository cache = new CachingUserRepository(database, existing * 2L, 0.01,
+            100_000, java.time.Duration.ofMinutes(10), () -> now[0]);
+        // Antes do seed, um email existente que não está no cache vai ao banco
+        check(cache.findByEmail("user7@example.com") != null && databaseReads.sum() == 1, "sem seed");
+        check(cache.findByEmail("antes-do-seed@example.com") == null && databaseReads.sum() == 2, "novo sem seed");
+        cache.seed(table.keySet());
+
+        // Emails existentes, em caixa diferente, são achados; novos são rejeitados
+        check(cache.findByEmail("USER42@example.com ") != null, "existente não encontrado");
+        check(cache.findByEmail("novo@example.com") == null, "novo encontrado");
+        User saved = new User("Nova", "Nova@Example.com", "senha123");
+        cache.save(saved);
+        long readsBefore = databaseReads.sum();
+        check(cache.findByEmail("nova@example.com") == saved, "recém-salvo fora do cache");
+        check(databaseReads.sum() == readsBefore, "recém-salvo foi ao banco");
+        // TTL: depois de expirar, volta ao banco
+        now[0] += java.time.Duration.ofMinutes(11).toNanos();
+        check(cache.findByEmail("nova@example.com") == saved && databaseReads.sum() == readsBefore + 1, "TTL");
+
+        // Pico concorrente: 95% emails novos, 5% existentes concentrados em poucos usuários
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<Thread> workers = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int seed = t;
+            workers.add(Thread.ofPlatform().start(() -> {
+                java.util.Random random = new java.util.Random(seed);
+                for (int i = 0; i < lookups / threads; i++) {
+                    if (random.nextInt(100) < 5) {
+                        cache.findByEmail("user" + random.nextInt(50_000) + "@example.com");
+                    } else {
+                        cache.findByEmail("signup" + seed + "-" + i + "@example.com");
+                    }
+                }
+            }));
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        check(cache.getObservedFalsePositiveRate() < 0.02, "falsos positivos acima do configurado");
+        check(cache.getOffloadRate() > 0.9, "pouca carga tirada do banco");
+        check(cache.getCachedUserCount() <= 100_000, "cache acima do limite");
+        System.out.printf("%d consultas em %d ms com %d threads; %d chegaram ao banco%n",
+            lookups, elapsedMillis, threads, databaseReads.sum());
+        System.out.println(cache);
+        System.out.println("OK");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,813 @@
+package examples.solid.srp;
+
+/**
+ * UserRepository embutido com índices em memória, snapshot e log de alterações
+ * Cenário: camada de cache e testes em escala de produção, com milhões de
+ * usuários recarregados em segundos depois de um reinício
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+// Estado gravado de um usuário; imutável, então leitores nunca veem um registro pela metade.
+// Sem senha: ela não fica em memória nem vai para o log ou o snapshot
+final class StoredUser {
+    final long id;
+    final String name;
+    final String email;
+
+    StoredUser(long id, String name, String email) {
+        this.id = id;
+        this.name = name;
+        this.email = email;
+    }
+
+    User toUser() {
+        User user = new User(name, email, null);
+        user.setId(id);
+        return user;
+    }
+}
+
+// Mapa id -> StoredUser com endereçamento aberto sobre long[] (sem boxing).
+// Um escritor por vez (o repositório segura o lock); leituras sem lock: o valor é
+// publicado com release antes da chave, e o leitor lê a chave com acquire antes do valor.
+// No crescimento, a tabela nova é montada inteira e publicada numa escrita volatile.
+final class UserIdIndex {
+    private static final VarHandle KEYS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle VALUES = MethodHandles.arrayElementVarHandle(StoredUser[].class);
+
+    private static final class Table {
+        final long[] keys;
+        final StoredUser[] values;
+
+        Table(int capacity) {
+            keys = new long[capacity];
+            values = new StoredUser[capacity];
+        }
+    }
+
+    private volatile Table table;
+    private volatile int size;
+
+    // Dimensionado para expectedSize sem crescer; a recarga de um snapshot não paga rehash
+    UserIdIndex(int expectedSize) {
+        int capacity = Integer.highestOneBit((int) Math.min(1 << 30, Math.max(1024, expectedSize * 10L / 6 + 1)) * 2 - 1);
+        table = new Table(capacity);
+    }
+
+    StoredUser get(long id) {
+        Table current = table;
+        int mask = current.keys.length - 1;
+        for (int i = mix(id) & mask; ; i = (i + 1) & mask) {
+            long key = (long) KEYS.getAcquire(current.keys, i);
+            if (key == id) {
+                return (StoredUser) VALUES.getAcquire(current.values, i);
+            }
+            if (key == 0) {
+                return null;
+            }
+        }
+    }
+
+    // Só o escritor; ids começam em 1 (0 marca posição vazia)
+    StoredUser put(StoredUser user) {
+        Table current = table;
+        if ((size + 1) * 10L > current.keys.length * 6L) {
+            current = grow(current);
+        }
+        int mask = current.keys.length - 1;
+        for (int i = mix(user.id) & mask; ; i = (i + 1) & mask) {
+            long key = current.keys[i];
+            if (key == user.id) {
+                StoredUser previous = current.values[i];
+                VALUES.setRelease(current.values, i, user);
+                return previous;
+            }
+            if (key == 0) {
+                VALUES.setRelease(current.values, i, user);
+                KEYS.setRelease(current.keys, i, user.id);
+                size++;
+                return null;
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Visão do momento: entradas gravadas depois podem ou não aparecer
+    void forEach(Consumer<StoredUser> action) {
+        Table current = table;
+        for (int i = 0; i < current.keys.length; i++) {
+            if ((long) KEYS.getAcquire(current.keys, i) != 0) {
+                action.accept((StoredUser) VALUES.getAcquire(current.values, i));
+            }
+        }
+    }
+
+    private Table grow(Table current) {
+        Table bigger = new Table(current.keys.length * 2);
+        int mask = bigger.keys.length - 1;
+        for (int i = 0; i < current.keys.length; i++) {
+            long key = current.keys[i];
+            if (key != 0) {
+                int j = mix(key) & mask;
+                while (bigger.keys[j] != 0) {
+                    j = (j + 1) & mask;
+                }
+                bigger.keys[j] = key;
+                bigger.values[j] = current.values[i];
+            }
+        }
+        table = bigger;
+        return bigger;
+    }
+
+    private static int mix(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
+
+// Escrita sequencial num arquivo mapeado em janelas: quando o registro não cabe no
+// resto da janela, uma nova janela é mapeada a partir da posição atual
+final class MappedFileWriter implements AutoCloseable {
+    static final int WINDOW_BYTES = 64 << 20;
+
+    private final FileChannel channel;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long position;
+
+    MappedFileWriter(Path file, long startPosition) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.position = startPosition;
+        remap(0);
+    }
+
+    long position() {
+        return position;
+    }
+
+    MappedByteBuffer ensure(int bytes) throws IOException {
+        if (position + bytes > windowStart + window.capacity()) {
+            remap(bytes);
+        }
+        window.position((int) (position - windowStart));
+        return window;
+    }
+
+    void advance(int bytes) {
+        position += bytes;
+    }
+
+    void force() {
+        window.force();
+    }
+
+    // Para snapshots: corta o espaço reservado além do último registro
+    void truncateToPosition() throws IOException {
+        window.force();
+        window = null;
+        channel.truncate(position);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (window != null) {
+            window.force();
+        }
+        channel.close();
+    }
+
+    private void remap(int atLeast) throws IOException {
+        if (window != null) {
+            window.force();
+        }
+        windowStart = position;
+        window = channel.map(FileChannel.MapMode.READ_WRITE, position, Math.max(WINDOW_BYTES, atLeast));
+    }
+}
+
+// Repositório embutido:
+// - ids de uma sequência atômica, atribuídos em save quando o usuário ainda não tem id
+// - índice primário por id (UserIdIndex) e índice por email normalizado (ConcurrentHashMap),
+//   ambos lidos sem lock; escritas passam por um lock único, que também garante email único
+// - cada escrita vai para o log de alterações log-<geração>.bin, mapeado em memória
+// - snapshot() grava todos os usuários em snapshot-<geração>.bin e apaga logs e snapshots
+//   anteriores; roda junto com as escritas, que continuam indo para a geração nova
+//
+// Na abertura, carrega o snapshot mais recente, reaplica os logs a partir dele e continua
+// gravando no fim do último log. O log sobrevive à queda do processo (as páginas mapeadas
+// já estão no kernel); para sobreviver à queda da máquina, chame flush() ou use
+// startPeriodicSnapshots.
+//
+// A senha não é guardada, como no outbox: os usuários lidos voltam com senha null, e quem
+// autentica mantém o hash em outro lugar.
+class EmbeddedUserRepository implements UserRepository, AutoCloseable {
+    private static final int SNAPSHOT_MAGIC = 0x55535232; // "USR2": registros sem senha
+    private static final int SNAPSHOT_HEADER_BYTES = 4 + 8 + 8 + 8 + 4;
+    private static final int LOG_HEADER_BYTES = 8;
+
+    private final Path directory;
+    private final UserIdIndex byId;
+    private final ConcurrentHashMap<String, Long> byEmail;
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+    private MappedFileWriter log;
+    private long logGeneration;
+
+    private ScheduledExecutorService snapshotter;
+    private ScheduledFuture<?> periodicSnapshot;
+
+    public EmbeddedUserRepository(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        TreeMap<Long, Path> snapshots = new TreeMap<>();
+        TreeMap<Long, Path> logs = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.bin")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long generation = Long.parseLong(name.substring(name.indexOf('-') + 1, name.length() - 4));
+                (name.startsWith("snapshot-") ? snapshots : logs).put(generation, file);
+            }
+        }
+        int expected = snapshots.isEmpty() ? 0 : (int) Math.min(Integer.MAX_VALUE / 2, snapshotCount(snapshots.lastEntry().getValue()));
+        byId = new UserIdIndex(expected);
+        byEmail = new ConcurrentHashMap<>(Math.max(16, expected * 4 / 3 + 1));
+
+        long fromGeneration = 0;
+        if (!snapshots.isEmpty()) {
+            fromGeneration = snapshots.lastKey();
+            loadSnapshot(snapshots.lastEntry().getValue());
+        }
+        long validEnd = 0;
+        for (Path file : logs.tailMap(fromGeneration, true).values()) {
+            validEnd = replayLog(file);
+        }
+        if (!logs.isEmpty() && logs.lastKey() >= fromGeneration) {
+            // Continua o último log; o que vem depois do último registro válido (uma escrita
+            // interrompida) é cortado para não ser lido como continuação dos registros novos
+            logGeneration = logs.lastKey();
+            try (FileChannel channel = FileChannel.open(logFile(logGeneration), StandardOpenOption.WRITE)) {
+                channel.truncate(validEnd);
+            }
+        } else {
+            logGeneration = fromGeneration + 1;
+            validEnd = 0;
+        }
+        log = new MappedFileWriter(logFile(logGeneration), validEnd);
+    }
+
+    @Override
+    public void save(User user) {
+        saveAll(List.of(user));
+    }
+
+    // O lote inteiro sob um lock; se falta um email, o id informado não é positivo (0 marca
+    // posição vazia no índice) ou o email já pertence a outro usuário, nada do lote é gravado.
+    // Falha de disco no meio do lote vira PartialBatchException com os já gravados; o usuário
+    // que falhou fica sem id novo
+    @Override
+    public void saveAll(List<User> users) {
+        writeLock.lock();
+        try {
+            Map<String, User> batchEmails = users.size() > 1 ? new HashMap<>() : null;
+            String[] emails = new String[users.size()];
+            for (int i = 0; i < users.size(); i++) {
+                User user = users.get(i);
+                if (user == null || user.getEmail() == null) {
+                    throw new IllegalArgumentException("Usuário sem email na posição " + i + " do lote");
+                }
+                if (user.getId() != null && user.getId() <= 0) {
+                    throw new IllegalArgumentException("Id inválido na posição " + i + " do lote: " + user.getId());
+                }
+                String email = UserValidator.normalizeEmail(user.getEmail());
+                emails[i] = email;
+                Long owner = byEmail.get(email);
+                boolean takenInBatch = batchEmails != null && batchEmails.putIfAbsent(email, user) != null;
+                if (takenInBatch || (owner != null && !owner.equals(user.getId()))) {
+                    throw new IllegalStateException("Email já cadastrado: " + user.getEmail());
+                }
+            }
+            for (int i = 0; i < users.size(); i++) {
+                User user = users.get(i);
+                // Sob o lock só este escritor avança a sequência: o id só é consumido
+                // (e entregue ao usuário) depois que o registro está no log
+                long id = user.getId() == null ? sequence.get() + 1 : user.getId();
+                StoredUser stored = new StoredUser(id, user.getName(), user.getEmail());
+                try {
+                    appendToLog(stored);
+                } catch (IOException e) {
+                    // Os anteriores já estão no log e nos índices
+                    UncheckedIOException failure = new UncheckedIOException("Falha ao gravar no log de usuários", e);
+                    throw i == 0 ? failure : new PartialBatchException(i, failure);
+                }
+                sequence.accumulateAndGet(id, Math::max);
+                user.setId(id);
+                apply(stored, emails[i]);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public User findByEmail(String email) {
+        if (email == null) {
+            return null;
+        }
+        Long id = byEmail.get(UserValidator.normalizeEmail(email));
+        return id == null ? null : findById(id);
+    }
+
+    public User findById(long id) {
+        StoredUser stored = byId.get(id);
+        return stored == null ? null : stored.toUser();
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    // Força as páginas do log atual para o disco
+    public void flush() {
+        writeLock.lock();
+        try {
+            log.force();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Grava um snapshot completo sem bloquear escritas por mais que a troca de log
+    public void snapshot() throws IOException {
+        snapshotLock.lock();
+        try {
+            long generation;
+            long maxId;
+            writeLock.lock();
+            try {
+                log.close();
+                generation = ++logGeneration;
+                log = new MappedFileWriter(logFile(generation), 0);
+                maxId = sequence.get();
+            } finally {
+                writeLock.unlock();
+            }
+
+            // O que mudar durante a cópia também está no log novo, e reaplicar é idempotente
+            Path temporary = directory.resolve("snapshot-" + generation + ".tmp");
+            Files.deleteIfExists(temporary);
+            long[] count = new long[1];
+            CRC32 crc = new CRC32();
+            try (MappedFileWriter writer = new MappedFileWriter(temporary, SNAPSHOT_HEADER_BYTES)) {
+                IOException[] failure = new IOException[1];
+                byId.forEach(user -> {
+                    if (failure[0] != null) {
+                        return;
+                    }
+                    try {
+                        MappedByteBuffer buffer = writer.ensure(recordLength(user));
+                        int start = buffer.position();
+                        writeRecord(buffer, user);
+                        crc.update(buffer.slice(start, buffer.position() - start));
+                        writer.advance(buffer.position() - start);
+                        count[0]++;
+                    } catch (IOException e) {
+                        failure[0] = e;
+                    }
+                });
+                if (failure[0] != null) {
+                    throw failure[0];
+                }
+                long end = writer.position();
+                writer.truncateToPosition();
+                try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    ByteBuffer header = ByteBuffer.allocate(SNAPSHOT_HEADER_BYTES)
+                        .putInt(SNAPSHOT_MAGIC).putLong(count[0]).putLong(maxId).putLong(end).putInt((int) crc.getValue())
+                        .flip();
+                    channel.write(header, 0);
+                    channel.force(true);
+                }
+            }
+            Files.move(temporary, snapshotFile(generation), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.bin")) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    long fileGeneration = Long.parseLong(name.substring(name.indexOf('-') + 1, name.length() - 4));
+                    if (fileGeneration < generation) {
+                        Files.delete(file);
+                    }
+                }
+            }
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    public synchronized void startPeriodicSnapshots(Duration period) {
+        stopPeriodicSnapshots();
+        if (snapshotter == null) {
+            snapshotter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "user-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        long millis = period.toMillis();
+        periodicSnapshot = snapshotter.scheduleWithFixedDelay(() -> {
+            try {
+                snapshot();
+            } catch (IOException e) {
+                System.err.println("Snapshot de usuários falhou: " + e.getMessage());
+            }
+        }, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stopPeriodicSnapshots() {
+        if (periodicSnapshot != null) {
+            periodicSnapshot.cancel(false);
+            periodicSnapshot = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            stopPeriodicSnapshots();
+            if (snapshotter != null) {
+                snapshotter.shutdown();
+            }
+        }
+        snapshotLock.lock();
+        writeLock.lock();
+        try {
+            // Sem o espaço reservado da janela; a próxima abertura continua deste ponto
+            log.truncateToPosition();
+            log.close();
+        } finally {
+            writeLock.unlock();
+            snapshotLock.unlock();
+        }
+    }
+
+    private void apply(StoredUser user) {
+        apply(user, UserValidator.normalizeEmail(user.email));
+    }
+
+    private void apply(StoredUser user, String email) {
+        StoredUser previous = byId.put(user);
+        if (previous != null) {
+            String previousEmail = UserValidator.normalizeEmail(previous.email);
+            if (!previousEmail.equals(email)) {
+                byEmail.remove(previousEmail, previous.id);
+            }
+        }
+        byEmail.put(email, user.id);
+    }
+
+    // Registro: [int tamanho][int CRC32][long id][nome][email]; o tamanho é escrito
+    // por último, então um registro interrompido tem tamanho 0 e marca o fim do log
+    private void appendToLog(StoredUser user) throws IOException {
+        int length = recordLength(user);
+        MappedByteBuffer buffer = log.ensure(LOG_HEADER_BYTES + length);
+        int start = buffer.position();
+        buffer.position(start + LOG_HEADER_BYTES);
+        writeRecord(buffer, user);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(start + LOG_HEADER_BYTES, length));
+        buffer.putInt(start + 4, (int) crc.getValue());
+        buffer.putInt(start, length);
+        log.advance(LOG_HEADER_BYTES + length);
+    }
+
+    // Corpo: [long id][int n][nome][int n][email], strings em UTF-8
+    private static int recordLength(StoredUser user) {
+        return 8 + 4 + utf8Length(user.name) + 4 + utf8Length(user.email);
+    }
+
+    private static void writeRecord(ByteBuffer buffer, StoredUser user) {
+        buffer.putLong(user.id);
+        putString(buffer, user.name);
+        putString(buffer, user.email);
+    }
+
+    private static long snapshotCount(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(12);
+            channel.read(header, 0);
+            return header.getInt(0) == SNAPSHOT_MAGIC ? header.getLong(4) : 0;
+        }
+    }
+
+    private void loadSnapshot(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(SNAPSHOT_HEADER_BYTES);
+            channel.read(header, 0);
+            header.flip();
+            if (header.getInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Snapshot inválido: " + file);
+            }
+            long count = header.getLong();
+            long maxId = header.getLong();
+            long end = header.getLong();
+            int expectedCrc = header.getInt();
+            sequence.accumulateAndGet(maxId, Math::max);
+
+            CRC32 crc = new CRC32();
+            long position = SNAPSHOT_HEADER_BYTES;
+            long loaded = 0;
+            while (position < end) {
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                    Math.min(MappedFileWriter.WINDOW_BYTES, end - position));
+                int consumed = 0;
+                while (window.remaining() >= 8 + 8) {
+                    int start = window.position();
+                    StoredUser user = readRecord(window);
+                    if (user == null) {
+                        window.position(start);
+                        break;
+                    }
+                    crc.update(window.slice(start, window.position() - start));
+                    consumed = window.position();
+                    apply(user);
+                    loaded++;
+                }
+                if (consumed == 0) {
+                    throw new IOException("Snapshot corrompido: " + file);
+                }
+                position += consumed;
+            }
+            if (loaded != count || (int) crc.getValue() != expectedCrc) {
+                throw new IOException("Snapshot corrompido: " + file);
+            }
+        }
+    }
+
+    // Para no primeiro registro com tamanho 0 (fim), incompleto ou com CRC errado e devolve
+    // a posição dele, o fim da parte válida
+    private long replayLog(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            while (position + LOG_HEADER_BYTES <= size) {
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                    Math.min(MappedFileWriter.WINDOW_BYTES, size - position));
+                int consumed = 0;
+                while (consumed + LOG_HEADER_BYTES <= window.capacity()) {
+                    int length = window.getInt(consumed);
+                    if (length <= 0 || position + consumed + LOG_HEADER_BYTES + length > size) {
+                        return position + consumed;
+                    }
+                    if (consumed + LOG_HEADER_BYTES + length > window.capacity()) {
+                        break; // continua na próxima janela
+                    }
+                    CRC32 crc = new CRC32();
+                    crc.update(window.slice(consumed + LOG_HEADER_BYTES, length));
+                    if ((int) crc.getValue() != window.getInt(consumed + 4)) {
+                        return position + consumed;
+                    }
+                    window.position(consumed + LOG_HEADER_BYTES);
+                    StoredUser user = readRecord(window);
+                    apply(user);
+                    sequence.accumulateAndGet(user.id, Math::max);
+                    consumed += LOG_HEADER_BYTES + length;
+                }
+                position += consumed;
+            }
+            return position;
+        }
+    }
+
+    // null se o registro não couber no que resta da janela
+    private static StoredUser readRecord(ByteBuffer buffer) {
+        if (buffer.remaining() < 12) {
+            return null;
+        }
+        long id = buffer.getLong();
+        String name = string(buffer);
+        String email = name == null ? null : string(buffer);
+        return email == null ? null : new StoredUser(id, name, email);
+    }
+
+    private static String string(ByteBuffer buffer) {
+        if (buffer.remaining() < 4) {
+            return null;
+        }
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length).put(bytes);
+    }
+
+    // Tamanho em UTF-8 sem codificar a string
+    private static int utf8Length(String value) {
+        if (value == null) {
+            return 0;
+        }
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private Path logFile(long generation) {
+        return directory.resolve("log-" + generation + ".bin");
+    }
+
+    private Path snapshotFile(long generation) {
+        return directory.resolve("snapshot-" + generation + ".bin");
+    }
+}
+
+// Verificação: carga de milhões de usuários, snapshot com escritas em andamento,
+// alterações só no log, recarga depois do "reinício" sem log novo e nenhuma senha em disco
+// Uso: EmbeddedUserRepositoryCheck [usuários]
+// Com o padrão de 2 milhões, rode com -Xms3g -Xmx3g: o conjunto vivo passa de 1 GB e,
+// com o heap crescendo aos poucos, o tempo vai quase todo em coletas completas
+class EmbeddedUserRepositoryCheck {
+    public static void main(String[] args) throws Exception {
+        int total = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        Path directory = Files.createTempDirectory("users");
+
+        long insertMillis;
+        long snapshotMillis;
+        try (EmbeddedUserRepository repository = new EmbeddedUserRepository(directory)) {
+            // Leitor concorrente: nunca bloqueia e nunca vê um usuário pela metade
+            java.util.concurrent.atomic.AtomicBoolean done = new java.util.concurrent.atomic.AtomicBoolean();
+            long[] reads = new long[1];
+            Thread reader = Thread.ofPlatform().start(() -> {
+                java.util.Random random = new java.util.Random(1);
+                while (!done.get()) {
+                    int i = random.nextInt(total);
+                    User user = repository.findByEmail("user" + i + "@example.com");
+                    if (user != null && !user.getName().equals("Usuário " + i)) {
+                        throw new AssertionError("leitura inconsistente: " + user.getName());
+                    }
+                    if (++reads[0] % 100 == 0) {
+                        java.util.concurrent.locks.LockSupport.parkNanos(1_000_000);
+                    }
+                }
+            });
+
+            long start = System.nanoTime();
+            List<User> batch = new java.util.ArrayList<>(10_000);
+            for (int i = 0; i < total; i++) {
+                batch.add(new User("Usuário " + i, "user" + i + "@example.com", "senha" + i));
+                if (batch.size() == 10_000 || i == total - 1) {
+                    repository.saveAll(batch);
+                    batch.clear();
+                }
+                if (i == total / 2) {
+                    // Snapshot no meio da carga: o que entrar depois fica no log novo
+                    long snapshotStart = System.nanoTime();
+                    repository.snapshot();
+                    snapshotMillis = (System.nanoTime() - snapshotStart) / 1_000_000;
+                }
+            }
+            insertMillis = (System.nanoTime() - start) / 1_000_000;
+            done.set(true);
+            reader.join();
+
+            long snapshotStart = System.nanoTime();
+            repository.snapshot();
+            snapshotMillis = (System.nanoTime() - snapshotStart) / 1_000_000;
+
+            // Depois do snapshot: só no log
+            User changed = repository.findByEmail("user42@example.com");
+            changed.setEmail("renomeado42@example.com");
+            repository.save(changed);
+            User late = new User("Tardio", "tardio@example.com", "senha123");
+            repository.save(late);
+            check(late.getId() == total + 1, "sequência: " + late.getId());
+            try {
+                repository.save(new User("Duplicado", "USER7@example.com", "senha123"));
+                check(false, "email duplicado aceito");
+            } catch (IllegalStateException expected) {
+                // índice único por email normalizado
+            }
+            try {
+                repository.saveAll(List.of(new User("Sem email", null, "senha123")));
+                check(false, "usuário sem email aceito");
+            } catch (IllegalArgumentException expected) {
+                check(expected.getMessage().contains("sem email"), expected.getMessage());
+            }
+            User zero = new User("Id zero", "zero@example.com", "senha123");
+            zero.setId(0L);
+            try {
+                repository.saveAll(List.of(new User("Válido", "valido@example.com", "senha123"), zero));
+                check(false, "id 0 aceito");
+            } catch (IllegalArgumentException expected) {
+                check(repository.findByEmail("valido@example.com") == null, "lote com id inválido gravado em parte");
+            }
+            System.out.printf("%d usuários gravados em %d ms (%d leituras concorrentes), snapshot em %d ms%n",
+                total, insertMillis, reads[0], snapshotMillis);
+        }
+
+        long loadStart = System.nanoTime();
+        try (EmbeddedUserRepository reopened = new EmbeddedUserRepository(directory)) {
+            long loadMillis = (System.nanoTime() - loadStart) / 1_000_000;
+            check(reopened.size() == total + 1, "tamanho após recarga: " + reopened.size());
+            check(reopened.findByEmail("user42@example.com") == null, "email antigo ainda indexado");
+            check(reopened.findByEmail("Renomeado42@example.com").getId() == 43, "alteração do log perdida");
+            check(reopened.findById(total + 1).getName().equals("Tardio"), "inserção do log perdida");
+            check(reopened.findByEmail("user" + (total - 1) + "@example.com") != null, "último usuário");
+            check(reopened.findById(total + 1).getPassword() == null, "senha guardada");
+            User next = new User("Depois", "depois@example.com", "senha123");
+            reopened.save(next);
+            check(next.getId() == total + 2, "sequência após recarga: " + next.getId());
+            long bytes;
+            try (var files = Files.list(directory)) {
+                bytes = files.filter(file -> file.getFileName().toString().startsWith("snapshot-"))
+                    .mapToLong(file -> file.toFile().length()).sum();
+            }
+            System.out.printf("Recarga de %d usuários em %d ms; snapshot de %d MB%n",
+                reopened.size(), loadMillis, bytes >> 20);
+        }
+
+        // Reaberturas continuam o mesmo log, e o gravado na anterior continua lá
+        for (int round = 0; round < 3; round++) {
+            try (EmbeddedUserRepository again = new EmbeddedUserRepository(directory)) {
+                check(again.findByEmail("depois@example.com") != null, "gravação da reabertura anterior perdida");
+                again.save(new User("Rodada " + round, "rodada" + round + "@example.com", "senha123"));
+            }
+        }
+        List<Path> logs;
+        try (var files = Files.list(directory)) {
+            logs = files.filter(file -> file.getFileName().toString().startsWith("log-")).toList();
+        }
+        check(logs.size() == 1, "logs acumulados: " + logs);
+        try (EmbeddedUserRepository last = new EmbeddedUserRepository(directory)) {
+            check(last.size() == total + 5, "tamanho após reaberturas: " + last.size());
+        }
+
+        // Nenhum arquivo do diretório contém uma senha
+        byte[] secret = "senha".getBytes(StandardCharsets.UTF_8);
+        try (var files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                byte[] content = Files.readAllBytes(file);
+                for (int i = 0; i + secret.length <= content.length; i++) {
+                    check(!Arrays.equals(content, i, i + secret.length, secret, 0, secret.length),
+                        "senha em " + file.getFileName());
+                }
+            }
+        }
+        System.out.println("OK");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
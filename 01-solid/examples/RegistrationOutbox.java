@@ -0,0 +1,793 @@
+package examples.solid.srp;
+
+/**
+ * Outbox local para email de boas-vindas e auditoria
+ * Cenário: um servidor SMTP lento não pode atrasar o cadastro; o registro
+ * vai para um log local e é entregue depois, mesmo que o processo reinicie
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+// Tipo de cada registro do outbox; cada dispatcher entrega um tópico
+enum OutboxTopic {
+    WELCOME_EMAIL,
+    USER_REGISTRATION_AUDIT
+}
+
+// Backoff exponencial com jitter total: espera aleatória entre 0 e min(max, inicial * 2^(tentativa-1))
+class RetryPolicy {
+    private final long initialNanos;
+    private final long maxNanos;
+    private final int maxAttempts;
+
+    public RetryPolicy(Duration initialBackoff, Duration maxBackoff, int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts deve ser pelo menos 1");
+        }
+        this.initialNanos = initialBackoff.toNanos();
+        this.maxNanos = maxBackoff.toNanos();
+        this.maxAttempts = maxAttempts;
+    }
+
+    public int getMaxAttempts() { return maxAttempts; }
+
+    long delayNanos(int attempt) {
+        long ceiling = initialNanos << Math.min(attempt - 1, 30);
+        if (ceiling <= 0 || ceiling > maxNanos) {
+            ceiling = maxNanos;
+        }
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+}
+
+// Log append-only em segmentos <offset>.log no diretório. Cada registro ocupa
+// [int tamanho][int CRC32][tópico, id, nome, email] e é identificado pelo seu offset
+// global. A senha nunca entra no log.
+//
+// append grava e, com syncOnAppend, faz fsync antes de retornar: o cadastro espera o
+// disco local, nunca o provedor de email. Cada dispatcher guarda o próprio cursor em
+// <nome>.cursor; segmentos que todos os cursores já passaram são apagados. Um consumidor
+// que ainda não rodou precisa ser declarado com registerConsumer antes das gravações,
+// senão os segmentos podem ser apagados antes dele começar.
+// Na abertura, um registro incompleto no fim do último segmento (queda no meio de
+// uma escrita) é descartado.
+//
+// Não é transacional com o repositório: o UserService salva o lote e só depois grava
+// no outbox. Se o processo cair entre as duas escritas, os usuários ficam salvos sem
+// email nem auditoria e nada no outbox indica isso; quem precisa de garantia tem de
+// conciliar depois (usuários salvos sem registro no outbox) ou gravar o outbox na
+// mesma transação do banco. Uma vez gravado aqui, o registro é entregue ao menos uma vez.
+class RegistrationOutbox implements AutoCloseable {
+    static final long DEFAULT_SEGMENT_BYTES = 64L << 20;
+    private static final int HEADER_BYTES = 8;
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CURSOR_SUFFIX = ".cursor";
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final boolean syncOnAppend;
+
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final Condition appended = appendLock.newCondition();
+    private final ConcurrentSkipListMap<Long, FileChannel> segments = new ConcurrentSkipListMap<>();
+    // Fim dos registros completos; leitores nunca passam dele
+    private volatile long end;
+    private volatile boolean closed;
+
+    // Cursores de todos os consumidores já vistos no diretório, ativos ou não
+    private final Map<String, Long> cursors = new ConcurrentHashMap<>();
+
+    private final LongAdder appends = new LongAdder();
+
+    public RegistrationOutbox(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_BYTES, true);
+    }
+
+    public RegistrationOutbox(Path directory, long segmentBytes, boolean syncOnAppend) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.segmentBytes = segmentBytes;
+        this.syncOnAppend = syncOnAppend;
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(SEGMENT_SUFFIX)) {
+                    long base = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()), 16);
+                    segments.put(base, FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE));
+                } else if (name.endsWith(CURSOR_SUFFIX)) {
+                    cursors.put(name.substring(0, name.length() - CURSOR_SUFFIX.length()), readCursor(file));
+                }
+            }
+        }
+        if (segments.isEmpty()) {
+            segments.put(0L, openSegment(0));
+        }
+        long lastBase = segments.lastKey();
+        FileChannel last = segments.lastEntry().getValue();
+        long valid = recover(last);
+        if (valid < last.size()) {
+            last.truncate(valid);
+            last.force(true);
+        }
+        end = lastBase + valid;
+    }
+
+    public void append(OutboxTopic topic, User user) {
+        append(topic, List.of(user));
+    }
+
+    public void append(OutboxTopic topic, List<User> users) {
+        append(List.of(topic), users);
+    }
+
+    // Um registro por usuário e tópico, todos numa escrita e num fsync
+    public void append(List<OutboxTopic> topics, List<User> users) {
+        if (users.isEmpty()) {
+            return;
+        }
+        ByteBuffer records = encode(topics, users);
+        appendLock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Outbox encerrado");
+            }
+            long base = segments.lastKey();
+            FileChannel segment = segments.get(base);
+            long position = end - base;
+            if (position > 0 && position + records.remaining() > segmentBytes) {
+                base = end;
+                segment = openSegment(base);
+                segments.put(base, segment);
+                position = 0;
+            }
+            int length = records.remaining();
+            while (records.hasRemaining()) {
+                position += segment.write(records, position);
+            }
+            if (syncOnAppend) {
+                segment.force(false);
+            }
+            end += length;
+            appends.increment();
+            appended.signalAll();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Falha ao gravar no outbox", e);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    // Escritas no log, cada uma com seu fsync quando syncOnAppend
+    public long getAppendCount() {
+        return appends.sum();
+    }
+
+    // Adaptadores para o UserService: enfileiram em vez de entregar
+    public NotificationService notificationService() {
+        return new OutboxNotificationService(this);
+    }
+
+    public AuditLogger auditLogger() {
+        return new OutboxAuditLogger(this);
+    }
+
+    // Email e auditoria de cada lote numa escrita só
+    public RegistrationRecorder recorder() {
+        return new OutboxRegistrationRecorder(this);
+    }
+
+    // Cria o cursor durável no registro mais antigo retido, se ainda não existir
+    public void registerConsumer(String name) throws IOException {
+        if (!cursors.containsKey(name)) {
+            long first = segments.firstKey();
+            Files.write(cursorFile(name), ByteBuffer.allocate(8).putLong(0, first).array());
+            cursors.putIfAbsent(name, first);
+        }
+    }
+
+    // Dispatcher numa virtual thread; retoma do cursor salvo com esse nome, se existir
+    public OutboxDispatcher dispatch(OutboxTopic topic, String name, Consumer<List<User>> handler,
+                                     int batchSize, RetryPolicy retryPolicy) throws IOException {
+        registerConsumer(name);
+        return new OutboxDispatcher(this, topic, name, handler, batchSize, retryPolicy);
+    }
+
+    @Override
+    public void close() throws IOException {
+        appendLock.lock();
+        try {
+            closed = true;
+            appended.signalAll();
+        } finally {
+            appendLock.unlock();
+        }
+        for (FileChannel segment : segments.values()) {
+            segment.close();
+        }
+    }
+
+    Path directory() {
+        return directory;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    long startFor(String name) {
+        return Math.max(cursors.get(name), segments.firstKey());
+    }
+
+    // Espera até haver registros depois de position, o outbox fechar ou o tempo acabar
+    void awaitAppend(long position, long timeoutNanos) {
+        appendLock.lock();
+        try {
+            long remaining = timeoutNanos;
+            while (end <= position && !closed && remaining > 0) {
+                remaining = appended.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    void wakeUp() {
+        appendLock.lock();
+        try {
+            appended.signalAll();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    // Lê a partir de from até max registros do tópico (pulando os outros) e devolve o
+    // offset seguinte. buffer é do chamador e pode ser trocado por um maior.
+    long read(long from, OutboxTopic topic, int max, List<User> out, ByteBuffer[] buffer) throws IOException {
+        long position = from;
+        long limit = end;
+        while (position < limit && out.size() < max) {
+            Map.Entry<Long, FileChannel> entry = segments.floorEntry(position);
+            long base = entry.getKey();
+            Long next = segments.higherKey(base);
+            long segmentEnd = next == null ? limit : Math.min(next, limit);
+
+            ByteBuffer block = buffer[0];
+            block.clear();
+            block.limit((int) Math.min(block.capacity(), segmentEnd - position));
+            readFully(entry.getValue(), block, position - base);
+            block.flip();
+
+            int consumed = 0;
+            while (block.remaining() >= HEADER_BYTES && out.size() < max) {
+                int length = block.getInt(block.position());
+                if (block.remaining() < HEADER_BYTES + length) {
+                    break;
+                }
+                int crc = block.getInt(block.position() + 4);
+                block.position(block.position() + HEADER_BYTES);
+                ByteBuffer payload = block.slice(block.position(), length);
+                if (crc32(payload) != crc) {
+                    throw new IOException("Registro corrompido no offset " + (position + consumed));
+                }
+                block.position(block.position() + length);
+                consumed += HEADER_BYTES + length;
+                if (payload.get(0) == topic.ordinal()) {
+                    out.add(decode(payload));
+                }
+            }
+            if (consumed == 0) {
+                // Registro maior que o buffer
+                int length = block.getInt(0);
+                buffer[0] = ByteBuffer.allocate(Math.max(buffer[0].capacity() * 2, HEADER_BYTES + length));
+                continue;
+            }
+            position += consumed;
+        }
+        return position;
+    }
+
+    // Grava o cursor do consumidor e apaga os segmentos que nenhum cursor precisa mais
+    void commit(String name, FileChannel cursorFile, long cursor) throws IOException {
+        ByteBuffer value = ByteBuffer.allocate(8).putLong(0, cursor);
+        cursorFile.write(value, 0);
+        cursorFile.force(false);
+        cursors.put(name, cursor);
+
+        long min = Long.MAX_VALUE;
+        for (long position : cursors.values()) {
+            min = Math.min(min, position);
+        }
+        appendLock.lock();
+        try {
+            while (segments.size() > 1) {
+                long first = segments.firstKey();
+                long next = segments.higherKey(first);
+                if (next > min) {
+                    break;
+                }
+                segments.remove(first).close();
+                Files.deleteIfExists(segmentFile(first));
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    Path cursorFile(String name) {
+        return directory.resolve(name + CURSOR_SUFFIX);
+    }
+
+    private FileChannel openSegment(long base) throws IOException {
+        return FileChannel.open(segmentFile(base),
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private Path segmentFile(long base) {
+        return directory.resolve(String.format("%016x%s", base, SEGMENT_SUFFIX));
+    }
+
+    // Tamanho da parte válida do segmento: registros completos e com CRC correto
+    private static long recover(FileChannel segment) throws IOException {
+        long size = segment.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (position + HEADER_BYTES <= size) {
+            header.clear();
+            readFully(segment, header, position);
+            int length = header.getInt(0);
+            if (length <= 0 || position + HEADER_BYTES + length > size) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(segment, payload, position + HEADER_BYTES);
+            if (crc32(payload.flip()) != header.getInt(4)) {
+                break;
+            }
+            position += HEADER_BYTES + length;
+        }
+        return position;
+    }
+
+    private static long readCursor(Path file) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        return bytes.length < 8 ? 0 : ByteBuffer.wrap(bytes).getLong();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Fim inesperado do segmento");
+            }
+            position += read;
+        }
+    }
+
+    private static int crc32(ByteBuffer payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        return (int) crc.getValue();
+    }
+
+    private static ByteBuffer encode(List<OutboxTopic> topics, List<User> users) {
+        List<byte[]> names = new ArrayList<>(users.size());
+        List<byte[]> emails = new ArrayList<>(users.size());
+        int total = 0;
+        for (User user : users) {
+            byte[] name = bytes(user.getName());
+            byte[] email = bytes(user.getEmail());
+            names.add(name);
+            emails.add(email);
+            total += HEADER_BYTES + 1 + 8 + 4 + name.length + 4 + email.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(total * topics.size());
+        for (OutboxTopic topic : topics) {
+            for (int i = 0; i < users.size(); i++) {
+                int start = buffer.position();
+                buffer.position(start + HEADER_BYTES);
+                Long id = users.get(i).getId();
+                buffer.put((byte) topic.ordinal())
+                      .putLong(id == null ? -1 : id)
+                      .putInt(names.get(i).length).put(names.get(i))
+                      .putInt(emails.get(i).length).put(emails.get(i));
+                int length = buffer.position() - start - HEADER_BYTES;
+                buffer.putInt(start, length);
+                buffer.putInt(start + 4, crc32(buffer.slice(start + HEADER_BYTES, length)));
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static User decode(ByteBuffer payload) {
+        payload.position(1);
+        long id = payload.getLong();
+        String name = string(payload);
+        String email = string(payload);
+        User user = new User(name, email, null);
+        user.setId(id < 0 ? null : id);
+        return user;
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(ByteBuffer payload) {
+        byte[] bytes = new byte[payload.getInt()];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
+
+// Entrega um tópico em lotes, em ordem, com pelo menos uma entrega por registro:
+// o cursor só avança depois que o lote inteiro foi entregue (ou foi para a fila de
+// mortos), então o que estava em andamento numa queda é entregue de novo no reinício.
+// Um lote que falha é repetido com backoff; esgotadas as tentativas, é refeito um a um
+// e o registro que continuar falhando vai para <nome>.dead, sem travar os seguintes.
+// Erro de disco (leitura do log, cursor, fila de mortos) não para o dispatcher: ele
+// espera com o mesmo backoff e retoma do último cursor gravado; getLastFailure mostra
+// o erro enquanto ele não volta a avançar.
+class OutboxDispatcher implements AutoCloseable {
+    private static final long IDLE_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final RegistrationOutbox outbox;
+    private final OutboxTopic topic;
+    private final String name;
+    private final Consumer<List<User>> handler;
+    private final int batchSize;
+    private final RetryPolicy retryPolicy;
+    private final FileChannel cursorFile;
+    private final Path deadLetterFile;
+    private final Thread thread;
+
+    private volatile long cursor;
+    private volatile boolean stopping;
+    private volatile Exception lastFailure;
+
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder deadLettered = new LongAdder();
+    private final LongAdder ioFailures = new LongAdder();
+
+    OutboxDispatcher(RegistrationOutbox outbox, OutboxTopic topic, String name, Consumer<List<User>> handler,
+                     int batchSize, RetryPolicy retryPolicy) throws IOException {
+        this.outbox = outbox;
+        this.topic = topic;
+        this.name = name;
+        this.handler = handler;
+        this.batchSize = batchSize;
+        this.retryPolicy = retryPolicy;
+        this.cursorFile = FileChannel.open(outbox.cursorFile(name),
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.deadLetterFile = outbox.directory().resolve(name + ".dead");
+        this.cursor = outbox.startFor(name);
+        this.thread = Thread.ofVirtual().name("outbox-" + name).start(this::run);
+    }
+
+    public long getCursor() { return cursor; }
+    // Entregas com sucesso, contando reentregas depois de um reinício
+    public long getDeliveredCount() { return delivered.sum(); }
+    public long getRetryCount() { return retries.sum(); }
+    public long getDeadLetterCount() { return deadLettered.sum(); }
+    // Erros de disco desde o início, inclusive os já superados
+    public long getIoFailureCount() { return ioFailures.sum(); }
+    // Erro que está impedindo o avanço agora; null se o dispatcher está saudável
+    public Exception getLastFailure() { return lastFailure; }
+
+    // true quando tudo o que foi gravado até agora já foi entregue
+    public boolean awaitCaughtUp(Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (cursor < outbox.getEnd()) {
+            if (System.nanoTime() - deadline >= 0 || !thread.isAlive()) {
+                return false;
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        return true;
+    }
+
+    // Para depois do lote atual; o que não foi entregue fica para o próximo início
+    @Override
+    public void close() throws IOException {
+        stopping = true;
+        outbox.wakeUp();
+        LockSupport.unpark(thread);
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        cursorFile.close();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<User> batch = new ArrayList<>(batchSize);
+        ByteBuffer[] buffer = {ByteBuffer.allocate(64 * 1024)};
+        int failedAttempts = 0;
+        while (!stopping && !outbox.isClosed()) {
+            try {
+                batch.clear();
+                long next = outbox.read(cursor, topic, batchSize, batch, buffer);
+                if (next == cursor) {
+                    outbox.awaitAppend(cursor, IDLE_WAIT_NANOS);
+                    continue;
+                }
+                if (!batch.isEmpty() && !deliver(batch)) {
+                    return;
+                }
+                outbox.commit(name, cursorFile, next);
+                failedAttempts = 0;
+                lastFailure = null;
+                cursor = next;
+            } catch (IOException | UncheckedIOException e) {
+                if (stopping || outbox.isClosed()) {
+                    // Canais fechados pelo close do outbox
+                    return;
+                }
+                lastFailure = e;
+                ioFailures.increment();
+                if (!pause(retryPolicy.delayNanos(++failedAttempts))) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // false se o dispatcher foi encerrado no meio das tentativas
+    private boolean deliver(List<User> users) throws IOException {
+        RuntimeException failure = null;
+        for (int attempt = 1; attempt <= retryPolicy.getMaxAttempts(); attempt++) {
+            if (attempt > 1 && !pause(retryPolicy.delayNanos(attempt - 1))) {
+                return false;
+            }
+            try {
+                handler.accept(users);
+                delivered.add(users.size());
+                return true;
+            } catch (RuntimeException e) {
+                failure = e;
+                retries.increment();
+            }
+        }
+        if (users.size() == 1) {
+            deadLetter(users.get(0), failure);
+            return true;
+        }
+        for (User user : users) {
+            if (!deliver(List.of(user))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean pause(long nanos) {
+        long deadline = System.nanoTime() + nanos;
+        long remaining = nanos;
+        while (remaining > 0 && !stopping) {
+            LockSupport.parkNanos(remaining);
+            remaining = deadline - System.nanoTime();
+        }
+        return !stopping;
+    }
+
+    private void deadLetter(User user, RuntimeException failure) throws IOException {
+        String line = user.getId() + ";" + user.getEmail() + ";" + failure + System.lineSeparator();
+        Files.writeString(deadLetterFile, line, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        deadLettered.increment();
+    }
+}
+
+// Registrados no UserService no lugar dos serviços reais: o cadastro só grava no outbox
+class OutboxNotificationService implements NotificationService {
+    private final RegistrationOutbox outbox;
+
+    public OutboxNotificationService(RegistrationOutbox outbox) {
+        this.outbox = outbox;
+    }
+
+    @Override
+    public void sendWelcomeEmail(User user) {
+        outbox.append(OutboxTopic.WELCOME_EMAIL, user);
+    }
+
+    @Override
+    public void sendWelcomeEmails(List<User> users) {
+        outbox.append(OutboxTopic.WELCOME_EMAIL, users);
+    }
+}
+
+class OutboxRegistrationRecorder implements RegistrationRecorder {
+    private static final List<OutboxTopic> TOPICS = List.of(OutboxTopic.WELCOME_EMAIL, OutboxTopic.USER_REGISTRATION_AUDIT);
+
+    private final RegistrationOutbox outbox;
+
+    public OutboxRegistrationRecorder(RegistrationOutbox outbox) {
+        this.outbox = outbox;
+    }
+
+    @Override
+    public void sendWelcomeEmail(User user) {
+        outbox.append(OutboxTopic.WELCOME_EMAIL, user);
+    }
+
+    @Override
+    public void logUserRegistration(User user) {
+        outbox.append(OutboxTopic.USER_REGISTRATION_AUDIT, user);
+    }
+
+    @Override
+    public void recordRegistrations(List<User> users) {
+        outbox.append(TOPICS, users);
+    }
+}
+
+class OutboxAuditLogger implements AuditLogger {
+    private final RegistrationOutbox outbox;
+
+    public OutboxAuditLogger(RegistrationOutbox outbox) {
+        this.outbox = outbox;
+    }
+
+    @Override
+    public void logUserRegistration(User user) {
+        outbox.append(OutboxTopic.USER_REGISTRATION_AUDIT, user);
+    }
+
+    @Override
+    public void logUserRegistrations(List<User> users) {
+        outbox.append(OutboxTopic.USER_REGISTRATION_AUDIT, users);
+    }
+}
+
+// Verificação: cadastro sem esperar o SMTP, email e auditoria numa escrita por lote,
+// falhas com retry, fila de mortos, erro de disco no dispatcher, reinício no meio da
+// entrega e registro truncado no fim do log
+class RegistrationOutboxCheck {
+    public static void main(String[] args) throws Exception {
+        Path directory = Files.createTempDirectory("outbox");
+        int total = 20_000;
+        RetryPolicy retry = new RetryPolicy(Duration.ofMillis(1), Duration.ofMillis(20), 4);
+
+        // Provedor local: 2 ms por chamada, 10% das chamadas falham, um endereço sempre falha
+        Map<String, Integer> emailsSent = new ConcurrentHashMap<>();
+        Consumer<List<User>> smtp = users -> {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(2));
+            if (ThreadLocalRandom.current().nextInt(10) == 0) {
+                throw new IllegalStateException("SMTP indisponível");
+            }
+            for (User user : users) {
+                if (user.getEmail().startsWith("bounce")) {
+                    throw new IllegalStateException("Caixa inexistente: " + user.getEmail());
+                }
+            }
+            for (User user : users) {
+                emailsSent.merge(user.getEmail(), 1, Integer::sum);
+            }
+        };
+        Map<String, Integer> audited = new ConcurrentHashMap<>();
+        Consumer<List<User>> auditStore = users -> users.forEach(user -> audited.merge(user.getEmail(), 1, Integer::sum));
+
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < total; i++) {
+            users.add(new User("Usuário " + i, (i == 777 ? "bounce" : "user") + i + "@example.com", "senha123"));
+        }
+
+        // Fila de mortos inacessível (um diretório no lugar do arquivo) até depois do reinício
+        Path deadLetters = Files.createDirectory(directory.resolve("email.dead"));
+
+        long elapsedMillis;
+        long deliveredBeforeRestart;
+        RegistrationOutbox outbox = new RegistrationOutbox(directory, 256 * 1024, true);
+        // A auditoria só começa depois do reinício; declarada agora, nada dela é apagado
+        outbox.registerConsumer("audit");
+        try (OutboxDispatcher email = outbox.dispatch(OutboxTopic.WELCOME_EMAIL, "email", smtp, 200, retry)) {
+            UserService service = new UserService(new DatabaseUserRepositoryStub(), outbox.recorder(),
+                new UserValidator(), 1_000, java.util.concurrent.ForkJoinPool.commonPool());
+            long start = System.nanoTime();
+            RegistrationReport report = service.registerUsers(users);
+            service.registerUser(new User("Avulso", "avulso@example.com", "senha123"));
+            elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            check(report.getFailures().isEmpty(), "falhas no cadastro: " + report.getFailures());
+            // Email e auditoria de cada lote de 1.000 numa escrita, mais o avulso
+            check(outbox.getAppendCount() == total / 1_000 + 1, "escritas no outbox: " + outbox.getAppendCount());
+            // "Queda": o dispatcher para no meio da entrega, sem auditoria rodando
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(30));
+            deliveredBeforeRestart = email.getDeliveredCount();
+        }
+        outbox.close();
+        int sentBeforeRestart = emailsSent.size();
+        check(deliveredBeforeRestart < total, "a entrega deveria estar incompleta antes do reinício");
+
+        // Escrita interrompida no fim do último segmento
+        Path lastSegment;
+        try (var files = Files.list(directory)) {
+            lastSegment = files.filter(file -> file.toString().endsWith(".log")).sorted().reduce((a, b) -> b).orElseThrow();
+        }
+        Files.write(lastSegment, new byte[] {0, 0, 0, 50, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        outbox = new RegistrationOutbox(directory, 256 * 1024, true);
+        try (OutboxDispatcher email = outbox.dispatch(OutboxTopic.WELCOME_EMAIL, "email", smtp, 200, retry);
+             OutboxDispatcher audit = outbox.dispatch(OutboxTopic.USER_REGISTRATION_AUDIT, "audit", auditStore, 500, retry)) {
+            // O registro que vai para a fila de mortos não é gravado: o dispatcher mostra o
+            // erro, espera e tenta de novo, sem morrer
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+            while (email.getLastFailure() == null) {
+                check(System.nanoTime() - deadline < 0, "erro de disco não apareceu no dispatcher");
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+            Files.delete(deadLetters);
+            check(email.awaitCaughtUp(Duration.ofSeconds(60)), "email não alcançou o fim do log");
+            check(email.getLastFailure() == null && email.getIoFailureCount() > 0, "dispatcher não se recuperou");
+            check(audit.awaitCaughtUp(Duration.ofSeconds(60)), "auditoria não alcançou o fim do log");
+            check(email.getDeadLetterCount() == 1, "fila de mortos: " + email.getDeadLetterCount());
+            check(emailsSent.size() == total, "emails entregues: " + emailsSent.size());
+            check(audited.size() == total + 1, "auditados: " + audited.size());
+            long duplicates = emailsSent.values().stream().filter(count -> count > 1).count();
+            System.out.printf("%d cadastros em %d ms sem esperar o SMTP; %d emails antes do reinício, "
+                    + "%d reentregues depois, %d retentativas, %d erros de disco, %d na fila de mortos, %d segmentos restantes%n",
+                total + 1, elapsedMillis, sentBeforeRestart, duplicates, email.getRetryCount(),
+                email.getIoFailureCount(), email.getDeadLetterCount(), outbox.getSegmentCount());
+        }
+        outbox.close();
+        check(Files.readString(directory.resolve("email.dead")).contains("bounce777"), "registro morto");
+        System.out.println("OK");
+    }
+
+    // Repositório mudo, para medir só o custo do outbox no cadastro
+    private static final class DatabaseUserRepositoryStub implements UserRepository {
+        @Override
+        public void save(User user) {
+        }
+
+        @Override
+        public User findByEmail(String email) {
+            return null;
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package examples.solid.srp;
+
+/**
+ * Relatório do cadastro em massa de usuários
+ * Cenário: importação de centenas de milhares de contas, em que registros
+ * inválidos ou recusados pelo banco não podem derrubar o lote inteiro
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Etapa em que o usuário falhou
+enum RegistrationStage {
+    VALIDATION,
+    PERSISTENCE,
+    // O usuário foi salvo, mas o email de boas-vindas não saiu
+    NOTIFICATION,
+    // O usuário foi salvo, mas o registro de auditoria não foi gravado
+    AUDIT
+}
+
+class RegistrationFailure {
+    private final int index;
+    private final User user;
+    private final RegistrationStage stage;
+    private final String message;
+
+    RegistrationFailure(int index, User user, RegistrationStage stage, String message) {
+        this.index = index;
+        this.user = user;
+        this.stage = stage;
+        this.message = message;
+    }
+
+    // Posição do usuário na entrada de registerUsers
+    public int getIndex() { return index; }
+    public User getUser() { return user; }
+    public RegistrationStage getStage() { return stage; }
+    public String getMessage() { return message; }
+
+    @Override
+    public String toString() {
+        String email = user == null ? "-" : user.getEmail();
+        return "#" + index + " " + email + " [" + stage + "] " + message;
+    }
+}
+
+// Preenchido por registerUsers na thread que o chamou
+class RegistrationReport {
+    private final List<RegistrationFailure> failures = new ArrayList<>();
+    private long registered;
+
+    void addRegistered(int count) {
+        registered += count;
+    }
+
+    void fail(int index, User user, RegistrationStage stage, String message) {
+        failures.add(new RegistrationFailure(index, user, stage, message));
+    }
+
+    // Usuários salvos, inclusive os com falha só no email ou na auditoria
+    public long getRegisteredCount() { return registered; }
+
+    // Na ordem em que ocorreram, lote a lote
+    public List<RegistrationFailure> getFailures() { return Collections.unmodifiableList(failures); }
+
+    public long getFailureCount(RegistrationStage stage) {
+        return failures.stream().filter(failure -> failure.getStage() == stage).count();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(registered).append(" usuários cadastrados, ").append(failures.size()).append(" falhas");
+        for (RegistrationFailure failure : failures) {
+            sb.append("\n  ").append(failure);
+        }
+        return sb.toString();
+    }
+}
+
+// Verificação: falhas por etapa, lote aplicado em parte, lote refeito um a um e volume
+// Uso: UserRegistrationCheck [usuários]
+class UserRegistrationCheck {
+    public static void main(String[] args) {
+        int total = args.length > 0 ? Integer.parseInt(args[0]) : 300_000;
+
+        // O banco grava o lote até o primeiro email "duplicado" (falha parcial); o provedor de
+        // email recusa o lote inteiro se houver um endereço de um domínio que não existe
+        CountingRepository repository = new CountingRepository();
+        java.util.Map<String, Integer> sent = new java.util.HashMap<>();
+        NotificationService notifications = new NotificationService() {
+            @Override
+            public void sendWelcomeEmail(User user) {
+                if (user.getEmail().endsWith("@bounce.com")) {
+                    throw new IllegalStateException("Caixa inexistente");
+                }
+                sent.merge(user.getEmail(), 1, Integer::sum);
+            }
+
+            @Override
+            public void sendWelcomeEmails(List<User> users) {
+                for (User user : users) {
+                    if (user.getEmail().endsWith("@bounce.com")) {
+                        throw new IllegalStateException("Lote recusado pelo provedor");
+                    }
+                }
+                for (User user : users) {
+                    sent.merge(user.getEmail(), 1, Integer::sum);
+                }
+            }
+        };
+        long[] audited = new long[1];
+        AuditLogger audit = user -> audited[0]++;
+        UserService service = new UserService(repository, notifications, audit, new UserValidator(),
+            1_000, java.util.concurrent.ForkJoinPool.commonPool());
+
+        List<User> users = new ArrayList<>(total);
+        for (int i = 0; i < total; i++) {
+            String email = switch (i % 1000) {
+                case 1 -> "invalido" + i;
+                case 2 -> i % 10_000 == 2 ? "dup" + i + "@example.com" : "user" + i + "@example.com";
+                case 3 -> "user" + i + "@bounce.com";
+                default -> "user" + i + "@example.com";
+            };
+            users.add(new User("Usuário " + i, email, "senha" + i));
+        }
+
+        long start = System.nanoTime();
+        RegistrationReport report = service.registerUsers(users);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        long perStage = total / 1000;
+        check(report.getFailureCount(RegistrationStage.VALIDATION) == perStage, "validação");
+        check(report.getFailureCount(RegistrationStage.PERSISTENCE) == total / 10_000, "persistência");
+        check(report.getFailureCount(RegistrationStage.NOTIFICATION) == perStage, "notificação");
+        check(report.getRegisteredCount() == total - perStage - total / 10_000, "cadastrados " + report.getRegisteredCount());
+        check(audited[0] == report.getRegisteredCount(), "auditados " + audited[0]);
+        check(report.getFailures().get(0).getIndex() == 1, "índice da primeira falha");
+        check(repository.saved == report.getRegisteredCount(), "salvos " + repository.saved);
+        check(repository.savedEmails.size() == repository.saved, "salvos duas vezes: " + (repository.saved - repository.savedEmails.size()));
+        check(sent.size() == report.getRegisteredCount() - perStage, "notificados " + sent.size());
+        check(sent.values().stream().allMatch(count -> count == 1), "email enviado duas vezes");
+
+        // Duplicado de um lote anterior: a validação do lote seguinte roda enquanto o anterior
+        // ainda está sendo gravado, e o repositório pode não ter o email
+        java.util.Map<String, User> table = new java.util.concurrent.ConcurrentHashMap<>();
+        UserRepository database = new UserRepository() {
+            @Override
+            public void save(User user) {
+                if (table.putIfAbsent(UserValidator.normalizeEmail(user.getEmail()), user) != null) {
+                    throw new IllegalStateException("Violação de unicidade");
+                }
+            }
+
+            @Override
+            public User findByEmail(String email) {
+                return table.get(UserValidator.normalizeEmail(email));
+            }
+        };
+        UserService small = new UserService(database, new NotificationService() {
+            @Override
+            public void sendWelcomeEmail(User user) {
+            }
+        }, user -> { }, new UserValidator(), 2, java.util.concurrent.ForkJoinPool.commonPool());
+        List<User> repeated = new ArrayList<>();
+        for (String email : new String[] {"a", "b", "A", "c", "d", "b", "e", "c"}) {
+            repeated.add(new User(email, email + "@example.com", "senha123"));
+        }
+        RegistrationReport smallReport = small.registerUsers(repeated);
+        check(smallReport.getRegisteredCount() == 5 && smallReport.getFailureCount(RegistrationStage.VALIDATION) == 3,
+            "duplicados entre lotes: " + smallReport);
+
+        System.out.printf("%d usuários em %d ms: %d cadastrados, %d chamadas a saveAll, %d saves individuais%n",
+            total, elapsedMillis, report.getRegisteredCount(), repository.batches, repository.singles);
+        System.out.println("Primeiras falhas: " + report.getFailures().subList(0, 3));
+        System.out.println("OK");
+    }
+
+    private static final class CountingRepository implements UserRepository {
+        final java.util.Set<String> savedEmails = new java.util.HashSet<>();
+        long saved;
+        long batches;
+        long singles;
+
+        @Override
+        public void save(User user) {
+            singles++;
+            if (user.getEmail().startsWith("dup")) {
+                throw new IllegalStateException("Email já cadastrado");
+            }
+            store(user);
+        }
+
+        // Sem transação: o que veio antes do duplicado fica gravado
+        @Override
+        public void saveAll(List<User> users) {
+            batches++;
+            for (int i = 0; i < users.size(); i++) {
+                if (users.get(i).getEmail().startsWith("dup")) {
+                    throw new PartialBatchException(i, new IllegalStateException("Violação de unicidade no lote"));
+                }
+                store(users.get(i));
+            }
+        }
+
+        private void store(User user) {
+            savedEmails.add(user.getEmail());
+            saved++;
+        }
+
+        @Override
+        public User findByEmail(String email) {
+            return null;
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
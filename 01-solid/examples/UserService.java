@@ -5,6 +5,18 @@ package examples.solid.srp;
  * Demonstra como refatorar código que viola princípios SOLID
  */
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
 // ❌ ANTES: Violação de múltiplos princípios SOLID
 class UserServiceBad {
     public void registerUser(String name, String email, String password) {
@@ -36,18 +48,65 @@ class UserValidator {
     // Simple email validation pattern
     // For production, consider using javax.mail.internet.AddressValidator
     // or Apache Commons Validator
-    private static final String EMAIL_PATTERN = 
-        "^[A-Za-z0-9+_.-]+@[A-Za-z0-9.-]+\\.[A-Za-z]{2,}$";
+    // Compilado uma vez; String.matches recompilaria a regex a cada chamada
+    private static final Pattern EMAIL_PATTERN =
+        Pattern.compile("^[A-Za-z0-9+_.-]+@[A-Za-z0-9.-]+\\.[A-Za-z]{2,}$");
     
     public void validate(User user) {
+        String error = findError(user);
+        if (error != null) {
+            throw new IllegalArgumentException(error);
+        }
+    }
+    
+    // Mesma regra de validate, sem exceção: usado no cadastro em lote, onde
+    // registro inválido é esperado e o custo de montar a exceção pesa
+    public String findError(User user) {
+        if (user == null) {
+            return "Usuário nulo";
+        }
         if (user.getName() == null || user.getName().isEmpty()) {
-            throw new IllegalArgumentException("Nome inválido");
+            return "Nome inválido";
         }
-        if (user.getEmail() == null || !user.getEmail().matches(EMAIL_PATTERN)) {
-            throw new IllegalArgumentException("Email inválido");
+        if (user.getEmail() == null || !EMAIL_PATTERN.matcher(user.getEmail()).matches()) {
+            return "Email inválido";
         }
         if (user.getPassword() == null || user.getPassword().length() < 6) {
-            throw new IllegalArgumentException("Senha deve ter no mínimo 6 caracteres");
+            return "Senha deve ter no mínimo 6 caracteres";
+        }
+        return null;
+    }
+    
+    // Emails iguais a menos de caixa e espaços nas pontas são o mesmo email
+    public static String normalizeEmail(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+}
+
+// Operações em lote (saveAll, sendWelcomeEmails, logUserRegistrations) ou aplicam o lote
+// inteiro, ou lançam esta exceção dizendo quantos usuários do início foram aplicados; o
+// de índice getCompleted() foi o que falhou. Qualquer outra exceção significa que nada do
+// lote foi aplicado.
+class PartialBatchException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    
+    private final int completed;
+    
+    PartialBatchException(int completed, RuntimeException cause) {
+        super(cause.getMessage(), cause);
+        this.completed = completed;
+    }
+    
+    public int getCompleted() { return completed; }
+    
+    // Implementação padrão das operações em lote: um a um, parando no primeiro que falhar
+    static void forEach(List<User> users, Consumer<User> action) {
+        for (int i = 0; i < users.size(); i++) {
+            try {
+                action.accept(users.get(i));
+            } catch (RuntimeException e) {
+                throw new PartialBatchException(i, e);
+            }
         }
     }
 }
@@ -56,6 +115,11 @@ class UserValidator {
 interface UserRepository {
     void save(User user);
     User findByEmail(String email);
+    
+    // Uma ida ao banco por lote; implementações com INSERT em lote devem sobrescrever
+    default void saveAll(List<User> users) {
+        PartialBatchException.forEach(users, this::save);
+    }
 }
 
 // Implementação específica
@@ -66,6 +130,12 @@ class DatabaseUserRepository implements UserRepository {
         System.out.println("Salvando usuário no banco: " + user.getEmail());
     }
     
+    @Override
+    public void saveAll(List<User> users) {
+        // INSERT ... VALUES (...), (...), ... numa única instrução
+        System.out.println("Salvando " + users.size() + " usuários no banco em lote");
+    }
+    
     @Override
     public User findByEmail(String email) {
         // Buscar usuário no banco
@@ -76,6 +146,10 @@ class DatabaseUserRepository implements UserRepository {
 // SRP: Responsabilidade de notificação separada
 interface NotificationService {
     void sendWelcomeEmail(User user);
+    
+    default void sendWelcomeEmails(List<User> users) {
+        PartialBatchException.forEach(users, this::sendWelcomeEmail);
+    }
 }
 
 class EmailNotificationService implements NotificationService {
@@ -83,11 +157,25 @@ class EmailNotificationService implements NotificationService {
     public void sendWelcomeEmail(User user) {
         System.out.println("Enviando email de boas-vindas para: " + user.getEmail());
     }
+    
+    @Override
+    public void sendWelcomeEmails(List<User> users) {
+        // Uma chamada ao provedor com todos os destinatários do lote
+        StringBuilder sb = new StringBuilder();
+        for (User user : users) {
+            sb.append("Enviando email de boas-vindas para: ").append(user.getEmail()).append('\n');
+        }
+        System.out.print(sb);
+    }
 }
 
 // SRP: Responsabilidade de auditoria separada
 interface AuditLogger {
     void logUserRegistration(User user);
+    
+    default void logUserRegistrations(List<User> users) {
+        PartialBatchException.forEach(users, this::logUserRegistration);
+    }
 }
 
 class ConsoleAuditLogger implements AuditLogger {
@@ -95,14 +183,37 @@ class ConsoleAuditLogger implements AuditLogger {
     public void logUserRegistration(User user) {
         System.out.println("LOG: Usuário registrado - " + user.getEmail());
     }
+    
+    @Override
+    public void logUserRegistrations(List<User> users) {
+        // Uma escrita no console por lote, não por usuário
+        StringBuilder sb = new StringBuilder();
+        for (User user : users) {
+            sb.append("LOG: Usuário registrado - ").append(user.getEmail()).append('\n');
+        }
+        System.out.print(sb);
+    }
+}
+
+// Email e auditoria atendidos pelo mesmo destino (um outbox, por exemplo): o cadastro
+// em massa grava os dois de cada lote numa operação só, em vez de uma por serviço
+interface RegistrationRecorder extends NotificationService, AuditLogger {
+    // Mesmo contrato das outras operações em lote
+    void recordRegistrations(List<User> users);
 }
 
 // OCP e DIP: Serviço depende de abstrações
 class UserService {
+    static final int DEFAULT_BATCH_SIZE = 1_000;
+    
     private final UserRepository userRepository;
     private final NotificationService notificationService;
     private final AuditLogger auditLogger;
     private final UserValidator userValidator;
+    private final int batchSize;
+    private final ForkJoinPool pool;
+    // Não nulo quando email e auditoria vão para o mesmo RegistrationRecorder
+    private final RegistrationRecorder recorder;
     
     // DIP: Dependências injetadas via construtor
     public UserService(
@@ -110,25 +221,221 @@ class UserService {
             NotificationService notificationService,
             AuditLogger auditLogger,
             UserValidator userValidator) {
+        this(userRepository, notificationService, auditLogger, userValidator,
+            DEFAULT_BATCH_SIZE, ForkJoinPool.commonPool());
+    }
+    
+    // batchSize: usuários por saveAll, sendWelcomeEmails e logUserRegistrations
+    public UserService(
+            UserRepository userRepository,
+            NotificationService notificationService,
+            AuditLogger auditLogger,
+            UserValidator userValidator,
+            int batchSize,
+            ForkJoinPool pool) {
+        this(userRepository, notificationService, auditLogger, null, userValidator, batchSize, pool);
+    }
+    
+    // Email e auditoria pelo mesmo destino; falhas dele aparecem na etapa NOTIFICATION
+    public UserService(
+            UserRepository userRepository,
+            RegistrationRecorder recorder,
+            UserValidator userValidator,
+            int batchSize,
+            ForkJoinPool pool) {
+        this(userRepository, recorder, recorder, recorder, userValidator, batchSize, pool);
+    }
+    
+    private UserService(
+            UserRepository userRepository,
+            NotificationService notificationService,
+            AuditLogger auditLogger,
+            RegistrationRecorder recorder,
+            UserValidator userValidator,
+            int batchSize,
+            ForkJoinPool pool) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize deve ser positivo");
+        }
         this.userRepository = userRepository;
         this.notificationService = notificationService;
         this.auditLogger = auditLogger;
         this.userValidator = userValidator;
+        this.batchSize = batchSize;
+        this.pool = pool;
+        this.recorder = recorder;
     }
     
     public void registerUser(User user) {
         // Validar
         userValidator.validate(user);
+        if (userRepository.findByEmail(user.getEmail()) != null) {
+            throw new IllegalArgumentException("Email já cadastrado");
+        }
         
         // Salvar
         userRepository.save(user);
         
+        if (recorder != null) {
+            // Notificação e auditoria numa gravação só
+            recorder.recordRegistrations(List.of(user));
+            return;
+        }
+        
         // Notificar
         notificationService.sendWelcomeEmail(user);
         
         // Auditar
         auditLogger.logUserRegistration(user);
     }
+    
+    // Cadastro em massa: a entrada é lida em lotes de batchSize; a validação do próximo
+    // lote, inclusive a checagem de email já cadastrado, roda em paralelo no pool enquanto
+    // o atual é salvo, notificado e auditado, então findByEmail precisa aceitar chamadas
+    // concorrentes.
+    // Falhas são registradas por usuário no relatório e não interrompem o restante.
+    // Se uma operação em lote aplica só parte do lote (PartialBatchException), o culpado é
+    // registrado e o lote segue do seguinte; se falha sem aplicar nada, é refeito um a um.
+    // Ninguém é salvo, notificado ou auditado duas vezes.
+    // Email e auditoria valem só para quem foi salvo; falha no email não impede a auditoria.
+    public RegistrationReport registerUsers(Iterable<User> users) {
+        RegistrationReport report = new RegistrationReport();
+        Iterator<User> iterator = users.iterator();
+        int nextIndex = 0;
+        CompletableFuture<UserBatch> pending = null;
+        // Emails do lote em gravação, que a validação do seguinte pode não ter visto no repositório
+        Set<String> previousEmails = Set.of();
+        if (iterator.hasNext()) {
+            UserBatch first = readBatch(iterator, nextIndex);
+            nextIndex += first.users.length;
+            pending = validateAsync(first);
+        }
+        while (pending != null) {
+            UserBatch batch = pending.join();
+            pending = null;
+            if (iterator.hasNext()) {
+                UserBatch next = readBatch(iterator, nextIndex);
+                nextIndex += next.users.length;
+                pending = validateAsync(next);
+            }
+            previousEmails = complete(batch, previousEmails, report);
+        }
+        return report;
+    }
+    
+    private UserBatch readBatch(Iterator<User> iterator, int firstIndex) {
+        List<User> users = new ArrayList<>(batchSize);
+        while (users.size() < batchSize && iterator.hasNext()) {
+            users.add(iterator.next());
+        }
+        return new UserBatch(users.toArray(new User[0]), firstIndex);
+    }
+    
+    private CompletableFuture<UserBatch> validateAsync(UserBatch batch) {
+        return CompletableFuture.supplyAsync(() -> {
+            IntStream.range(0, batch.users.length).parallel().forEach(i -> {
+                String error = userValidator.findError(batch.users[i]);
+                if (error == null && userRepository.findByEmail(batch.users[i].getEmail()) != null) {
+                    error = "Email já cadastrado";
+                }
+                batch.errors[i] = error;
+            });
+            return batch;
+        }, pool);
+    }
+    
+    // Devolve os emails do lote, para a checagem do lote seguinte
+    private Set<String> complete(UserBatch batch, Set<String> previousEmails, RegistrationReport report) {
+        List<User> valid = new ArrayList<>(batch.users.length);
+        List<Integer> positions = new ArrayList<>(batch.users.length);
+        // Duplicados dentro do lote ou com o anterior ainda não estavam no repositório
+        // quando a validação consultou; lotes mais antigos já tinham sido gravados
+        Set<String> batchEmails = new HashSet<>();
+        for (int i = 0; i < batch.users.length; i++) {
+            if (batch.errors[i] == null) {
+                String email = UserValidator.normalizeEmail(batch.users[i].getEmail());
+                if (!batchEmails.add(email) || previousEmails.contains(email)) {
+                    batch.errors[i] = "Email já cadastrado";
+                }
+            }
+            if (batch.errors[i] != null) {
+                report.fail(batch.firstIndex + i, batch.users[i], RegistrationStage.VALIDATION, batch.errors[i]);
+            } else {
+                valid.add(batch.users[i]);
+                positions.add(batch.firstIndex + i);
+            }
+        }
+        List<Integer> savedPositions = new ArrayList<>(valid.size());
+        List<User> saved = runStage(valid, positions, savedPositions, RegistrationStage.PERSISTENCE,
+            userRepository::saveAll, userRepository::save, report);
+        report.addRegistered(saved.size());
+        if (recorder != null) {
+            runStage(saved, savedPositions, null, RegistrationStage.NOTIFICATION,
+                recorder::recordRegistrations, user -> recorder.recordRegistrations(List.of(user)), report);
+            return batchEmails;
+        }
+        runStage(saved, savedPositions, null, RegistrationStage.NOTIFICATION,
+            notificationService::sendWelcomeEmails, notificationService::sendWelcomeEmail, report);
+        runStage(saved, savedPositions, null, RegistrationStage.AUDIT,
+            auditLogger::logUserRegistrations, auditLogger::logUserRegistration, report);
+        return batchEmails;
+    }
+    
+    // Tenta o lote inteiro e, a cada falha parcial, o restante depois do culpado; se uma
+    // tentativa falha sem aplicar nada, refaz o restante um a um. Devolve os que passaram
+    // e, se succeededPositions não for null, as posições deles na entrada
+    private static List<User> runStage(List<User> users, List<Integer> positions, List<Integer> succeededPositions,
+                                       RegistrationStage stage, Consumer<List<User>> bulk, Consumer<User> single,
+                                       RegistrationReport report) {
+        if (users.isEmpty()) {
+            return users;
+        }
+        List<User> succeeded = new ArrayList<>(users.size());
+        int from = 0;
+        while (from < users.size()) {
+            try {
+                bulk.accept(users.subList(from, users.size()));
+                markSucceeded(users, positions, from, users.size(), succeeded, succeededPositions);
+                break;
+            } catch (PartialBatchException partial) {
+                int failed = from + partial.getCompleted();
+                markSucceeded(users, positions, from, failed, succeeded, succeededPositions);
+                report.fail(positions.get(failed), users.get(failed), stage, partial.getMessage());
+                from = failed + 1;
+            } catch (RuntimeException batchFailure) {
+                for (int i = from; i < users.size(); i++) {
+                    try {
+                        single.accept(users.get(i));
+                        markSucceeded(users, positions, i, i + 1, succeeded, succeededPositions);
+                    } catch (RuntimeException e) {
+                        report.fail(positions.get(i), users.get(i), stage, e.getMessage());
+                    }
+                }
+                break;
+            }
+        }
+        return succeeded;
+    }
+    
+    private static void markSucceeded(List<User> users, List<Integer> positions, int from, int to,
+                                      List<User> succeeded, List<Integer> succeededPositions) {
+        succeeded.addAll(users.subList(from, to));
+        if (succeededPositions != null) {
+            succeededPositions.addAll(positions.subList(from, to));
+        }
+    }
+    
+    private static final class UserBatch {
+        final User[] users;
+        final String[] errors;
+        final int firstIndex;
+        
+        UserBatch(User[] users, int firstIndex) {
+            this.users = users;
+            this.errors = new String[users.length];
+            this.firstIndex = firstIndex;
+        }
+    }
 }
 
 // Entidade de domínio
@@ -161,8 +468,11 @@ class User {
 // Exemplo de uso
 class Main {
     public static void main(String[] args) {
-        // Criar dependências
-        UserRepository repository = new DatabaseUserRepository();
+        // Criar dependências; o cache responde a checagem de email duplicado sem ir ao banco
+        CachingUserRepository repository = new CachingUserRepository(
+            new DatabaseUserRepository(), 1_000_000, 0.01, 10_000, java.time.Duration.ofMinutes(10));
+        // Sem os emails existentes o filtro não é usado; o banco de exemplo começa vazio
+        repository.seed(List.of());
         NotificationService notificationService = new EmailNotificationService();
         AuditLogger auditLogger = new ConsoleAuditLogger();
         UserValidator validator = new UserValidator();
@@ -178,5 +488,15 @@ class Main {
         // Usar o serviço
         User user = new User("Gabriel", "gabriel@example.com", "password123");
         userService.registerUser(user);
+        
+        // Cadastro em massa: uma ida ao banco, um envio de emails e uma escrita de log por lote
+        System.out.println();
+        RegistrationReport report = userService.registerUsers(List.of(
+            new User("Ana", "ana@example.com", "senha123"),
+            new User("Bruno", "bruno@example", "senha123"),
+            new User("Carla", "carla@example.com", "123"),
+            new User("Diego", "diego@example.com", "senha123"),
+            new User("Gabriel", "Gabriel@Example.com", "senha123")));
+        System.out.println(report);
     }
 }
@@ -0,0 +1,771 @@
+package examples.patterns.observer;
+
+/**
+ * Motor de regras de alarme indexado
+ * Cenário: dezenas de milhares de regras por sensor (acima, abaixo, faixa, taxa de variação)
+ * sem registrar um AlarmSystem por regra nem reavaliar todas a cada leitura
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Regra imutável, sempre associada a um sensor
+class AlarmRule {
+    enum Kind {
+        // valor > limite
+        ABOVE,
+        // valor < limite
+        BELOW,
+        // low <= valor <= high
+        BAND,
+        // |variação| por segundo > limite
+        RATE_OF_CHANGE
+    }
+
+    private final long id;
+    private final long sensorId;
+    private final Kind kind;
+    private final double low;
+    private final double high;
+    // Margem para desligar: o alarme só limpa quando o valor volta além do limite mais a margem
+    private final double hysteresis;
+    // Leituras consecutivas que satisfazem a regra antes de disparar
+    private final int debounce;
+
+    private AlarmRule(long id, long sensorId, Kind kind, double low, double high, double hysteresis, int debounce) {
+        if (Double.isNaN(low) || Double.isNaN(high) || low > high) {
+            throw new IllegalArgumentException("Limites inválidos na regra " + id);
+        }
+        if (hysteresis < 0 || debounce < 1) {
+            throw new IllegalArgumentException("Histerese deve ser >= 0 e debounce >= 1 na regra " + id);
+        }
+        this.id = id;
+        this.sensorId = sensorId;
+        this.kind = kind;
+        this.low = low;
+        this.high = high;
+        this.hysteresis = hysteresis;
+        this.debounce = debounce;
+    }
+
+    public static AlarmRule above(long id, long sensorId, double threshold) {
+        return new AlarmRule(id, sensorId, Kind.ABOVE, threshold, threshold, 0, 1);
+    }
+
+    public static AlarmRule below(long id, long sensorId, double threshold) {
+        return new AlarmRule(id, sensorId, Kind.BELOW, threshold, threshold, 0, 1);
+    }
+
+    public static AlarmRule band(long id, long sensorId, double low, double high) {
+        return new AlarmRule(id, sensorId, Kind.BAND, low, high, 0, 1);
+    }
+
+    public static AlarmRule rateOfChange(long id, long sensorId, double maxPerSecond) {
+        return new AlarmRule(id, sensorId, Kind.RATE_OF_CHANGE, maxPerSecond, maxPerSecond, 0, 1);
+    }
+
+    public AlarmRule withHysteresis(double hysteresis) {
+        return new AlarmRule(id, sensorId, kind, low, high, hysteresis, debounce);
+    }
+
+    public AlarmRule withDebounce(int readings) {
+        return new AlarmRule(id, sensorId, kind, low, high, hysteresis, readings);
+    }
+
+    public long getId() { return id; }
+    public long getSensorId() { return sensorId; }
+    public Kind getKind() { return kind; }
+    // Para ABOVE, BELOW e RATE_OF_CHANGE, low == high == limite
+    public double getLow() { return low; }
+    public double getHigh() { return high; }
+    public double getHysteresis() { return hysteresis; }
+    public int getDebounce() { return debounce; }
+
+    @Override
+    public String toString() {
+        return switch (kind) {
+            case ABOVE -> "#" + id + " acima de " + low;
+            case BELOW -> "#" + id + " abaixo de " + low;
+            case BAND -> "#" + id + " entre " + low + " e " + high;
+            case RATE_OF_CHANGE -> "#" + id + " variação acima de " + low + "/s";
+        };
+    }
+}
+
+interface AlarmListener {
+    // raised = true ao disparar, false ao limpar
+    void onAlarm(AlarmRule rule, long sensorId, double value, boolean raised);
+}
+
+// Cada regra vira pontos em arrays ordenados: onde dispara e onde limpa (limite ± histerese).
+// Só os pontos cruzados entre a leitura anterior e a atual podem mudar o estado de uma
+// regra, então cada leitura custa duas buscas binárias por array mais os cruzamentos e as
+// regras em debounce: O(log regras + cruzamentos), não importa quantas estejam disparadas.
+// O estado de histerese e debounce fica em arrays primitivos de cada sensor.
+//
+// replaceRules compila o novo conjunto fora do caminho de leitura e o publica numa
+// única escrita volatile, sem tocar no estado, que só a thread de leitura altera. Na
+// próxima leitura de cada sensor, essa thread adota as tabelas novas e leva junto o
+// estado das regras que continuam (mesmo id); as regras novas são avaliadas por inteiro.
+// Um sensor deve receber leituras de uma thread por vez; sensores diferentes, em paralelo.
+class AlarmRuleEngine {
+    private final AlarmListener listener;
+    private volatile CompiledRules compiled = CompiledRules.compile(List.of(), null);
+
+    public AlarmRuleEngine(AlarmListener listener) {
+        this.listener = listener;
+    }
+
+    public synchronized void replaceRules(Collection<AlarmRule> rules) {
+        compiled = CompiledRules.compile(rules, compiled);
+    }
+
+    public int getRuleCount() {
+        return compiled.rules.length;
+    }
+
+    // Estado visto pela última leitura do sensor; regra ainda não adotada conta como inativa
+    public boolean isActive(long ruleId) {
+        CompiledRules current = compiled;
+        for (int r = 0; r < current.rules.length; r++) {
+            if (current.rules[r].getId() == ruleId) {
+                SensorRules adopted = current.find(current.rules[r].getSensorId()).state.current;
+                for (int i = 0; i < adopted.ruleIds.length; i++) {
+                    if (adopted.ruleIds[i] == ruleId) {
+                        return adopted.active[i];
+                    }
+                }
+                return false;
+            }
+        }
+        return false;
+    }
+
+    // Adapta um TemperatureSensor existente, que não tem identidade própria
+    public TemperatureMonitorObserver.TemperatureObserver observer(long sensorId) {
+        return temperature -> onReading(sensorId, System.currentTimeMillis(), temperature);
+    }
+
+    public void onReading(long sensorId, long timestampMillis, double value) {
+        CompiledRules rules = compiled;
+        SensorRules sensor = rules.find(sensorId);
+        if (sensor == null || Double.isNaN(value)) {
+            return;
+        }
+        SensorState state = sensor.state;
+        if (state.current != sensor) {
+            // Primeira leitura depois de uma troca: só esta thread mexe no estado do sensor,
+            // então as tabelas anteriores já não mudam enquanto são copiadas
+            sensor.adopt(state);
+        }
+        double rate = Double.NaN;
+        if (state.hasLast && timestampMillis > state.lastTimestamp) {
+            rate = Math.abs(value - state.lastValue) * 1000.0 / (timestampMillis - state.lastTimestamp);
+        }
+        // Sem leitura anterior válida, o "anterior" vira -∞ ou +∞ conforme o sentido do
+        // cruzamento, e as buscas cobrem todas as regras satisfeitas
+        boolean fresh = state.fresh || !state.hasLast;
+        double up = fresh ? Double.NEGATIVE_INFINITY : state.lastValue;
+        double down = fresh ? Double.POSITIVE_INFINITY : state.lastValue;
+
+        // Limpeza: ativas que saíram além da histerese
+        SortedPoints points = sensor.aboveClear;
+        for (int i = points.firstAtLeast(value), end = points.firstAtLeast(down); i < end; i++) {
+            clear(rules, sensor, points.rules[i], value);
+        }
+        points = sensor.belowClear;
+        for (int i = points.firstAbove(up), end = points.firstAbove(value); i < end; i++) {
+            clear(rules, sensor, points.rules[i], value);
+        }
+        points = sensor.bandClearLow;
+        for (int i = points.firstAbove(value), end = points.firstAbove(down); i < end; i++) {
+            clear(rules, sensor, points.rules[i], value);
+        }
+        points = sensor.bandClearHigh;
+        for (int i = points.firstAtLeast(up), end = points.firstAtLeast(value); i < end; i++) {
+            clear(rules, sensor, points.rules[i], value);
+        }
+
+        // Debounce em andamento: conta mais uma ou zera
+        int kept = 0;
+        for (int p = 0; p < sensor.pendingSize; p++) {
+            int r = sensor.pending[p];
+            if (!satisfies(rules, r, value, rate)) {
+                sensor.streak[r - sensor.offset] = 0;
+            } else if (++sensor.streak[r - sensor.offset] >= rules.debounce[r]) {
+                raise(rules, sensor, r, value);
+            } else {
+                sensor.pending[kept++] = r;
+            }
+        }
+        sensor.pendingSize = kept;
+
+        // Entrada: regras cujo limite foi cruzado para dentro
+        points = sensor.aboveEnter;
+        for (int i = points.firstAtLeast(up), end = points.firstAtLeast(value); i < end; i++) {
+            enter(rules, sensor, points.rules[i], value);
+        }
+        points = sensor.belowEnter;
+        for (int i = points.firstAbove(value), end = points.firstAbove(down); i < end; i++) {
+            enter(rules, sensor, points.rules[i], value);
+        }
+        // Faixas: entra pelo início (subindo) ou pelo fim (descendo); as que foram
+        // atravessadas inteiras numa leitura só são filtradas pela outra ponta
+        points = sensor.bandLow;
+        for (int i = points.firstAbove(up), end = points.firstAbove(value); i < end; i++) {
+            int r = points.rules[i];
+            if (rules.high[r] >= value) {
+                enter(rules, sensor, r, value);
+            }
+        }
+        points = sensor.bandHigh;
+        for (int i = points.firstAtLeast(value), end = points.firstAtLeast(down); i < end; i++) {
+            int r = points.rules[i];
+            if (rules.low[r] <= value) {
+                enter(rules, sensor, r, value);
+            }
+        }
+
+        // Taxa de variação: o mesmo esquema do ABOVE, sobre a taxa em vez do valor
+        if (!Double.isNaN(rate)) {
+            boolean freshRate = fresh || Double.isNaN(state.lastRate);
+            double rateUp = freshRate ? Double.NEGATIVE_INFINITY : state.lastRate;
+            double rateDown = freshRate ? Double.POSITIVE_INFINITY : state.lastRate;
+            points = sensor.rateClear;
+            for (int i = points.firstAtLeast(rate), end = points.firstAtLeast(rateDown); i < end; i++) {
+                clear(rules, sensor, points.rules[i], value);
+            }
+            points = sensor.rateEnter;
+            for (int i = points.firstAtLeast(rateUp), end = points.firstAtLeast(rate); i < end; i++) {
+                enter(rules, sensor, points.rules[i], value);
+            }
+        }
+
+        state.fresh = false;
+        state.hasLast = true;
+        state.lastValue = value;
+        state.lastTimestamp = timestampMillis;
+        state.lastRate = rate;
+    }
+
+    private void enter(CompiledRules rules, SensorRules sensor, int r, double value) {
+        int i = r - sensor.offset;
+        // Ativa ou já em debounce: o cruzamento não muda nada
+        if (sensor.active[i] || sensor.streak[i] > 0) {
+            return;
+        }
+        if (rules.debounce[r] <= 1) {
+            raise(rules, sensor, r, value);
+        } else {
+            sensor.streak[i] = 1;
+            sensor.addPending(r);
+        }
+    }
+
+    private void raise(CompiledRules rules, SensorRules sensor, int r, double value) {
+        sensor.active[r - sensor.offset] = true;
+        sensor.streak[r - sensor.offset] = 0;
+        listener.onAlarm(rules.rules[r], sensor.sensorId, value, true);
+    }
+
+    private void clear(CompiledRules rules, SensorRules sensor, int r, double value) {
+        if (sensor.active[r - sensor.offset]) {
+            sensor.active[r - sensor.offset] = false;
+            listener.onAlarm(rules.rules[r], sensor.sensorId, value, false);
+        }
+    }
+
+    private static boolean satisfies(CompiledRules rules, int r, double value, double rate) {
+        return switch (rules.rules[r].getKind()) {
+            case ABOVE -> value > rules.low[r];
+            case BELOW -> value < rules.low[r];
+            case BAND -> value >= rules.low[r] && value <= rules.high[r];
+            case RATE_OF_CHANGE -> rate > rules.low[r];
+        };
+    }
+
+    // Pontos ordenados com a regra de cada um; as buscas devolvem o início de um intervalo
+    private static final class SortedPoints {
+        static final SortedPoints EMPTY = new SortedPoints(new double[0], new int[0]);
+
+        final double[] keys;
+        final int[] rules;
+
+        SortedPoints(double[] keys, int[] rules) {
+            this.keys = keys;
+            this.rules = rules;
+        }
+
+        // Primeiro índice com chave >= x
+        int firstAtLeast(double x) {
+            int low = 0;
+            int high = keys.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (keys[mid] < x) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        // Primeiro índice com chave > x
+        int firstAbove(double x) {
+            int low = 0;
+            int high = keys.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (keys[mid] <= x) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        static SortedPoints of(List<Integer> indexes, java.util.function.IntToDoubleFunction key) {
+            if (indexes.isEmpty()) {
+                return EMPTY;
+            }
+            Integer[] sorted = indexes.toArray(new Integer[0]);
+            Arrays.sort(sorted, (a, b) -> Double.compare(key.applyAsDouble(a), key.applyAsDouble(b)));
+            double[] keys = new double[sorted.length];
+            int[] rules = new int[sorted.length];
+            for (int i = 0; i < sorted.length; i++) {
+                rules[i] = sorted[i];
+                keys[i] = key.applyAsDouble(sorted[i]);
+            }
+            return new SortedPoints(keys, rules);
+        }
+    }
+
+    // Índices de um sensor numa versão das regras, com o estado das regras dessa versão
+    private static final class SensorRules {
+        final long sensorId;
+        // As regras do sensor ocupam [offset, offset + ruleIds.length) no conjunto compilado
+        final int offset;
+        final long[] ruleIds;
+        SortedPoints aboveEnter = SortedPoints.EMPTY;
+        SortedPoints aboveClear = SortedPoints.EMPTY;
+        SortedPoints belowEnter = SortedPoints.EMPTY;
+        SortedPoints belowClear = SortedPoints.EMPTY;
+        SortedPoints bandLow = SortedPoints.EMPTY;
+        SortedPoints bandHigh = SortedPoints.EMPTY;
+        SortedPoints bandClearLow = SortedPoints.EMPTY;
+        SortedPoints bandClearHigh = SortedPoints.EMPTY;
+        SortedPoints rateEnter = SortedPoints.EMPTY;
+        SortedPoints rateClear = SortedPoints.EMPTY;
+
+        // Escritos só pela thread de leitura depois que ela adota esta versão
+        final boolean[] active;
+        // Leituras consecutivas dentro da condição enquanto a regra ainda não disparou
+        final int[] streak;
+        // Regras com debounce em andamento
+        int[] pending = new int[8];
+        int pendingSize;
+
+        // Compartilhado entre as versões do mesmo sensor
+        SensorState state;
+
+        SensorRules(long sensorId, int offset, long[] ruleIds) {
+            this.sensorId = sensorId;
+            this.offset = offset;
+            this.ruleIds = ruleIds;
+            this.active = new boolean[ruleIds.length];
+            this.streak = new int[ruleIds.length];
+        }
+
+        // Mantém alarmes ativos e debounce em andamento das regras que continuam
+        void adopt(SensorState state) {
+            SensorRules previous = state.current;
+            Map<Long, Integer> previousIndex = new HashMap<>();
+            for (int i = 0; i < previous.ruleIds.length; i++) {
+                previousIndex.put(previous.ruleIds[i], i);
+            }
+            for (int i = 0; i < ruleIds.length; i++) {
+                Integer old = previousIndex.get(ruleIds[i]);
+                if (old == null) {
+                    continue;
+                }
+                active[i] = previous.active[old];
+                streak[i] = active[i] ? 0 : previous.streak[old];
+                if (streak[i] > 0) {
+                    addPending(offset + i);
+                }
+            }
+            state.fresh = true;
+            state.current = this;
+        }
+
+        void addPending(int rule) {
+            if (pendingSize == pending.length) {
+                pending = Arrays.copyOf(pending, pending.length * 2);
+            }
+            pending[pendingSize++] = rule;
+        }
+    }
+
+    // Última leitura de um sensor e a versão das regras que ela usou
+    private static final class SensorState {
+        // volatile só para isActive, que consulta de outra thread
+        volatile SensorRules current;
+        // Regras novas ainda não avaliadas contra a última leitura
+        boolean fresh = true;
+        boolean hasLast;
+        double lastValue;
+        double lastRate = Double.NaN;
+        long lastTimestamp;
+
+        SensorState(SensorRules current) {
+            this.current = current;
+        }
+    }
+
+    // Conjunto compilado e imutável; o estado fica nos SensorRules
+    private static final class CompiledRules {
+        final AlarmRule[] rules;
+        final double[] low;
+        final double[] high;
+        final int[] debounce;
+
+        // Mapa sensorId -> SensorRules com endereçamento aberto, sem boxing na leitura
+        final long[] sensorKeys;
+        final SensorRules[] sensorValues;
+
+        private CompiledRules(AlarmRule[] rules, long[] sensorKeys, SensorRules[] sensorValues) {
+            int n = rules.length;
+            this.rules = rules;
+            this.low = new double[n];
+            this.high = new double[n];
+            this.debounce = new int[n];
+            for (int r = 0; r < n; r++) {
+                low[r] = rules[r].getLow();
+                high[r] = rules[r].getHigh();
+                debounce[r] = rules[r].getDebounce();
+            }
+            this.sensorKeys = sensorKeys;
+            this.sensorValues = sensorValues;
+        }
+
+        SensorRules find(long sensorId) {
+            if (sensorValues.length == 0) {
+                return null;
+            }
+            int mask = sensorKeys.length - 1;
+            for (int i = mix(sensorId) & mask; ; i = (i + 1) & mask) {
+                SensorRules candidate = sensorValues[i];
+                if (candidate == null) {
+                    return null;
+                }
+                if (sensorKeys[i] == sensorId) {
+                    return candidate;
+                }
+            }
+        }
+
+        static CompiledRules compile(Collection<AlarmRule> input, CompiledRules previous) {
+            AlarmRule[] rules = input.toArray(new AlarmRule[0]);
+            // Regras do mesmo sensor ficam contíguas, na ordem de entrada
+            Arrays.sort(rules, Comparator.comparingLong(AlarmRule::getSensorId));
+            int sensorCount = 0;
+            for (int r = 0; r < rules.length; r++) {
+                if (r == 0 || rules[r].getSensorId() != rules[r - 1].getSensorId()) {
+                    sensorCount++;
+                }
+            }
+
+            int capacity = Integer.highestOneBit(Math.max(1, sensorCount) * 2) * 2;
+            long[] keys = new long[capacity];
+            SensorRules[] values = new SensorRules[capacity];
+            for (int start = 0, end; start < rules.length; start = end) {
+                long sensorId = rules[start].getSensorId();
+                end = start + 1;
+                while (end < rules.length && rules[end].getSensorId() == sensorId) {
+                    end++;
+                }
+                SensorRules sensor = build(sensorId, start, end, rules);
+                // O estado segue com o sensor; quem o migra é a thread de leitura, em adopt
+                SensorRules old = previous == null ? null : previous.find(sensorId);
+                sensor.state = old != null ? old.state : new SensorState(sensor);
+                int mask = capacity - 1;
+                int i = mix(sensorId) & mask;
+                while (values[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = sensorId;
+                values[i] = sensor;
+            }
+            return new CompiledRules(rules, keys, values);
+        }
+
+        private static SensorRules build(long sensorId, int start, int end, AlarmRule[] rules) {
+            long[] ruleIds = new long[end - start];
+            for (int r = start; r < end; r++) {
+                ruleIds[r - start] = rules[r].getId();
+            }
+            SensorRules sensor = new SensorRules(sensorId, start, ruleIds);
+            List<Integer> above = new ArrayList<>();
+            List<Integer> below = new ArrayList<>();
+            List<Integer> bands = new ArrayList<>();
+            List<Integer> rates = new ArrayList<>();
+            for (int r = start; r < end; r++) {
+                switch (rules[r].getKind()) {
+                    case ABOVE -> above.add(r);
+                    case BELOW -> below.add(r);
+                    case BAND -> bands.add(r);
+                    case RATE_OF_CHANGE -> rates.add(r);
+                }
+            }
+            sensor.aboveEnter = SortedPoints.of(above, r -> rules[r].getLow());
+            sensor.aboveClear = SortedPoints.of(above, r -> rules[r].getLow() - rules[r].getHysteresis());
+            sensor.belowEnter = SortedPoints.of(below, r -> rules[r].getLow());
+            sensor.belowClear = SortedPoints.of(below, r -> rules[r].getLow() + rules[r].getHysteresis());
+            sensor.bandLow = SortedPoints.of(bands, r -> rules[r].getLow());
+            sensor.bandHigh = SortedPoints.of(bands, r -> rules[r].getHigh());
+            sensor.bandClearLow = SortedPoints.of(bands, r -> rules[r].getLow() - rules[r].getHysteresis());
+            sensor.bandClearHigh = SortedPoints.of(bands, r -> rules[r].getHigh() + rules[r].getHysteresis());
+            sensor.rateEnter = SortedPoints.of(rates, r -> rules[r].getLow());
+            sensor.rateClear = SortedPoints.of(rates, r -> rules[r].getLow() - rules[r].getHysteresis());
+            return sensor;
+        }
+
+        private static int mix(long id) {
+            long h = id * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
+
+
+// Verificação: histerese, debounce, troca de regras com leituras em andamento e custo por leitura
+class AlarmRuleEngineCheck {
+    public static void main(String[] args) throws InterruptedException {
+        List<String> events = new ArrayList<>();
+        AlarmRuleEngine engine = new AlarmRuleEngine((rule, sensorId, value, raised) ->
+            events.add((raised ? "+" : "-") + rule.getId() + "@" + value));
+
+        engine.replaceRules(List.of(
+            AlarmRule.above(1, 7, 30).withHysteresis(2),
+            AlarmRule.below(2, 7, 5).withDebounce(3),
+            AlarmRule.band(3, 7, 20, 25),
+            AlarmRule.rateOfChange(4, 7, 10)));
+        long t = 0;
+        for (double value : new double[] {22, 31, 29, 27.5, 4, 4, 4, 6}) {
+            engine.onReading(7, t += 1000, value);
+        }
+        // 22 entra na faixa; 31 sai da faixa e dispara o acima (e varia 9/s, abaixo do limite);
+        // 29 fica dentro da histerese; 27,5 limpa; 4 varia 23,5/s; o abaixo espera 3 leituras
+        check(events.equals(List.of("+3@22.0", "-3@31.0", "+1@31.0", "-1@27.5", "+4@4.0", "-4@4.0", "+2@4.0", "-2@6.0")),
+            "eventos " + events);
+
+        // Troca preserva o alarme ativo de uma regra que continua; a removida some sem evento
+        events.clear();
+        engine.onReading(7, t += 1000, 40);
+        engine.replaceRules(List.of(AlarmRule.above(1, 7, 30), AlarmRule.above(5, 7, 35)));
+        engine.onReading(7, t += 1000, 41);
+        engine.onReading(7, t += 1000, 10);
+        check(events.equals(List.of("+1@40.0", "+4@40.0", "+5@41.0", "-1@10.0", "-5@10.0")), "troca " + events);
+
+        // Mesmo estado final que avaliar cada regra a cada leitura, em dados aleatórios
+        java.util.Random random = new java.util.Random(42);
+        List<AlarmRule> mixed = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            long sensor = i % 3;
+            double a = random.nextDouble() * 40;
+            AlarmRule rule = switch (i % 4) {
+                case 0 -> AlarmRule.above(i, sensor, a);
+                case 1 -> AlarmRule.below(i, sensor, a);
+                case 2 -> AlarmRule.band(i, sensor, a, a + random.nextDouble() * 8);
+                default -> AlarmRule.rateOfChange(i, sensor, a);
+            };
+            mixed.add(rule.withHysteresis(random.nextInt(3)).withDebounce(1 + random.nextInt(3)));
+        }
+        int[] raisedCount = new int[1];
+        AlarmRuleEngine randomized = new AlarmRuleEngine((rule, sensorId, value, up) -> raisedCount[0] += up ? 1 : 0);
+        randomized.replaceRules(mixed.subList(0, 300));
+        NaiveRules naive = new NaiveRules(mixed.subList(0, 300));
+        double[] last = {20, 20, 20};
+        for (int i = 0; i < 20_000; i++) {
+            int sensor = i % 3;
+            last[sensor] = Math.max(-5, Math.min(50, last[sensor] + random.nextGaussian() * 3));
+            if (i == 10_000) {
+                randomized.replaceRules(mixed.subList(100, 400));
+                naive = naive.replace(mixed.subList(100, 400));
+            }
+            randomized.onReading(sensor, 1000L * (i / 3 + 1), last[sensor]);
+            naive.onReading(sensor, 1000L * (i / 3 + 1), last[sensor]);
+        }
+        for (AlarmRule rule : mixed.subList(100, 400)) {
+            check(randomized.isActive(rule.getId()) == naive.active.get(rule.getId()), "divergência na regra " + rule);
+        }
+        check(raisedCount[0] > 1000, "poucos disparos: " + raisedCount[0]);
+
+        // Índice contra varredura linear, com trocas concorrentes às leituras
+        int ruleCount = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        int sensors = 100;
+        List<AlarmRule> rules = new ArrayList<>();
+        for (int i = 0; i < ruleCount; i++) {
+            long sensor = i % sensors;
+            double a = random.nextDouble() * 100;
+            rules.add(switch (i % 4) {
+                case 0 -> AlarmRule.above(i, sensor, a);
+                case 1 -> AlarmRule.below(i, sensor, a);
+                case 2 -> AlarmRule.band(i, sensor, a, a + random.nextDouble() * 5);
+                default -> AlarmRule.rateOfChange(i, sensor, 50 + a * 10);
+            });
+        }
+        // Trocas pelo mesmo conjunto não podem perder nem repetir eventos: a sequência tem
+        // de alternar disparo e limpeza por regra e bater com uma execução sem trocas
+        EventLog reference = new EventLog(ruleCount);
+        AlarmRuleEngine unswapped = new AlarmRuleEngine(reference);
+        unswapped.replaceRules(rules);
+        int readings = 2_000_000;
+        for (int i = 0; i < readings; i++) {
+            unswapped.onReading(i % sensors, i / sensors * 10L, 50 + 45 * Math.sin(i * 0.001));
+        }
+
+        EventLog swappedLog = new EventLog(ruleCount);
+        AlarmRuleEngine indexed = new AlarmRuleEngine(swappedLog);
+        indexed.replaceRules(rules);
+        java.util.concurrent.atomic.AtomicBoolean reading = new java.util.concurrent.atomic.AtomicBoolean(true);
+        int[] swaps = new int[1];
+        Thread swapper = Thread.ofPlatform().start(() -> {
+            while (reading.get()) {
+                indexed.replaceRules(rules);
+                swaps[0]++;
+            }
+        });
+        long start = System.nanoTime();
+        for (int i = 0; i < readings; i++) {
+            indexed.onReading(i % sensors, i / sensors * 10L, 50 + 45 * Math.sin(i * 0.001));
+        }
+        long elapsed = System.nanoTime() - start;
+        reading.set(false);
+        swapper.join();
+        check(reference.violations == 0 && swappedLog.violations == 0,
+            "eventos fora de ordem: " + reference.violations + " / " + swappedLog.violations);
+        check(swappedLog.count == reference.count && swappedLog.hash == reference.hash,
+            "eventos com trocas " + swappedLog.count + " contra " + reference.count + " sem trocas");
+        check(swaps[0] > 0, "nenhuma troca durante as leituras");
+
+        long linearStart = System.nanoTime();
+        long linearMatches = 0;
+        for (int i = 0; i < readings / 100; i++) {
+            double value = 50 + 45 * Math.sin(i * 0.001);
+            for (AlarmRule rule : rules) {
+                if (rule.getSensorId() == i % sensors && rule.getKind() == AlarmRule.Kind.ABOVE && value > rule.getLow()) {
+                    linearMatches++;
+                }
+            }
+        }
+        long linearElapsed = (System.nanoTime() - linearStart) * 100;
+        System.out.printf("%d regras, %d leituras, %d trocas: indexado %.0f ns/leitura, varredura %.0f ns/leitura; %d eventos (%d acertos lineares)%n",
+            ruleCount, readings, swaps[0], (double) elapsed / readings, (double) linearElapsed / readings, swappedLog.count, linearMatches);
+        System.out.println("OK");
+    }
+
+    // Confere que cada regra alterna disparo e limpeza e resume os eventos num hash que não
+    // depende da ordem entre regras numa mesma leitura (a avaliação completa depois de uma
+    // troca percorre as faixas por outra ponta)
+    private static final class EventLog implements AlarmListener {
+        final boolean[] active;
+        long count;
+        long hash;
+        long violations;
+
+        EventLog(int ruleCount) {
+            this.active = new boolean[ruleCount];
+        }
+
+        @Override
+        public void onAlarm(AlarmRule rule, long sensorId, double value, boolean raised) {
+            int id = (int) rule.getId();
+            if (active[id] == raised) {
+                violations++;
+            }
+            active[id] = raised;
+            count++;
+            long h = (id * 2L + (raised ? 1 : 0)) * 0x9E3779B97F4A7C15L ^ Double.doubleToLongBits(value);
+            hash += h ^ (h >>> 29);
+        }
+    }
+
+    // Referência: avalia todas as regras do sensor a cada leitura
+    private static final class NaiveRules {
+        final List<AlarmRule> rules;
+        final Map<Long, Boolean> active = new HashMap<>();
+        final Map<Long, Integer> streak = new HashMap<>();
+        final Map<Long, double[]> last = new HashMap<>();
+
+        NaiveRules(List<AlarmRule> rules) {
+            this.rules = rules;
+            for (AlarmRule rule : rules) {
+                active.put(rule.getId(), false);
+                streak.put(rule.getId(), 0);
+            }
+        }
+
+        NaiveRules replace(List<AlarmRule> updated) {
+            NaiveRules next = new NaiveRules(updated);
+            for (AlarmRule rule : updated) {
+                if (active.containsKey(rule.getId())) {
+                    next.active.put(rule.getId(), active.get(rule.getId()));
+                    next.streak.put(rule.getId(), streak.get(rule.getId()));
+                }
+            }
+            next.last.putAll(last);
+            return next;
+        }
+
+        void onReading(long sensorId, long timestamp, double value) {
+            double[] previous = last.get(sensorId);
+            double rate = previous == null ? Double.NaN : Math.abs(value - previous[0]) * 1000.0 / (timestamp - previous[1]);
+            last.put(sensorId, new double[] {value, timestamp});
+            for (AlarmRule rule : rules) {
+                if (rule.getSensorId() != sensorId) {
+                    continue;
+                }
+                double t = rule.getLow();
+                double h = rule.getHysteresis();
+                boolean satisfies = switch (rule.getKind()) {
+                    case ABOVE -> value > t;
+                    case BELOW -> value < t;
+                    case BAND -> value >= t && value <= rule.getHigh();
+                    case RATE_OF_CHANGE -> rate > t;
+                };
+                if (active.get(rule.getId())) {
+                    boolean clears = switch (rule.getKind()) {
+                        case ABOVE -> value <= t - h;
+                        case BELOW -> value >= t + h;
+                        case BAND -> value < t - h || value > rule.getHigh() + h;
+                        case RATE_OF_CHANGE -> rate <= t - h;
+                    };
+                    if (clears) {
+                        active.put(rule.getId(), false);
+                    }
+                } else if (satisfies) {
+                    int count = streak.get(rule.getId()) + 1;
+                    boolean raise = count >= rule.getDebounce();
+                    active.put(rule.getId(), raise);
+                    streak.put(rule.getId(), raise ? 0 : count);
+                } else {
+                    streak.put(rule.getId(), 0);
+                }
+            }
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package examples.patterns.strategy;
+
+/**
+ * Extensão assíncrona do Pattern Strategy
+ * Cenário: milhares de checkouts em andamento sem uma platform thread para cada um
+ * (virtual threads exigem Java 21+)
+ */
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+// Adapter: permite que as estratégias síncronas atendam ao contrato assíncrono.
+// É o default de PaymentStrategy.processPaymentAsync, então toda estratégia síncrona já passa por aqui
+final class BlockingPaymentAdapter {
+    // Uma virtual thread por chamada: bloquear no gateway não prende uma platform thread
+    private static final ExecutorService VIRTUAL_THREADS = Executors.newVirtualThreadPerTaskExecutor();
+
+    private BlockingPaymentAdapter() {
+    }
+
+    static CompletableFuture<PaymentResult> supplyAsync(PaymentStrategy strategy, BigDecimal amount) {
+        return CompletableFuture.supplyAsync(() -> strategy.processPayment(amount), VIRTUAL_THREADS);
+    }
+}
+
+// Executor de checkouts assíncronos: limita a concorrência e aplica timeout por estratégia
+class AsyncCheckoutExecutor {
+    private static final AsyncCheckoutExecutor SHARED =
+        new AsyncCheckoutExecutor(10_000, Duration.ofSeconds(30));
+
+    private final Semaphore permits;
+    private final Duration defaultTimeout;
+    // Timeout por método de pagamento (chave: getPaymentMethodName())
+    private final Map<String, Duration> timeouts = new ConcurrentHashMap<>();
+
+    public AsyncCheckoutExecutor(int maxInFlight, Duration defaultTimeout) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("maxInFlight deve ser positivo");
+        }
+        this.permits = new Semaphore(maxInFlight);
+        this.defaultTimeout = defaultTimeout;
+    }
+
+    public static AsyncCheckoutExecutor shared() {
+        return SHARED;
+    }
+
+    public void setTimeout(String paymentMethodName, Duration timeout) {
+        timeouts.put(paymentMethodName, timeout);
+    }
+
+    public Duration getTimeout(PaymentStrategy strategy) {
+        return timeouts.getOrDefault(strategy.getPaymentMethodName(), defaultTimeout);
+    }
+
+    public int getAvailableSlots() {
+        return permits.availablePermits();
+    }
+
+    // O future falha com TimeoutException se a estratégia estourar o seu timeout.
+    // Sem vaga livre, falha na hora com RejectedExecutionException: sob sobrecarga o
+    // chamador recebe a recusa em vez de empilhar threads esperando sem prazo.
+    // A vaga só é devolvida quando a chamada ao gateway termina de fato, então
+    // chamadas lentas continuam contando no limite mesmo depois do timeout.
+    public CompletableFuture<PaymentResult> submit(PaymentStrategy strategy, BigDecimal amount) {
+        return withTimeout(strategy, start(strategy, amount));
+    }
+
+    // A chamada ao gateway sem timeout: termina só quando a cobrança termina de fato.
+    // Quem precisa reagir ao resultado real (limpar o carrinho, guardar para idempotência)
+    // se pendura aqui, e não na cópia com timeout, que pode falhar com a cobrança em andamento
+    CompletableFuture<PaymentResult> start(PaymentStrategy strategy, BigDecimal amount) {
+        if (!permits.tryAcquire()) {
+            return CompletableFuture.failedFuture(
+                new RejectedExecutionException("Limite de checkouts em andamento atingido"));
+        }
+
+        CompletableFuture<PaymentResult> call;
+        try {
+            call = strategy.processPaymentAsync(amount);
+        } catch (RuntimeException e) {
+            permits.release();
+            return CompletableFuture.failedFuture(e);
+        }
+        call.whenComplete((result, error) -> permits.release());
+        return call;
+    }
+
+    // Cópia com o timeout da estratégia: estourar o prazo (ou cancelar a cópia) não afeta call
+    CompletableFuture<PaymentResult> withTimeout(PaymentStrategy strategy, CompletableFuture<PaymentResult> call) {
+        return call.copy().orTimeout(getTimeout(strategy).toMillis(), TimeUnit.MILLISECONDS);
+    }
+}
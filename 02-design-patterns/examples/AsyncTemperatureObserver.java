@@ -0,0 +1,193 @@
+package examples.patterns.observer;
+
+/**
+ * Entrega assíncrona e isolada por observer
+ * Cenário: um App Mobile lento não pode atrasar o sensor nem os outros observers
+ */
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// O que fazer quando a fila do observer está cheia
+enum OverflowPolicy {
+    // Descarta a leitura mais antiga da fila: o observer sempre vê as mais recentes
+    DROP_OLDEST,
+    // Descarta a leitura que está chegando
+    DROP_NEWEST,
+    // O sensor espera até haver espaço. Único modo em que o sensor depende do observer;
+    // use só para assinantes que não podem perder leituras
+    BLOCK
+}
+
+// Decorator: registrado no sensor como um observer comum, mas update só enfileira a
+// leitura numa fila primitiva (sem boxing) e retorna. Um único drenador por vez roda
+// no executor e chama o observer original na ordem de chegada.
+class AsyncTemperatureObserver implements TemperatureMonitorObserver.TemperatureObserver, AutoCloseable {
+    // Padrão: uma virtual thread por rodada de entrega
+    private static final ExecutorService VIRTUAL_THREADS = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final TemperatureMonitorObserver.TemperatureObserver delegate;
+    private final OverflowPolicy policy;
+    private final ExecutorService executor;
+
+    // Fila circular protegida por lock; o lock só cobre a cópia do valor,
+    // nunca a chamada ao observer
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition drained = lock.newCondition();
+    private final double[] ring;
+    private int head;
+    private int size;
+
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private volatile boolean closed;
+
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    public AsyncTemperatureObserver(TemperatureMonitorObserver.TemperatureObserver delegate,
+                                    int capacity, OverflowPolicy policy, ExecutorService executor) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity deve ser positivo");
+        }
+        this.delegate = delegate;
+        this.policy = policy;
+        this.executor = executor;
+        this.ring = new double[capacity];
+    }
+
+    public AsyncTemperatureObserver(TemperatureMonitorObserver.TemperatureObserver delegate,
+                                    int capacity, OverflowPolicy policy) {
+        this(delegate, capacity, policy, VIRTUAL_THREADS);
+    }
+
+    @Override
+    public void update(double temperature) {
+        if (closed) {
+            dropped.increment();
+            return;
+        }
+        lock.lock();
+        try {
+            if (size == ring.length) {
+                switch (policy) {
+                    case DROP_NEWEST -> {
+                        dropped.increment();
+                        return;
+                    }
+                    case DROP_OLDEST -> {
+                        head = (head + 1) % ring.length;
+                        size--;
+                        dropped.increment();
+                    }
+                    case BLOCK -> {
+                        while (size == ring.length && !closed) {
+                            notFull.awaitUninterruptibly();
+                        }
+                        if (closed) {
+                            dropped.increment();
+                            return;
+                        }
+                    }
+                }
+            }
+            ring[(head + size) % ring.length] = temperature;
+            size++;
+        } finally {
+            lock.unlock();
+        }
+        scheduleDrain();
+    }
+
+    public long getDeliveredCount() { return delivered.sum(); }
+    public long getDroppedCount() { return dropped.sum(); }
+    // Exceções lançadas pelo observer: contadas e isoladas, a entrega continua
+    public long getFailureCount() { return failures.sum(); }
+
+    public int getQueueSize() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Para de aceitar leituras e só retorna com a fila vazia e nenhuma entrega em curso.
+    // Se sobrou leitura sem drenador (executor recusou, ou o agendamento ainda não
+    // aconteceu), a entrega é feita aqui, na thread que fechou.
+    @Override
+    public void close() {
+        closed = true;
+        while (true) {
+            lock.lock();
+            try {
+                notFull.signalAll();
+                while (draining.get()) {
+                    drained.awaitUninterruptibly();
+                }
+                if (size == 0) {
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (draining.compareAndSet(false, true)) {
+                drain();
+            }
+        }
+    }
+
+    // Executor recusou: as leituras continuam na fila e saem na próxima rodada ou no close
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                lock.lock();
+                try {
+                    draining.set(false);
+                    drained.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            double value;
+            lock.lock();
+            try {
+                if (size == 0) {
+                    draining.set(false);
+                    drained.signalAll();
+                    break;
+                }
+                value = ring[head];
+                head = (head + 1) % ring.length;
+                size--;
+                notFull.signal();
+            } finally {
+                lock.unlock();
+            }
+            try {
+                delegate.update(value);
+                delivered.increment();
+            } catch (RuntimeException e) {
+                failures.increment();
+            }
+        }
+        // Uma leitura pode ter chegado entre o size == 0 e a liberação do flag
+        if (getQueueSize() > 0) {
+            scheduleDrain();
+        }
+    }
+}
@@ -0,0 +1,461 @@
+package examples.patterns.strategy;
+
+/**
+ * Geração de boletos (código de barras e linha digitável) sobre arrays de dígitos
+ * Cenário: um boleto por pagamento e lotes de milhões no faturamento de fim de mês
+ *
+ * Código de barras (44 posições, padrão FEBRABAN):
+ *   banco(3) moeda(1) DV(1) fator de vencimento(4) valor(10) campo livre(25)
+ * Campo livre (layout genérico deste exemplo):
+ *   carteira(3) nosso número(11) agência(4) conta(7)
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Fonte do nosso número. Precisa continuar de onde parou depois de um reinício:
+// dois boletos com o mesmo nosso número são recusados (ou baixados errado) pelo banco
+interface NossoNumeroSequence {
+    long next();
+
+    // Reserva count números consecutivos e devolve o primeiro; nenhum deles sai depois por next()
+    long reserve(long count);
+
+    // Em memória, continuando do último número emitido (lido, por exemplo, da base de cobrança)
+    static NossoNumeroSequence startingAfter(long lastIssued) {
+        AtomicLong current = new AtomicLong(lastIssued);
+        return new NossoNumeroSequence() {
+            @Override
+            public long next() {
+                return current.incrementAndGet();
+            }
+
+            @Override
+            public long reserve(long count) {
+                return current.getAndAdd(count) + 1;
+            }
+        };
+    }
+}
+
+// Sequência persistida com reserva em blocos: o arquivo guarda o maior número já
+// reservado, e só é regravado (com fsync) quando um bloco acaba. Depois de uma queda,
+// o que sobrou do bloco em uso é pulado; nenhum número se repete. Faixas para lotes
+// são reservadas depois do bloco em uso, com o mesmo fsync, e o bloco continua valendo.
+class FileNossoNumeroSequence implements NossoNumeroSequence {
+    private final Path file;
+    private final int blockSize;
+    private long next;
+    private long reservedUpTo = -1;
+
+    public FileNossoNumeroSequence(Path file, int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("blockSize deve ser positivo");
+        }
+        this.file = file;
+        this.blockSize = blockSize;
+    }
+
+    @Override
+    public synchronized long next() {
+        if (reservedUpTo < 0 || next > reservedUpTo) {
+            reserveBlock();
+        }
+        return next++;
+    }
+
+    @Override
+    public synchronized long reserve(long count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("count deve ser positivo");
+        }
+        return advance(count) + 1;
+    }
+
+    private void reserveBlock() {
+        long persisted = advance(blockSize);
+        next = persisted + 1;
+        reservedUpTo = persisted + blockSize;
+    }
+
+    // Soma count ao maior número reservado no arquivo e devolve o valor anterior
+    private long advance(long count) {
+        try {
+            long persisted = Files.exists(file) ? ByteBuffer.wrap(Files.readAllBytes(file)).getLong() : 0;
+            long limit = Math.addExact(persisted, count);
+            // Grava num temporário e troca de nome: o arquivo nunca fica pela metade
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                channel.write(ByteBuffer.allocate(Long.BYTES).putLong(0, limit));
+                channel.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return persisted;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Falha ao reservar nosso número em " + file, e);
+        }
+    }
+}
+
+class BoletoGenerator {
+    static final int BARCODE_DIGITS = 44;
+    static final int LINE_DIGITS = 47;
+    // "AAAAA.AAAAA BBBBB.BBBBBB CCCCC.CCCCCC D EEEEEEEEEEEEEE"
+    static final int FORMATTED_LINE_LENGTH = 54;
+    static final long MAX_AMOUNT_CENTS = 9_999_999_999L;
+    static final long MAX_NOSSO_NUMERO = 99_999_999_999L;
+
+    private static final LocalDate FACTOR_BASE = LocalDate.of(1997, 10, 7);
+
+    // Dígitos fixos do emissor, já convertidos para 0..9
+    private final byte[] bankDigits;
+    private final byte[] walletDigits;
+    private final byte[] agencyDigits;
+    private final byte[] accountDigits;
+    private final NossoNumeroSequence nossoNumeroSequence;
+
+    public BoletoGenerator(int bankCode, int wallet, int agency, long account,
+                           NossoNumeroSequence nossoNumeroSequence) {
+        this.bankDigits = toDigits(bankCode, 3);
+        this.walletDigits = toDigits(wallet, 3);
+        this.agencyDigits = toDigits(agency, 4);
+        this.accountDigits = toDigits(account, 7);
+        this.nossoNumeroSequence = nossoNumeroSequence;
+    }
+
+    public long nextNossoNumero() {
+        long nossoNumero = nossoNumeroSequence.next();
+        if (nossoNumero > MAX_NOSSO_NUMERO) {
+            // Voltar ao início repetiria números já emitidos
+            throw new IllegalStateException("Faixa de nosso número esgotada");
+        }
+        return nossoNumero;
+    }
+
+    // Faixa consecutiva para um lote, tirada da mesma sequência dos boletos avulsos
+    public long reserveNossoNumeros(long count) {
+        long first = nossoNumeroSequence.reserve(count);
+        if (first + count - 1 > MAX_NOSSO_NUMERO) {
+            throw new IllegalStateException("Faixa de nosso número esgotada");
+        }
+        return first;
+    }
+
+    // Preenche barcode (44 dígitos) e line (47 dígitos) com valores 0..9
+    public void generate(long nossoNumero, long amountCents, int dueFactor,
+                         byte[] barcode, byte[] line) {
+        if (amountCents < 0 || amountCents > MAX_AMOUNT_CENTS) {
+            throw new IllegalArgumentException("Valor fora do limite do boleto");
+        }
+        if (nossoNumero < 0 || nossoNumero > MAX_NOSSO_NUMERO) {
+            throw new IllegalArgumentException("Nosso número fora do limite");
+        }
+
+        System.arraycopy(bankDigits, 0, barcode, 0, 3);
+        barcode[3] = 9; // moeda: real
+        putDigits(barcode, 5, dueFactor, 4);
+        putDigits(barcode, 9, amountCents, 10);
+        System.arraycopy(walletDigits, 0, barcode, 19, 3);
+        putDigits(barcode, 22, nossoNumero, 11);
+        System.arraycopy(agencyDigits, 0, barcode, 33, 4);
+        System.arraycopy(accountDigits, 0, barcode, 37, 7);
+        barcode[4] = (byte) barcodeCheckDigit(barcode);
+
+        // Campo 1: banco + moeda + campo livre[0..5) + DV
+        System.arraycopy(barcode, 0, line, 0, 4);
+        System.arraycopy(barcode, 19, line, 4, 5);
+        line[9] = (byte) mod10(line, 0, 9);
+        // Campo 2: campo livre[5..15) + DV
+        System.arraycopy(barcode, 24, line, 10, 10);
+        line[20] = (byte) mod10(line, 10, 10);
+        // Campo 3: campo livre[15..25) + DV
+        System.arraycopy(barcode, 34, line, 21, 10);
+        line[31] = (byte) mod10(line, 21, 10);
+        // Campo 4: DV geral; Campo 5: fator + valor
+        line[32] = barcode[4];
+        System.arraycopy(barcode, 5, line, 33, 14);
+    }
+
+    // Fator de vencimento: dias desde 07/10/1997; ao passar de 9999 reinicia em 1000 (22/02/2025)
+    public static int dueFactor(LocalDate dueDate) {
+        long days = ChronoUnit.DAYS.between(FACTOR_BASE, dueDate);
+        if (days < 1000) {
+            throw new IllegalArgumentException("Data de vencimento anterior ao fator 1000");
+        }
+        return days <= 9999 ? (int) days : (int) ((days - 10000) % 9000) + 1000;
+    }
+
+    public static LocalDate addBusinessDays(LocalDate date, int businessDays) {
+        LocalDate result = date;
+        int added = 0;
+        while (added < businessDays) {
+            result = result.plusDays(1);
+            if (result.getDayOfWeek() != DayOfWeek.SATURDAY && result.getDayOfWeek() != DayOfWeek.SUNDAY) {
+                added++;
+            }
+        }
+        return result;
+    }
+
+    // DV do código de barras: módulo 11, pesos 2..9 da direita para a esquerda, pulando a posição 5
+    static int barcodeCheckDigit(byte[] barcode) {
+        int sum = 0;
+        int weight = 2;
+        for (int i = BARCODE_DIGITS - 1; i >= 0; i--) {
+            if (i == 4) {
+                continue;
+            }
+            sum += barcode[i] * weight;
+            weight = weight == 9 ? 2 : weight + 1;
+        }
+        int dv = 11 - (sum % 11);
+        return dv == 0 || dv == 10 || dv == 11 ? 1 : dv;
+    }
+
+    // DV dos campos da linha digitável: módulo 10, pesos 2 e 1 alternados da direita para a esquerda
+    static int mod10(byte[] digits, int offset, int length) {
+        int sum = 0;
+        int weight = 2;
+        for (int i = offset + length - 1; i >= offset; i--) {
+            int product = digits[i] * weight;
+            sum += product > 9 ? product - 9 : product;
+            weight = 3 - weight;
+        }
+        return (10 - sum % 10) % 10;
+    }
+
+    // Escreve os dígitos como ASCII no formato de exibição da linha digitável
+    static int writeFormattedLine(byte[] line, byte[] out, int offset) {
+        int pos = offset;
+        for (int i = 0; i < LINE_DIGITS; i++) {
+            if (i == 5 || i == 15 || i == 26) {
+                out[pos++] = '.';
+            } else if (i == 10 || i == 21 || i == 32 || i == 33) {
+                out[pos++] = ' ';
+            }
+            out[pos++] = (byte) ('0' + line[i]);
+        }
+        return pos - offset;
+    }
+
+    static String formatLine(byte[] line) {
+        byte[] out = new byte[FORMATTED_LINE_LENGTH];
+        writeFormattedLine(line, out, 0);
+        return new String(out, StandardCharsets.US_ASCII);
+    }
+
+    private static void putDigits(byte[] out, int offset, long value, int count) {
+        for (int i = offset + count - 1; i >= offset; i--) {
+            out[i] = (byte) (value % 10);
+            value /= 10;
+        }
+    }
+
+    private static byte[] toDigits(long value, int count) {
+        if (value < 0 || Long.toString(value).length() > count) {
+            throw new IllegalArgumentException("Valor " + value + " não cabe em " + count + " dígitos");
+        }
+        byte[] digits = new byte[count];
+        putDigits(digits, 0, value, count);
+        return digits;
+    }
+}
+
+// Faturamento em lote: divide o intervalo entre os núcleos com fork/join e
+// grava registros de largura fixa num arquivo mapeado em memória.
+// Registro: nosso número(11) | código de barras(44) | linha digitável formatada(54) | '\n'
+class BoletoBatchWriter {
+    static final int RECORD_BYTES = 11 + BoletoGenerator.BARCODE_DIGITS
+        + BoletoGenerator.FORMATTED_LINE_LENGTH + 1;
+    // Cada folha mapeia só a sua região: evita o limite de 2 GB por mapeamento
+    private static final int RECORDS_PER_TASK = 65_536;
+
+    // Valor de cada boleto do lote, consultado por índice
+    interface AmountSource {
+        long amountCents(long index);
+    }
+
+    private final BoletoGenerator generator;
+    private final ForkJoinPool pool;
+
+    public BoletoBatchWriter(BoletoGenerator generator, ForkJoinPool pool) {
+        this.generator = generator;
+        this.pool = pool;
+    }
+
+    public BoletoBatchWriter(BoletoGenerator generator) {
+        this(generator, ForkJoinPool.commonPool());
+    }
+
+    // Reserva count nossos números na sequência do gerador (a mesma da emissão avulsa,
+    // então o lote não repete números já emitidos) e devolve o primeiro.
+    // O boleto i recebe o nosso número primeiro + i
+    public long write(Path output, long count, LocalDate dueDate, AmountSource amounts) throws IOException {
+        if (count <= 0) {
+            throw new IllegalArgumentException("count deve ser positivo");
+        }
+        int dueFactor = BoletoGenerator.dueFactor(dueDate);
+        long firstNossoNumero = generator.reserveNossoNumeros(count);
+        try (FileChannel channel = FileChannel.open(output, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            pool.invoke(new Slice(channel, 0, count, firstNossoNumero, dueFactor, amounts));
+        }
+        return firstNossoNumero;
+    }
+
+    @SuppressWarnings("serial") // nunca serializada: só passa pelo ForkJoinPool
+    private final class Slice extends RecursiveAction {
+        private final FileChannel channel;
+        private final long from;
+        private final long to;
+        private final long firstNossoNumero;
+        private final int dueFactor;
+        private final AmountSource amounts;
+
+        Slice(FileChannel channel, long from, long to, long firstNossoNumero,
+              int dueFactor, AmountSource amounts) {
+            this.channel = channel;
+            this.from = from;
+            this.to = to;
+            this.firstNossoNumero = firstNossoNumero;
+            this.dueFactor = dueFactor;
+            this.amounts = amounts;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > RECORDS_PER_TASK) {
+                long middle = (from + to) >>> 1;
+                invokeAll(new Slice(channel, from, middle, firstNossoNumero, dueFactor, amounts),
+                          new Slice(channel, middle, to, firstNossoNumero, dueFactor, amounts));
+                return;
+            }
+            try {
+                writeRange();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void writeRange() throws IOException {
+            MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_WRITE,
+                from * RECORD_BYTES, (to - from) * RECORD_BYTES);
+            // Buffers de trabalho por folha, reaproveitados para todos os registros
+            byte[] barcode = new byte[BoletoGenerator.BARCODE_DIGITS];
+            byte[] line = new byte[BoletoGenerator.LINE_DIGITS];
+            byte[] record = new byte[RECORD_BYTES];
+
+            for (long i = from; i < to; i++) {
+                long nossoNumero = firstNossoNumero + i;
+                generator.generate(nossoNumero, amounts.amountCents(i), dueFactor, barcode, line);
+
+                long n = nossoNumero;
+                for (int d = 10; d >= 0; d--) {
+                    record[d] = (byte) ('0' + n % 10);
+                    n /= 10;
+                }
+                for (int d = 0; d < BoletoGenerator.BARCODE_DIGITS; d++) {
+                    record[11 + d] = (byte) ('0' + barcode[d]);
+                }
+                BoletoGenerator.writeFormattedLine(line, record, 11 + BoletoGenerator.BARCODE_DIGITS);
+                record[RECORD_BYTES - 1] = '\n';
+                region.put(record);
+            }
+            // O arquivo do lote vai para o banco: só conta como gerado depois de ir ao disco
+            region.force();
+        }
+    }
+}
+
+// Emite boletos avulsos, grava um lote (duas folhas do fork/join) e confere cada registro:
+// nossos números consecutivos e sem repetir os avulsos, DV do código de barras, DVs dos
+// campos da linha digitável. Confere que avulsos emitidos depois do lote não caem na faixa
+// dele e que a sequência reaberta continua depois do lote.
+// Uso: java BoletoBatchWriterCheck [boletos]
+class BoletoBatchWriterCheck {
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        Path directory = Files.createTempDirectory("boleto-batch");
+        Path sequenceFile = directory.resolve("nosso-numero.seq");
+        Path output = directory.resolve("lote.txt");
+        try {
+            BoletoGenerator generator = new BoletoGenerator(341, 109, 1234, 5678901L,
+                new FileNossoNumeroSequence(sequenceFile, 100));
+            long lastOnline = 0;
+            for (int i = 0; i < 3; i++) {
+                lastOnline = generator.nextNossoNumero();
+            }
+
+            long start = System.nanoTime();
+            long first = new BoletoBatchWriter(generator)
+                .write(output, count, LocalDate.now().plusDays(30), index -> 1_000 + index % 100_000);
+            long nanos = System.nanoTime() - start;
+            check(first > lastOnline, "Lote reaproveitou nosso número avulso: " + first);
+            check(Files.size(output) == (long) count * BoletoBatchWriter.RECORD_BYTES, "Tamanho do arquivo");
+
+            byte[] barcode = new byte[BoletoGenerator.BARCODE_DIGITS];
+            byte[] line = new byte[BoletoGenerator.LINE_DIGITS];
+            byte[] record = new byte[BoletoBatchWriter.RECORD_BYTES];
+            try (FileChannel channel = FileChannel.open(output, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                for (long i = 0; i < count; i++) {
+                    buffer.get(record);
+                    long nossoNumero = 0;
+                    for (int d = 0; d < 11; d++) {
+                        nossoNumero = nossoNumero * 10 + (record[d] - '0');
+                    }
+                    check(nossoNumero == first + i, "Nosso número fora de ordem no registro " + i);
+                    for (int d = 0; d < BoletoGenerator.BARCODE_DIGITS; d++) {
+                        barcode[d] = (byte) (record[11 + d] - '0');
+                    }
+                    int digit = 0;
+                    for (int p = 11 + BoletoGenerator.BARCODE_DIGITS; p < record.length - 1; p++) {
+                        if (record[p] != '.' && record[p] != ' ') {
+                            line[digit++] = (byte) (record[p] - '0');
+                        }
+                    }
+                    check(digit == BoletoGenerator.LINE_DIGITS, "Linha digitável com " + digit + " dígitos");
+                    check(barcode[4] == BoletoGenerator.barcodeCheckDigit(barcode), "DV do código de barras");
+                    check(line[9] == BoletoGenerator.mod10(line, 0, 9)
+                        && line[20] == BoletoGenerator.mod10(line, 10, 10)
+                        && line[31] == BoletoGenerator.mod10(line, 21, 10), "DV dos campos da linha digitável");
+                    check(line[32] == barcode[4], "DV geral da linha digitável");
+                }
+            }
+            long last = first + count - 1;
+            // O bloco avulso em uso continua valendo, abaixo da faixa do lote
+            long online = generator.nextNossoNumero();
+            check(online < first || online > last, "Avulso depois do lote repetiu número do lote");
+            BoletoGenerator reopened = new BoletoGenerator(341, 109, 1234, 5678901L,
+                new FileNossoNumeroSequence(sequenceFile, 100));
+            check(reopened.nextNossoNumero() > last, "Sequência reaberta repetiu número do lote");
+            System.out.printf("%d boletos em %d ms, nossos números %d a %d%n",
+                count, nanos / 1_000_000, first, last);
+        } finally {
+            try (var files = Files.walk(directory)) {
+                files.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+}
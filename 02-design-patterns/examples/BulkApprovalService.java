@@ -0,0 +1,370 @@
+package examples.patterns.chain;
+
+/**
+ * Aprovação em lote sobre a cadeia compilada
+ * Cenário: conciliação noturna de dezenas de milhões de despesas,
+ * com decisão estruturada por despesa e totais por aprovador
+ */
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Stream;
+
+// Resultado de uma despesa: nível que decidiu, aprovador, valor e motivo.
+// level = -1 quando a despesa foi encaminhada a um handler customizado (fallback)
+// ou ao handler encadeado depois da cadeia compilada.
+class ApprovalDecision {
+    public static final int FALLBACK_LEVEL = -1;
+
+    private final ExpenseApprovalChain.Expense expense;
+    private final int level;
+    private final String approver;
+    private final String reason;
+
+    public ApprovalDecision(ExpenseApprovalChain.Expense expense, int level, String approver, String reason) {
+        this.expense = expense;
+        this.level = level;
+        this.approver = approver;
+        this.reason = reason;
+    }
+
+    public ExpenseApprovalChain.Expense getExpense() { return expense; }
+    public double getAmount() { return expense.getAmount(); }
+    public int getLevel() { return level; }
+    public String getApprover() { return approver; }
+    public String getReason() { return reason; }
+}
+
+// Totais por aprovador; o último índice agrega o fallback
+class ApprovalSummary {
+    private final String[] approvers;
+    private final long[] counts;
+    private final long[] totalCents;
+
+    ApprovalSummary(String[] approvers, long[] counts, long[] totalCents) {
+        this.approvers = approvers;
+        this.counts = counts;
+        this.totalCents = totalCents;
+    }
+
+    public int getApproverCount() { return approvers.length; }
+    public String getApprover(int index) { return approvers[index]; }
+    public long getCount(int index) { return counts[index]; }
+    public long getTotalCents(int index) { return totalCents[index]; }
+
+    public long getTotalCount() {
+        long sum = 0;
+        for (long count : counts) {
+            sum += count;
+        }
+        return sum;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < approvers.length; i++) {
+            if (counts[i] > 0) {
+                sb.append(approvers[i]).append(": ").append(counts[i]).append(" despesas, R$")
+                  .append(totalCents[i] / 100).append('.').append(String.format("%02d", Math.abs(totalCents[i] % 100)))
+                  .append('\n');
+            }
+        }
+        return sb.toString();
+    }
+}
+
+class BulkApprovalResult {
+    private final ApprovalDecision[] decisions;
+    private final ApprovalSummary summary;
+
+    BulkApprovalResult(ApprovalDecision[] decisions, ApprovalSummary summary) {
+        this.decisions = decisions;
+        this.summary = summary;
+    }
+
+    // Na mesma ordem da entrada
+    public ApprovalDecision[] getDecisions() { return decisions; }
+    public ApprovalSummary getSummary() { return summary; }
+}
+
+class BulkApprovalService {
+    private static final int LEAF_SIZE = 8_192;
+
+    private final CompiledApprovalChain chain;
+    private final ForkJoinPool pool;
+
+    public BulkApprovalService(CompiledApprovalChain chain, ForkJoinPool pool) {
+        this.chain = chain;
+        this.pool = pool;
+    }
+
+    public BulkApprovalService(CompiledApprovalChain chain) {
+        this(chain, ForkJoinPool.commonPool());
+    }
+
+    public BulkApprovalResult approveAll(Iterable<ExpenseApprovalChain.Expense> expenses) {
+        return approve(toArray(expenses));
+    }
+
+    public BulkApprovalResult approveAll(Stream<ExpenseApprovalChain.Expense> expenses) {
+        return approve(expenses.toArray(ExpenseApprovalChain.Expense[]::new));
+    }
+
+    // Só os totais: não materializa uma decisão por despesa nem a entrada inteira.
+    // A entrada é lida em lotes de tamanho fixo, com poucos lotes em voo de cada vez.
+    public ApprovalSummary summarizeAll(Iterable<ExpenseApprovalChain.Expense> expenses) {
+        return summarize(expenses.spliterator());
+    }
+
+    public ApprovalSummary summarizeAll(Stream<ExpenseApprovalChain.Expense> expenses) {
+        return summarize(expenses.spliterator());
+    }
+
+    private BulkApprovalResult approve(ExpenseApprovalChain.Expense[] expenses) {
+        Batch batch = new Batch(chain, pool);
+        ApprovalDecision[] decisions = new ApprovalDecision[expenses.length];
+        pool.invoke(new Slice(batch, expenses, decisions, 0, expenses.length));
+        return new BulkApprovalResult(decisions, batch.summary());
+    }
+
+    private ApprovalSummary summarize(Spliterator<ExpenseApprovalChain.Expense> expenses) {
+        Batch batch = new Batch(chain, pool);
+        pool.invoke(new Feed(batch, expenses, pool.getParallelism() * 2));
+        return batch.summary();
+    }
+
+    // Classes anônimas e lambdas não têm nome simples
+    private static String approverName(Class<?> type) {
+        return type.getSimpleName().isEmpty() ? type.getName() : type.getSimpleName();
+    }
+
+    private static ExpenseApprovalChain.Expense[] toArray(Iterable<ExpenseApprovalChain.Expense> expenses) {
+        List<ExpenseApprovalChain.Expense> list = new ArrayList<>();
+        for (ExpenseApprovalChain.Expense expense : expenses) {
+            list.add(expense);
+        }
+        return list.toArray(new ExpenseApprovalChain.Expense[0]);
+    }
+
+    // Contadores primitivos de uma thread; sem sincronização no caminho quente
+    private static final class Accumulator {
+        final long[] counts;
+        final long[] totalCents;
+
+        Accumulator(int size) {
+            this.counts = new long[size];
+            this.totalCents = new long[size];
+        }
+    }
+
+    // Estado de um lote: todas as despesas usam a mesma tabela, mesmo com reload no meio
+    private static final class Batch {
+        final CompiledApprovalChain.Table table;
+        final ExpenseApprovalChain.ApprovalHandler overflow;
+        final int fallbackIndex;
+        final String[] approvers;
+        final String[] reasons;
+        private final ForkJoinPool pool;
+        // Um acumulador por thread, sem ThreadLocal: o índice 0 é de quem chamou invoke
+        // (pode executar fatias enquanto espera) e i + 1 do worker com getPoolIndex() == i.
+        // Cresce só se o pool criar workers de compensação além do paralelismo.
+        private volatile Accumulator[] accumulators;
+
+        Batch(CompiledApprovalChain chain, ForkJoinPool pool) {
+            this.table = chain.snapshot();
+            this.overflow = chain.overflowHandler(table);
+            this.fallbackIndex = table.size();
+            this.pool = pool;
+            this.accumulators = new Accumulator[pool.getParallelism() + 1];
+
+            approvers = new String[fallbackIndex + 1];
+            reasons = new String[fallbackIndex + 1];
+            for (int i = 0; i < fallbackIndex; i++) {
+                approvers[i] = table.handlers[i].getApprover();
+                reasons[i] = Double.isInfinite(table.limits[i])
+                    ? "Sem limite de alçada"
+                    : "Dentro da alçada de R$" + table.limits[i];
+            }
+            approvers[fallbackIndex] = overflow == null ? "Sem aprovador" : approverName(overflow.getClass());
+            reasons[fallbackIndex] = table.fallback != null ? "Encaminhado a regra customizada"
+                : overflow != null ? "Encaminhado ao próximo handler" : "Acima de todas as alçadas";
+        }
+
+        Accumulator accumulator() {
+            Thread thread = Thread.currentThread();
+            int index = thread instanceof ForkJoinWorkerThread worker && worker.getPool() == pool
+                ? worker.getPoolIndex() + 1
+                : 0;
+            Accumulator[] current = accumulators;
+            Accumulator accumulator = index < current.length ? current[index] : null;
+            return accumulator != null ? accumulator : create(index);
+        }
+
+        // Caminho lento, uma vez por thread e lote
+        private synchronized Accumulator create(int index) {
+            Accumulator[] current = accumulators;
+            if (index >= current.length) {
+                current = Arrays.copyOf(current, Math.max(index + 1, current.length * 2));
+            }
+            if (current[index] == null) {
+                current[index] = new Accumulator(fallbackIndex + 1);
+            }
+            accumulators = current;
+            return current[index];
+        }
+
+        // Classifica a despesa e soma no acumulador da thread; devolve o slot
+        int record(ExpenseApprovalChain.Expense expense, Accumulator accumulator) {
+            double amount = expense.getAmount();
+            // Valor inválido (NaN) não é aprovado por nenhum nível: vai para o slot de fallback
+            boolean invalid = Double.isNaN(amount);
+            int level = invalid ? fallbackIndex : CompiledApprovalChain.lowerBound(table.limits, amount);
+            if (level >= fallbackIndex && overflow != null && !invalid) {
+                // Regra customizada ou próximo handler: só eles sabem decidir, então são executados
+                overflow.approve(expense);
+            }
+            int slot = Math.min(level, fallbackIndex);
+            accumulator.counts[slot]++;
+            accumulator.totalCents[slot] += expense.getAmountCents();
+            return slot;
+        }
+
+        // Chamado depois do invoke: todas as fatias terminaram
+        synchronized ApprovalSummary summary() {
+            long[] counts = new long[fallbackIndex + 1];
+            long[] totals = new long[fallbackIndex + 1];
+            for (Accumulator accumulator : accumulators) {
+                if (accumulator == null) {
+                    continue;
+                }
+                for (int i = 0; i <= fallbackIndex; i++) {
+                    counts[i] += accumulator.counts[i];
+                    totals[i] += accumulator.totalCents[i];
+                }
+            }
+            return new ApprovalSummary(approvers, counts, totals);
+        }
+    }
+
+    // Fatia de um array já materializado, com uma decisão por despesa
+    @SuppressWarnings("serial") // nunca serializada: só passa pelo ForkJoinPool
+    private static final class Slice extends RecursiveAction {
+        private static final String INVALID_APPROVER = "Sem aprovador";
+        private static final String INVALID_REASON = ExpenseApprovalChain.INVALID_AMOUNT_REASON;
+
+        private final Batch batch;
+        private final ExpenseApprovalChain.Expense[] expenses;
+        private final ApprovalDecision[] decisions;
+        private final int from;
+        private final int to;
+
+        Slice(Batch batch, ExpenseApprovalChain.Expense[] expenses, ApprovalDecision[] decisions, int from, int to) {
+            this.batch = batch;
+            this.expenses = expenses;
+            this.decisions = decisions;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > LEAF_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Slice(batch, expenses, decisions, from, middle),
+                          new Slice(batch, expenses, decisions, middle, to));
+                return;
+            }
+            Accumulator accumulator = batch.accumulator();
+            for (int i = from; i < to; i++) {
+                ExpenseApprovalChain.Expense expense = expenses[i];
+                int slot = batch.record(expense, accumulator);
+                // NaN conta no slot de fallback, mas nenhuma regra rodou para ele
+                decisions[i] = Double.isNaN(expense.getAmount())
+                    ? new ApprovalDecision(expense, ApprovalDecision.FALLBACK_LEVEL, INVALID_APPROVER, INVALID_REASON)
+                    : new ApprovalDecision(expense, slot == batch.fallbackIndex ? ApprovalDecision.FALLBACK_LEVEL : slot,
+                        batch.approvers[slot], batch.reasons[slot]);
+            }
+        }
+    }
+
+    // Lê a entrada com tryAdvance em lotes de no máximo LEAF_SIZE despesas, sem ler tudo
+    // antes. Com maxInFlight lotes pendentes, quem lê espera (ajudando) o mais antigo antes
+    // de ler o próximo: a memória fica limitada a LEAF_SIZE × (maxInFlight + 1) despesas.
+    // trySplit não serve aqui: num Iterable ou Stream sobre iterator, cada divisão devolve um
+    // lote maior que o anterior (até 2^25), e os lotes cresceriam com o tamanho da entrada.
+    @SuppressWarnings("serial") // nunca serializada: só passa pelo ForkJoinPool
+    private static final class Feed extends RecursiveAction {
+        private final Batch batch;
+        private final Spliterator<ExpenseApprovalChain.Expense> source;
+        private final int maxInFlight;
+        // Lote sendo preenchido pelo tryAdvance
+        private ExpenseApprovalChain.Expense[] filling;
+        private int filled;
+
+        Feed(Batch batch, Spliterator<ExpenseApprovalChain.Expense> source, int maxInFlight) {
+            this.batch = batch;
+            this.source = source;
+            this.maxInFlight = Math.max(1, maxInFlight);
+        }
+
+        @Override
+        protected void compute() {
+            ArrayDeque<Chunk> inFlight = new ArrayDeque<>();
+            while (true) {
+                filling = new ExpenseApprovalChain.Expense[LEAF_SIZE];
+                filled = 0;
+                while (filled < LEAF_SIZE && source.tryAdvance(this::add)) {
+                    // add acumula em filling
+                }
+                if (filled < LEAF_SIZE) {
+                    // Último lote (talvez vazio): processado aqui mesmo
+                    new Chunk(batch, filling, filled).compute();
+                    break;
+                }
+                if (inFlight.size() == maxInFlight) {
+                    inFlight.poll().join();
+                }
+                Chunk chunk = new Chunk(batch, filling, filled);
+                chunk.fork();
+                inFlight.add(chunk);
+            }
+            filling = null;
+            for (Chunk chunk : inFlight) {
+                chunk.join();
+            }
+        }
+
+        private void add(ExpenseApprovalChain.Expense expense) {
+            filling[filled++] = expense;
+        }
+    }
+
+    // Um lote lido, com até LEAF_SIZE despesas
+    @SuppressWarnings("serial") // nunca serializada: só passa pelo ForkJoinPool
+    private static final class Chunk extends RecursiveAction {
+        private final Batch batch;
+        private final ExpenseApprovalChain.Expense[] expenses;
+        private final int count;
+
+        Chunk(Batch batch, ExpenseApprovalChain.Expense[] expenses, int count) {
+            this.batch = batch;
+            this.expenses = expenses;
+            this.count = count;
+        }
+
+        @Override
+        protected void compute() {
+            Accumulator accumulator = batch.accumulator();
+            for (int i = 0; i < count; i++) {
+                batch.record(expenses[i], accumulator);
+            }
+        }
+    }
+}
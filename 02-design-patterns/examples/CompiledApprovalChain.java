@@ -0,0 +1,152 @@
+package examples.patterns.chain;
+
+/**
+ * Cadeia de aprovação compilada em tabela de limites
+ * Cenário: matrizes de aprovação com centenas de níveis por centro de custo,
+ * onde percorrer a lista encadeada custa O(n) chamadas e profundidade de pilha
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Handler que despacha por busca binária numa tabela compilada a partir de uma cadeia.
+// Pode ser usado onde quer que um ApprovalHandler seja esperado.
+class CompiledApprovalChain extends ExpenseApprovalChain.ApprovalHandler {
+
+    // Tabela imutável: limites crescentes e o handler que decide cada faixa
+    static final class Table {
+        final double[] limits;
+        final ExpenseApprovalChain.ThresholdApprovalHandler[] handlers;
+        // Primeiro handler customizado da cadeia: recebe tudo acima do último limite
+        final ExpenseApprovalChain.ApprovalHandler fallback;
+
+        Table(double[] limits, ExpenseApprovalChain.ThresholdApprovalHandler[] handlers,
+              ExpenseApprovalChain.ApprovalHandler fallback) {
+            this.limits = limits;
+            this.handlers = handlers;
+            this.fallback = fallback;
+        }
+
+        int size() {
+            return limits.length;
+        }
+    }
+
+    // Trocada atomicamente no reload; leitores só fazem uma leitura volatile
+    private volatile Table table;
+
+    public CompiledApprovalChain(ExpenseApprovalChain.ApprovalHandler head) {
+        this.table = compile(head);
+    }
+
+    // Hot reload: compila fora do caminho de leitura e publica a nova tabela
+    public void reload(ExpenseApprovalChain.ApprovalHandler head) {
+        this.table = compile(head);
+    }
+
+    public int getLevels() {
+        return table.size();
+    }
+
+    // Snapshot consistente para processamentos em lote
+    Table snapshot() {
+        return table;
+    }
+
+    @Override
+    public void approve(ExpenseApprovalChain.Expense expense) {
+        double amount = expense.getAmount();
+        if (Double.isNaN(amount)) {
+            // Mesmo tratamento da cadeia encadeada e do lote: nenhuma regra roda
+            ExpenseApprovalChain.rejectInvalid(expense);
+            return;
+        }
+        Table current = table;
+        int index = lowerBound(current.limits, amount);
+        if (index < current.limits.length) {
+            current.handlers[index].decide(expense);
+        } else {
+            ExpenseApprovalChain.ApprovalHandler overflow = overflowHandler(current);
+            if (overflow != null) {
+                overflow.approve(expense);
+            }
+        }
+    }
+
+    // Quem recebe as despesas acima do último limite: a regra customizada da cadeia
+    // compilada ou, sem ela, o handler encadeado depois desta cadeia. O BulkApprovalService
+    // usa o mesmo critério, para os dois caminhos decidirem igual.
+    ExpenseApprovalChain.ApprovalHandler overflowHandler(Table current) {
+        return current.fallback != null ? current.fallback : nextHandler;
+    }
+
+    // Percorre a cadeia uma única vez. Handlers de limite entram na tabela; um handler
+    // com limite menor ou igual ao maior já visto nunca seria alcançado e é descartado.
+    // A compilação para no primeiro handler customizado, que vira o fallback e
+    // continua responsável pelo resto da cadeia original.
+    static Table compile(ExpenseApprovalChain.ApprovalHandler head) {
+        List<ExpenseApprovalChain.ThresholdApprovalHandler> reachable = new ArrayList<>();
+        double highest = Double.NEGATIVE_INFINITY;
+        ExpenseApprovalChain.ApprovalHandler current = head;
+        while (isCompilable(current)) {
+            ExpenseApprovalChain.ThresholdApprovalHandler handler =
+                (ExpenseApprovalChain.ThresholdApprovalHandler) current;
+            if (handler.getLimit() > highest) {
+                reachable.add(handler);
+                highest = handler.getLimit();
+            }
+            if (handler.getClass() == ExpenseApprovalChain.PresidentHandler.class) {
+                current = null; // aprova tudo: o resto da cadeia é inalcançável
+                break;
+            }
+            current = handler.getNext();
+        }
+
+        double[] limits = new double[reachable.size()];
+        ExpenseApprovalChain.ThresholdApprovalHandler[] handlers =
+            reachable.toArray(new ExpenseApprovalChain.ThresholdApprovalHandler[0]);
+        for (int i = 0; i < limits.length; i++) {
+            limits[i] = handlers[i].getLimit();
+        }
+        return new Table(limits, handlers, current);
+    }
+
+    // Só handlers de limite que mantêm o approve padrão têm semântica de tabela;
+    // um approve sobrescrito é regra customizada (o do Presidente aprova tudo)
+    private static boolean isCompilable(ExpenseApprovalChain.ApprovalHandler handler) {
+        if (!(handler instanceof ExpenseApprovalChain.ThresholdApprovalHandler)) {
+            return false;
+        }
+        if (handler.getClass() == ExpenseApprovalChain.PresidentHandler.class) {
+            return true;
+        }
+        try {
+            Class<?> declaring = handler.getClass()
+                .getMethod("approve", ExpenseApprovalChain.Expense.class).getDeclaringClass();
+            return declaring == ExpenseApprovalChain.ThresholdApprovalHandler.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    // Primeiro índice com limits[i] >= amount (ou limits.length se não houver)
+    static int lowerBound(double[] limits, double amount) {
+        int low = 0;
+        int high = limits.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (limits[mid] < amount) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledApprovalChain" + Arrays.toString(table.limits);
+    }
+}
@@ -0,0 +1,220 @@
+package examples.patterns.template;
+
+/**
+ * Execução em pipeline do Template Method
+ * Cenário: dezenas de milhares de arquivos por hora, onde abrir e salvar (I/O)
+ * devem se sobrepor a extrair e processar (CPU) de outros documentos
+ */
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Passos do template, na ordem de processDocument
+enum DocumentStep {
+    OPEN(true),
+    VALIDATE(false),
+    EXTRACT(false),
+    PROCESS(false),
+    SPECIFIC_OPERATIONS(false),
+    SAVE(true),
+    CLOSE(true);
+
+    private final boolean io;
+
+    DocumentStep(boolean io) {
+        this.io = io;
+    }
+
+    // Passos de I/O rodam em virtual threads; os de CPU em platform threads
+    public boolean isIo() {
+        return io;
+    }
+}
+
+// Cada passo vira um estágio com seus próprios workers, ligado ao próximo por uma
+// fila limitada. Quando um estágio fica para trás, a fila enche e quem está antes
+// bloqueia, até o submit (backpressure).
+//
+// Um mesmo processador pode estar em estágios diferentes ao mesmo tempo, com documentos
+// diferentes. Os processadores do exemplo não guardam estado; um processador com estado
+// por documento deve ser instanciado por documento.
+class DocumentPipeline implements AutoCloseable {
+
+    private static final class Job {
+        final DocumentProcessorTemplate.DocumentProcessor processor;
+        final String filename;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Job(DocumentProcessorTemplate.DocumentProcessor processor, String filename) {
+            this.processor = processor;
+            this.filename = filename;
+        }
+    }
+
+    // Marca de fim: cada worker consome uma e encerra
+    private static final Job STOP = new Job(null, null);
+
+    private final DocumentStep[] steps = DocumentStep.values();
+    private final List<BlockingQueue<Job>> queues = new ArrayList<>();
+    private final List<List<Thread>> workers = new ArrayList<>();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    // submit segura a leitura enquanto enfileira (vários ao mesmo tempo); close pega a
+    // escrita para marcar closed, então nenhum submit que passou da verificação fica
+    // para enfileirar depois dos STOP
+    private final ReentrantReadWriteLock submitLock = new ReentrantReadWriteLock();
+    private boolean closed;
+
+    public DocumentPipeline(int queueCapacity, Map<DocumentStep, Integer> workersPerStep) {
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("queueCapacity deve ser positivo");
+        }
+        for (DocumentStep step : steps) {
+            if (workersPerStep.getOrDefault(step, 1) <= 0) {
+                throw new IllegalArgumentException("Estágio " + step + " precisa de ao menos um worker");
+            }
+            queues.add(new ArrayBlockingQueue<>(queueCapacity));
+        }
+        for (DocumentStep step : steps) {
+            int count = workersPerStep.getOrDefault(step, 1);
+            List<Thread> stageWorkers = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Thread.Builder builder = step.isIo() ? Thread.ofVirtual() : Thread.ofPlatform().daemon();
+                stageWorkers.add(builder.name("doc-" + step.name().toLowerCase() + "-" + i)
+                    .start(stageLoop(step.ordinal())));
+            }
+            workers.add(stageWorkers);
+        }
+    }
+
+    // Mesmo número de workers para todos os passos de I/O e para todos os de CPU
+    public DocumentPipeline(int queueCapacity, int ioWorkers, int cpuWorkers) {
+        this(queueCapacity, workersByKind(ioWorkers, cpuWorkers));
+    }
+
+    private static Map<DocumentStep, Integer> workersByKind(int ioWorkers, int cpuWorkers) {
+        Map<DocumentStep, Integer> map = new EnumMap<>(DocumentStep.class);
+        for (DocumentStep step : DocumentStep.values()) {
+            map.put(step, step.isIo() ? ioWorkers : cpuWorkers);
+        }
+        return map;
+    }
+
+    // Bloqueia enquanto o primeiro estágio estiver cheio. O future completa depois do
+    // CLOSE, ou com a exceção do passo que falhou (os passos seguintes não rodam,
+    // como em processDocument).
+    public CompletableFuture<Void> submit(DocumentProcessorTemplate.DocumentProcessor processor, String filename) {
+        Job job = new Job(processor, filename);
+        submitLock.readLock().lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Pipeline encerrado");
+            }
+            queues.get(0).put(job);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.done.completeExceptionally(e);
+        } finally {
+            submitLock.readLock().unlock();
+        }
+        return job.done;
+    }
+
+    public long getCompletedCount() { return completed.sum(); }
+    public long getFailedCount() { return failed.sum(); }
+
+    // Queue depth por estágio, útil para achar o gargalo
+    public Map<DocumentStep, Integer> getQueueDepths() {
+        Map<DocumentStep, Integer> depths = new EnumMap<>(DocumentStep.class);
+        for (DocumentStep step : steps) {
+            depths.put(step, queues.get(step.ordinal()).size());
+        }
+        return depths;
+    }
+
+    // Para de aceitar documentos e espera os já submetidos passarem por todos os estágios
+    @Override
+    public void close() {
+        // Espera os submits em andamento, que ainda andam porque os workers seguem consumindo
+        submitLock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        } finally {
+            submitLock.writeLock().unlock();
+        }
+        boolean interrupted = false;
+        // Estágio a estágio: quando os workers de um estágio terminam, nada mais chega ao próximo
+        for (int stage = 0; stage < steps.length; stage++) {
+            for (int i = 0; i < workers.get(stage).size(); i++) {
+                interrupted |= putUninterruptibly(queues.get(stage), STOP);
+            }
+            for (Thread worker : workers.get(stage)) {
+                while (true) {
+                    try {
+                        worker.join();
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Runnable stageLoop(int stage) {
+        DocumentStep step = steps[stage];
+        BlockingQueue<Job> input = queues.get(stage);
+        BlockingQueue<Job> output = stage + 1 < steps.length ? queues.get(stage + 1) : null;
+        return () -> {
+            while (true) {
+                Job job;
+                try {
+                    job = input.take();
+                } catch (InterruptedException e) {
+                    continue; // só close encerra o worker, com STOP
+                }
+                if (job == STOP) {
+                    return;
+                }
+                try {
+                    job.processor.runStep(step, job.filename);
+                } catch (Throwable t) {
+                    failed.increment();
+                    job.done.completeExceptionally(t);
+                    continue;
+                }
+                if (output == null) {
+                    completed.increment();
+                    job.done.complete(null);
+                } else {
+                    putUninterruptibly(output, job);
+                }
+            }
+        };
+    }
+
+    private static boolean putUninterruptibly(BlockingQueue<Job> queue, Job job) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(job);
+                return interrupted;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+    }
+}
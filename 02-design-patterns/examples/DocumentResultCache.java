@@ -0,0 +1,289 @@
+package examples.patterns.template;
+
+/**
+ * Cache de resultados endereçado pelo conteúdo do documento
+ * Cenário: o reprocessamento noturno recebe quase sempre os mesmos arquivos
+ */
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// Chave: tipo (e versão) do processador + SHA-256 do conteúdo de entrada.
+// Dois níveis, ambos LRU e limitados em bytes: memória para resultados pequenos
+// e um diretório em disco, que sobrevive entre execuções.
+class DocumentResultCache {
+    private static final String SUFFIX = ".result";
+
+    private final Path directory;
+    private final long maxMemoryBytes;
+    private final long maxDiskBytes;
+    // Resultados maiores que isso ficam só em disco
+    private final long maxMemoryEntryBytes;
+
+    private final Object lock = new Object();
+    // accessOrder = true: a iteração começa pelo menos usado recentemente
+    private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Long> disk = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+    private long diskBytes;
+
+    private final LongAdder memoryHits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    // Entradas já existentes no diretório são reaproveitadas, das mais antigas para as mais novas
+    public DocumentResultCache(Path directory, long maxMemoryBytes, long maxDiskBytes) throws IOException {
+        if (maxMemoryBytes < 0 || maxDiskBytes <= 0) {
+            throw new IllegalArgumentException("Limites de tamanho inválidos");
+        }
+        this.directory = Files.createDirectories(directory);
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.maxDiskBytes = maxDiskBytes;
+        this.maxMemoryEntryBytes = maxMemoryBytes / 4;
+
+        List<Path> existing = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            files.forEach(existing::add);
+        }
+        existing.sort((a, b) -> {
+            try {
+                return Files.getLastModifiedTime(a).compareTo(Files.getLastModifiedTime(b));
+            } catch (IOException e) {
+                return 0;
+            }
+        });
+        for (Path file : existing) {
+            String name = file.getFileName().toString();
+            long size = Files.size(file);
+            disk.put(name.substring(0, name.length() - SUFFIX.length()), size);
+            diskBytes += size;
+        }
+        deleteAll(evictDisk());
+    }
+
+    // O id do processador entra no nome do arquivo como hash em hexadecimal: tamanho fixo,
+    // só caracteres seguros (inclusive em sistemas de arquivos que ignoram maiúsculas) e
+    // ids diferentes não caem no mesmo arquivo, como aconteceria trocando caracteres por "_"
+    static String key(String processorId, byte[] contentDigest) {
+        byte[] idDigest = sha256(processorId.getBytes(StandardCharsets.UTF_8));
+        HexFormat hex = HexFormat.of();
+        return hex.formatHex(idDigest, 0, 16) + "-" + hex.formatHex(contentDigest);
+    }
+
+    private static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponível", e);
+        }
+    }
+
+    // Copia o resultado guardado para target; false se a chave não estiver em nenhum nível
+    public boolean copyTo(String key, Path target) throws IOException {
+        byte[] cached;
+        boolean onDisk;
+        synchronized (lock) {
+            // Consulta o disco mesmo num hit de memória: o despejo em disco também tira a
+            // entrada da memória, e sem essa consulta as mais lidas seriam as primeiras a sair
+            cached = memory.get(key);
+            onDisk = disk.get(key) != null;
+        }
+        if (cached != null) {
+            memoryHits.increment();
+            Files.write(target, cached);
+            return true;
+        }
+        if (!onDisk) {
+            misses.increment();
+            return false;
+        }
+        try {
+            Files.copy(file(key), target, StandardCopyOption.REPLACE_EXISTING);
+        } catch (NoSuchFileException e) {
+            // Despejado entre a consulta e a cópia
+            misses.increment();
+            return false;
+        }
+        diskHits.increment();
+        if (Files.size(target) <= maxMemoryEntryBytes) {
+            putMemory(key, Files.readAllBytes(target));
+        }
+        return true;
+    }
+
+    // Guarda o resultado em disco (escrita atômica) e, se for pequeno, em memória.
+    // A cópia para o temporário é feita fora do lock; a troca de nome, o registro e a
+    // remoção dos despejados ficam dentro dele, senão um despejo atrasado da mesma chave
+    // poderia apagar o arquivo que acabou de ser gravado.
+    public void put(String key, Path result) throws IOException {
+        long size = Files.size(result);
+        if (size > maxDiskBytes) {
+            return; // nunca caberia: não vale despejar o cache inteiro por ele
+        }
+        Path temporary = Files.createTempFile(directory, "entry", ".tmp");
+        try {
+            Files.copy(result, temporary, StandardCopyOption.REPLACE_EXISTING);
+            synchronized (lock) {
+                Files.move(temporary, file(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                Long previous = disk.put(key, size);
+                diskBytes += size - (previous == null ? 0 : previous);
+                deleteAll(evictDisk());
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+
+        if (size <= maxMemoryEntryBytes) {
+            putMemory(key, Files.readAllBytes(result));
+        }
+    }
+
+    public long getMemoryHitCount() { return memoryHits.sum(); }
+    public long getDiskHitCount() { return diskHits.sum(); }
+    public long getMissCount() { return misses.sum(); }
+    public long getEvictionCount() { return evictions.sum(); }
+
+    public double getHitRate() {
+        long hits = memoryHits.sum() + diskHits.sum();
+        long total = hits + misses.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public long getMemoryBytes() {
+        synchronized (lock) {
+            return memoryBytes;
+        }
+    }
+
+    public long getDiskBytes() {
+        synchronized (lock) {
+            return diskBytes;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits memória=%d disco=%d, misses=%d, taxa=%.1f%%, despejos=%d",
+            getMemoryHitCount(), getDiskHitCount(), getMissCount(), getHitRate() * 100, getEvictionCount());
+    }
+
+    private void putMemory(String key, byte[] bytes) {
+        synchronized (lock) {
+            byte[] previous = memory.put(key, bytes);
+            memoryBytes += bytes.length - (previous == null ? 0 : previous.length);
+            Iterator<Map.Entry<String, byte[]>> eldest = memory.entrySet().iterator();
+            // O nível de memória é uma cópia do disco: despejar aqui não apaga nada
+            while (memoryBytes > maxMemoryBytes && eldest.hasNext()) {
+                memoryBytes -= eldest.next().getValue().length;
+                eldest.remove();
+            }
+        }
+    }
+
+    // Chamado com o lock; devolve as chaves cujos arquivos devem ser apagados, ainda com o lock
+    private List<String> evictDisk() {
+        List<String> evicted = new ArrayList<>();
+        Iterator<Map.Entry<String, Long>> eldest = disk.entrySet().iterator();
+        while (diskBytes > maxDiskBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            diskBytes -= entry.getValue();
+            eldest.remove();
+            byte[] inMemory = memory.remove(entry.getKey());
+            if (inMemory != null) {
+                memoryBytes -= inMemory.length;
+            }
+            evicted.add(entry.getKey());
+        }
+        evictions.add(evicted.size());
+        return evicted;
+    }
+
+    private void deleteAll(List<String> keys) throws IOException {
+        for (String key : keys) {
+            Files.deleteIfExists(file(key));
+        }
+    }
+
+    private Path file(String key) {
+        return directory.resolve(key + SUFFIX);
+    }
+}
+
+// Processa o mesmo CSV duas vezes (a segunda vem do cache), altera o arquivo e confere o miss;
+// confere também que ids de processador parecidos geram chaves diferentes e que uma
+// entrada lida com frequência sobrevive ao despejo por LRU
+class DocumentResultCacheCheck {
+    public static void main(String[] args) throws IOException {
+        Path directory = Files.createTempDirectory("document-cache");
+        Path source = directory.resolve("planilha.csv");
+        Path target = directory.resolve("planilha-saida.csv");
+        try {
+            DocumentResultCache cache = new DocumentResultCache(directory.resolve("cache"), 1 << 20, 8 << 20);
+            StreamingDocumentProcessor<?> processor = new StreamingCsvSpreadsheetProcessor();
+
+            Files.write(source, "descricao,valor\r\nServidor,8000\r\n".getBytes(StandardCharsets.US_ASCII));
+            processor.processDocument(source, target, cache);
+            processor.processDocument(source, target, cache);
+            String expected = "descricao,valor\nServidor,8000\n";
+            if (!expected.equals(Files.readString(target, StandardCharsets.US_ASCII))) {
+                throw new IllegalStateException("Resultado do cache difere do processamento");
+            }
+
+            Files.write(source, "descricao,valor\r\nReforma,50000\r\n".getBytes(StandardCharsets.US_ASCII));
+            processor.processDocument(source, target, cache);
+
+            // Nova instância sobre o mesmo diretório: o resultado vem do disco
+            DocumentResultCache reopened = new DocumentResultCache(directory.resolve("cache"), 1 << 20, 8 << 20);
+            processor.processDocument(source, target, reopened);
+
+            if (cache.getMemoryHitCount() != 1 || cache.getMissCount() != 2 || reopened.getDiskHitCount() != 1) {
+                throw new IllegalStateException("Métricas inesperadas: " + cache + " / " + reopened);
+            }
+            // Ids que só diferem em caracteres fora de [A-Za-z0-9] não podem dividir arquivo
+            byte[] digest = new byte[32];
+            String k1 = DocumentResultCache.key("a$b", digest);
+            String k2 = DocumentResultCache.key("a-b", digest);
+            String k3 = DocumentResultCache.key("a_b", digest);
+            if (k1.equals(k2) || k2.equals(k3) || k1.equals(k3)) {
+                throw new IllegalStateException("Ids de processador distintos com a mesma chave");
+            }
+
+            // Disco com espaço para três resultados: "a" é lido da memória antes de "d" entrar,
+            // então o despejo tira "b", o menos usado, e não "a"
+            DocumentResultCache small = new DocumentResultCache(directory.resolve("lru"), 4096, 300);
+            Path entry = directory.resolve("entrada.bin");
+            Files.write(entry, new byte[100]);
+            for (String key : List.of("a", "b", "c")) {
+                small.put(key, entry);
+            }
+            if (!small.copyTo("a", target)) {
+                throw new IllegalStateException("Entrada recém-gravada não encontrada");
+            }
+            small.put("d", entry);
+            if (!small.copyTo("a", target) || small.copyTo("b", target) || small.getEvictionCount() != 1) {
+                throw new IllegalStateException("Entrada lida com frequência foi despejada: " + small);
+            }
+            System.out.println("Cache: " + cache);
+            System.out.println("Cache reaberto: " + reopened);
+        } finally {
+            try (var files = Files.walk(directory)) {
+                files.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package examples.patterns.template;
+
+/**
+ * Latência por passo e por tipo de processador no Template Method
+ * Cenário: descobrir se o ExcelProcessor é lento na extração ou no cálculo de fórmulas
+ */
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// Histograma log-linear no estilo HdrHistogram: 64 sub-faixas por potência de 2
+// (erro relativo abaixo de 1,6%), contadores fixos e nenhuma alocação por amostra
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Valores < 2 * SUB_BUCKETS têm um contador cada; depois, 64 por potência de 2
+    private static final int LINEAR = 2 * SUB_BUCKETS;
+    private static final int SIZE = LINEAR + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(SIZE);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(indexOf(value));
+        total.incrementAndGet();
+        sum.addAndGet(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    public long getCount() {
+        return total.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long count = total.get();
+        return count == 0 ? 0 : (double) sum.get() / count;
+    }
+
+    // Valor representativo (meio da faixa) do percentil, 0 < percentile <= 100
+    public long getValueAtPercentile(double percentile) {
+        long count = total.get();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < SIZE; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(valueOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    // Não é atômico em relação a gravações concorrentes; serve para zerar entre medições
+    public void reset() {
+        for (int i = 0; i < SIZE; i++) {
+            counts.set(i, 0);
+        }
+        total.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    static int indexOf(long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return LINEAR + (shift - 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long valueOf(int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+        int shift = (index - LINEAR) / SUB_BUCKETS + 1;
+        long subBucket = (index - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+        return (subBucket << shift) + (1L << (shift - 1));
+    }
+}
+
+// Um histograma por (tipo de processador, passo), registrado como MXBean em
+// examples.patterns.template:type=DocumentStep,processor=<classe>,step=<passo>
+class DocumentStepStats implements DocumentStepStatsMXBean {
+    private final String processor;
+    private final DocumentStep step;
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private final AtomicLong slowCount = new AtomicLong();
+
+    DocumentStepStats(String processor, DocumentStep step) {
+        this.processor = processor;
+        this.step = step;
+    }
+
+    LatencyHistogram histogram() {
+        return histogram;
+    }
+
+    void recordSlow() {
+        slowCount.incrementAndGet();
+    }
+
+    @Override public String getProcessor() { return processor; }
+    @Override public String getStep() { return step.name(); }
+    @Override public long getCount() { return histogram.getCount(); }
+    @Override public double getMeanMillis() { return histogram.getMean() / 1e6; }
+    @Override public double getP50Millis() { return histogram.getValueAtPercentile(50) / 1e6; }
+    @Override public double getP90Millis() { return histogram.getValueAtPercentile(90) / 1e6; }
+    @Override public double getP99Millis() { return histogram.getValueAtPercentile(99) / 1e6; }
+    @Override public double getMaxMillis() { return histogram.getMax() / 1e6; }
+    @Override public long getSlowCount() { return slowCount.get(); }
+
+    @Override
+    public void reset() {
+        histogram.reset();
+        slowCount.set(0);
+    }
+}
+
+// Recebe cada passo que passou do limite configurado
+interface SlowStepListener {
+    void onSlowStep(String processor, DocumentStep step, long nanos, String filename);
+}
+
+class DocumentStepMetrics {
+    static final Duration DEFAULT_SLOW_THRESHOLD = Duration.ofMillis(500);
+    private static final DocumentStepMetrics SHARED = new DocumentStepMetrics(true);
+
+    private final boolean registerMBeans;
+    // Lookup por classe sem hash de String nem lock no caminho quente
+    private final ClassValue<DocumentStepStats[]> byProcessor = new ClassValue<>() {
+        @Override
+        protected DocumentStepStats[] computeValue(Class<?> type) {
+            // computeValue pode rodar mais de uma vez numa corrida; o mapa garante uma instância
+            return all.computeIfAbsent(type, DocumentStepMetrics.this::create);
+        }
+    };
+    private final ConcurrentHashMap<Class<?>, DocumentStepStats[]> all = new ConcurrentHashMap<>();
+    // Alterado por setSlowThreshold em qualquer thread e lido no caminho quente
+    private final AtomicLongArray slowThresholdNanos = new AtomicLongArray(DocumentStep.values().length);
+    private volatile SlowStepListener slowListener = (processor, step, nanos, filename) ->
+        System.err.printf("Passo lento: %s.%s levou %.1f ms (%s)%n", processor, step, nanos / 1e6, filename);
+
+    private ScheduledExecutorService dumper;
+    private ScheduledFuture<?> periodicDump;
+
+    DocumentStepMetrics(boolean registerMBeans) {
+        this.registerMBeans = registerMBeans;
+        for (DocumentStep step : DocumentStep.values()) {
+            slowThresholdNanos.set(step.ordinal(), DEFAULT_SLOW_THRESHOLD.toNanos());
+        }
+    }
+
+    public static DocumentStepMetrics shared() {
+        return SHARED;
+    }
+
+    public void record(Class<?> processorType, DocumentStep step, long nanos, String filename) {
+        DocumentStepStats stats = byProcessor.get(processorType)[step.ordinal()];
+        stats.histogram().record(nanos);
+        if (nanos > slowThresholdNanos.get(step.ordinal())) {
+            stats.recordSlow();
+            slowListener.onSlowStep(stats.getProcessor(), step, nanos, filename);
+        }
+    }
+
+    public void setSlowThreshold(DocumentStep step, Duration threshold) {
+        slowThresholdNanos.set(step.ordinal(), threshold.toNanos());
+    }
+
+    public void setSlowStepListener(SlowStepListener listener) {
+        this.slowListener = listener;
+    }
+
+    public DocumentStepStatsMXBean stats(Class<?> processorType, DocumentStep step) {
+        return byProcessor.get(processorType)[step.ordinal()];
+    }
+
+    // Tabela com uma linha por (processador, passo) que já teve amostras
+    public String dump() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-20s %-20s %9s %9s %9s %9s %9s %6s%n",
+            "processador", "passo", "amostras", "média ms", "p50 ms", "p99 ms", "máx ms", "lentos"));
+        for (DocumentStepStats[] processor : all.values()) {
+            for (DocumentStepStats stats : processor) {
+                if (stats.getCount() == 0) {
+                    continue;
+                }
+                sb.append(String.format("%-20s %-20s %9d %9.3f %9.3f %9.3f %9.3f %6d%n",
+                    stats.getProcessor(), stats.getStep(), stats.getCount(), stats.getMeanMillis(),
+                    stats.getP50Millis(), stats.getP99Millis(), stats.getMaxMillis(), stats.getSlowCount()));
+            }
+        }
+        return sb.toString();
+    }
+
+    // Imprime dump() a cada período numa thread daemon, até stopPeriodicDump
+    public synchronized void startPeriodicDump(Duration period, PrintStream out) {
+        stopPeriodicDump();
+        if (dumper == null) {
+            dumper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "document-step-metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        long millis = period.toMillis();
+        periodicDump = dumper.scheduleAtFixedRate(() -> out.print(dump()), millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stopPeriodicDump() {
+        if (periodicDump != null) {
+            periodicDump.cancel(false);
+            periodicDump = null;
+        }
+    }
+
+    private DocumentStepStats[] create(Class<?> type) {
+        String name = type.getSimpleName().isEmpty() ? type.getName() : type.getSimpleName();
+        DocumentStep[] steps = DocumentStep.values();
+        DocumentStepStats[] stats = new DocumentStepStats[steps.length];
+        for (DocumentStep step : steps) {
+            stats[step.ordinal()] = new DocumentStepStats(name, step);
+        }
+        if (registerMBeans) {
+            register(type, stats);
+        }
+        return stats;
+    }
+
+    // Falha no registro JMX não deve impedir o processamento dos documentos.
+    // Nome simples já usado (outro pacote, outra instância de métricas): tenta com o nome
+    // completo da classe e, se também estiver ocupado, reporta em vez de pular em silêncio.
+    private static void register(Class<?> type, DocumentStepStats[] stats) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        List<String> failures = new ArrayList<>();
+        for (DocumentStepStats stat : stats) {
+            try {
+                ObjectName name = objectName(stat.getProcessor(), stat);
+                if (server.isRegistered(name)) {
+                    name = objectName(type.getName(), stat);
+                }
+                if (server.isRegistered(name)) {
+                    failures.add(stat.getStep() + ": " + name + " já registrado");
+                } else {
+                    server.registerMBean(stat, name);
+                }
+            } catch (JMException e) {
+                failures.add(stat.getStep() + ": " + e.getMessage());
+            }
+        }
+        if (!failures.isEmpty()) {
+            System.err.println("Métricas de " + type.getName() + " fora do JMX: " + failures);
+        }
+    }
+
+    private static ObjectName objectName(String processor, DocumentStepStats stat) throws JMException {
+        return new ObjectName("examples.patterns.template:type=DocumentStep,processor="
+            + ObjectName.quote(processor) + ",step=" + stat.getStep().toLowerCase());
+    }
+}
@@ -0,0 +1,18 @@
+package examples.patterns.template;
+
+/**
+ * Latência de um passo do template para um tipo de processador, vista via JMX
+ * (interfaces de MBean precisam ser públicas, por isso o arquivo próprio)
+ */
+public interface DocumentStepStatsMXBean {
+    String getProcessor();
+    String getStep();
+    long getCount();
+    double getMeanMillis();
+    double getP50Millis();
+    double getP90Millis();
+    double getP99Millis();
+    double getMaxMillis();
+    long getSlowCount();
+    void reset();
+}
@@ -0,0 +1,418 @@
+package examples.patterns.chain;
+
+/**
+ * Ingestão de despesas a partir de CSV mapeado em memória
+ * Cenário: exportações de vários GB que precisam passar pela cadeia de aprovação
+ * sem carregar o arquivo no heap e sem perder centavos em somas grandes
+ */
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Recebe cada lote de despesas lido do arquivo, na ordem do arquivo
+interface ExpenseChunkHandler {
+    void handle(List<ExpenseApprovalChain.Expense> chunk);
+}
+
+class IngestionReport {
+    private final long records;
+    private final long chunks;
+    private final long totalCents;
+    private final long bytes;
+
+    IngestionReport(long records, long chunks, long totalCents, long bytes) {
+        this.records = records;
+        this.chunks = chunks;
+        this.totalCents = totalCents;
+        this.bytes = bytes;
+    }
+
+    public long getRecords() { return records; }
+    public long getChunks() { return chunks; }
+    // Soma exata dos valores lidos, em centavos
+    public long getTotalCents() { return totalCents; }
+    public long getBytes() { return bytes; }
+
+    @Override
+    public String toString() {
+        return records + " despesas em " + chunks + " lotes, total R$"
+            + totalCents / 100 + "." + String.format("%02d", Math.abs(totalCents % 100));
+    }
+}
+
+// Formato de cada linha: descricao,valor[,demais colunas ignoradas]
+// - a descrição pode vir entre aspas, com "" para aspas literais
+// - o valor usa ponto decimal e no máximo 2 casas: 1234, 1234.5, -10.00
+// - a primeira linha é tratada como cabeçalho se o valor não começar com dígito ou sinal
+//
+// O arquivo é mapeado em janelas de WINDOW_BYTES e o valor é convertido direto dos bytes
+// para centavos. O parser roda na thread chamadora e entrega lotes a uma thread
+// consumidora por uma fila limitada: se a cadeia ficar para trás, o parser bloqueia.
+// O heap usado depende só de chunkSize * chunksInFlight, não do tamanho do arquivo.
+class ExpenseCsvIngestion {
+    static final int DEFAULT_CHUNK_SIZE = 4_096;
+    static final int DEFAULT_CHUNKS_IN_FLIGHT = 4;
+    static final int WINDOW_BYTES = 64 << 20;
+
+    // Marca de fim para a thread consumidora (comparada por identidade)
+    private static final List<ExpenseApprovalChain.Expense> END = new ArrayList<>(0);
+    private static final long MAX_UNITS = (Long.MAX_VALUE - 99) / 100;
+
+    private final ExpenseChunkHandler handler;
+    private final int chunkSize;
+    private final int chunksInFlight;
+
+    public ExpenseCsvIngestion(ExpenseChunkHandler handler, int chunkSize, int chunksInFlight) {
+        if (chunkSize <= 0 || chunksInFlight <= 0) {
+            throw new IllegalArgumentException("chunkSize e chunksInFlight devem ser positivos");
+        }
+        this.handler = handler;
+        this.chunkSize = chunkSize;
+        this.chunksInFlight = chunksInFlight;
+    }
+
+    public ExpenseCsvIngestion(ExpenseChunkHandler handler) {
+        this(handler, DEFAULT_CHUNK_SIZE, DEFAULT_CHUNKS_IN_FLIGHT);
+    }
+
+    // Cada despesa passa pela cadeia (encadeada ou compilada), na ordem do arquivo
+    public static ExpenseCsvIngestion forChain(ExpenseApprovalChain.ApprovalHandler chain) {
+        return new ExpenseCsvIngestion(chunk -> {
+            for (ExpenseApprovalChain.Expense expense : chunk) {
+                chain.approve(expense);
+            }
+        });
+    }
+
+    // Erros de formato lançam IllegalArgumentException com o número da linha;
+    // exceções do handler são relançadas aqui e interrompem a leitura
+    public IngestionReport ingest(Path csv) throws IOException {
+        Run run = new Run();
+        run.consumer.start();
+        try (FileChannel channel = FileChannel.open(csv, StandardOpenOption.READ)) {
+            run.parse(channel);
+            if (!run.flush() || !run.publish(END)) {
+                run.consumer.interrupt();
+            }
+        } catch (IOException | RuntimeException | Error e) {
+            run.consumer.interrupt();
+            run.awaitConsumer();
+            throw e;
+        }
+        run.awaitConsumer();
+
+        Throwable error = run.failure.get();
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        }
+        if (error instanceof Error) {
+            throw (Error) error;
+        }
+        if (error != null) {
+            throw new IllegalStateException("Falha ao processar lote", error);
+        }
+        return new IngestionReport(run.records, run.chunks, run.totalCents, run.bytes);
+    }
+
+    // Estado de uma ingestão: fila, consumidor e contadores do parser
+    private final class Run {
+        final BlockingQueue<List<ExpenseApprovalChain.Expense>> queue = new ArrayBlockingQueue<>(chunksInFlight);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final Thread consumer = new Thread(this::consume, "expense-ingestion");
+
+        List<ExpenseApprovalChain.Expense> chunk = new ArrayList<>(chunkSize);
+        // Buffer reutilizado para montar a descrição (cresce só se aparecer uma maior)
+        byte[] description = new byte[256];
+        long lineNumber;
+        long records;
+        long chunks;
+        long totalCents;
+        long bytes;
+        boolean stopped;
+
+        void parse(FileChannel channel) throws IOException {
+            long size = channel.size();
+            long position = 0;
+            while (position < size && !stopped) {
+                int length = (int) Math.min(WINDOW_BYTES, size - position);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                boolean last = position + length == size;
+                int consumed = parseWindow(window, length, last);
+                if (consumed == 0) {
+                    throw new IllegalArgumentException("Linha " + (lineNumber + 1)
+                        + " maior que a janela de " + WINDOW_BYTES + " bytes");
+                }
+                position += consumed;
+            }
+            bytes = position;
+        }
+
+        // Processa as linhas completas da janela e devolve quantos bytes consumiu;
+        // uma linha cortada no fim da janela é relida no início da próxima
+        private int parseWindow(ByteBuffer window, int limit, boolean last) {
+            int start = 0;
+            while (start < limit && !stopped) {
+                int end = start;
+                while (end < limit && window.get(end) != '\n') {
+                    end++;
+                }
+                if (end == limit && !last) {
+                    return start;
+                }
+                lineNumber++;
+                int lineEnd = end > start && window.get(end - 1) == '\r' ? end - 1 : end;
+                if (lineEnd > start) {
+                    parseLine(window, start, lineEnd);
+                }
+                start = end + 1;
+            }
+            return Math.min(start, limit);
+        }
+
+        private void parseLine(ByteBuffer line, int from, int to) {
+            int length = 0;
+            int i = from;
+            if (line.get(i) == '"') {
+                for (i++; ; i++) {
+                    if (i >= to) {
+                        throw new IllegalArgumentException("Linha " + lineNumber + ": aspas não fechadas");
+                    }
+                    byte c = line.get(i);
+                    if (c == '"') {
+                        if (i + 1 < to && line.get(i + 1) == '"') {
+                            i++;
+                        } else {
+                            i++;
+                            break;
+                        }
+                    }
+                    ensureDescriptionCapacity(length + 1);
+                    description[length++] = c;
+                }
+            } else {
+                while (i < to && line.get(i) != ',') {
+                    i++;
+                }
+                length = i - from;
+                ensureDescriptionCapacity(length);
+                line.get(from, description, 0, length);
+            }
+            if (i >= to || line.get(i) != ',') {
+                throw new IllegalArgumentException("Linha " + lineNumber + ": coluna de valor ausente");
+            }
+
+            int amountFrom = i + 1;
+            int amountTo = amountFrom;
+            while (amountTo < to && line.get(amountTo) != ',') {
+                amountTo++;
+            }
+            if (lineNumber == 1 && !looksNumeric(line, amountFrom, amountTo)) {
+                return; // cabeçalho
+            }
+            long cents = parseCents(line, amountFrom, amountTo, lineNumber);
+
+            chunk.add(ExpenseApprovalChain.Expense.ofCents(
+                new String(description, 0, length, StandardCharsets.UTF_8), cents));
+            records++;
+            totalCents += cents;
+            if (chunk.size() == chunkSize && !flush()) {
+                stopped = true;
+            }
+        }
+
+        private void ensureDescriptionCapacity(int needed) {
+            if (needed > description.length) {
+                description = Arrays.copyOf(description, Math.max(needed, description.length * 2));
+            }
+        }
+
+        boolean flush() {
+            if (chunk.isEmpty()) {
+                return true;
+            }
+            List<ExpenseApprovalChain.Expense> full = chunk;
+            chunk = new ArrayList<>(chunkSize);
+            chunks++;
+            return publish(full);
+        }
+
+        // Bloqueia enquanto a fila estiver cheia; false se o consumidor falhou
+        boolean publish(List<ExpenseApprovalChain.Expense> full) {
+            try {
+                while (!queue.offer(full, 50, TimeUnit.MILLISECONDS)) {
+                    if (failure.get() != null || !consumer.isAlive()) {
+                        return false;
+                    }
+                }
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UncheckedIOException(new InterruptedIOException("Ingestão interrompida"));
+            }
+        }
+
+        private void consume() {
+            try {
+                List<ExpenseApprovalChain.Expense> next;
+                while ((next = queue.take()) != END) {
+                    handler.handle(next);
+                }
+            } catch (InterruptedException e) {
+                // o parser falhou e já está relançando o erro
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        }
+
+        void awaitConsumer() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    consumer.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    consumer.interrupt();
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static boolean looksNumeric(ByteBuffer line, int from, int to) {
+        while (from < to && line.get(from) == ' ') {
+            from++;
+        }
+        if (from == to) {
+            return false;
+        }
+        byte c = line.get(from);
+        return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.';
+    }
+
+    // Converte "[-]inteiro[.fração]" direto dos bytes, sem String nem double
+    static long parseCents(ByteBuffer line, int from, int to, long lineNumber) {
+        while (from < to && line.get(from) == ' ') {
+            from++;
+        }
+        while (to > from && line.get(to - 1) == ' ') {
+            to--;
+        }
+        boolean negative = false;
+        if (from < to && (line.get(from) == '-' || line.get(from) == '+')) {
+            negative = line.get(from) == '-';
+            from++;
+        }
+
+        long units = 0;
+        int integerDigits = 0;
+        int i = from;
+        for (; i < to && line.get(i) != '.'; i++) {
+            int digit = line.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new IllegalArgumentException("Linha " + lineNumber + ": valor inválido");
+            }
+            units = units * 10 + digit;
+            if (units > MAX_UNITS) {
+                throw new IllegalArgumentException("Linha " + lineNumber + ": valor fora do limite");
+            }
+            integerDigits++;
+        }
+
+        int fraction = 0;
+        int fractionDigits = 0;
+        if (i < to) {
+            for (i++; i < to; i++) {
+                int digit = line.get(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    throw new IllegalArgumentException("Linha " + lineNumber + ": valor inválido");
+                }
+                if (++fractionDigits > 2) {
+                    throw new IllegalArgumentException("Linha " + lineNumber + ": mais de 2 casas decimais");
+                }
+                fraction = fraction * 10 + digit;
+            }
+            if (fractionDigits == 1) {
+                fraction *= 10;
+            }
+        }
+        if (integerDigits == 0 && fractionDigits == 0) {
+            throw new IllegalArgumentException("Linha " + lineNumber + ": valor vazio");
+        }
+        long cents = units * 100 + fraction;
+        return negative ? -cents : cents;
+    }
+}
+
+// Gera um CSV, ingere com resumo por aprovador e confere a soma exata em centavos.
+// Uso: ExpenseCsvIngestionCheck [linhas]
+class ExpenseCsvIngestionCheck {
+    public static void main(String[] args) throws IOException {
+        long lines = args.length > 0 ? Long.parseLong(args[0]) : 2_000_000;
+        Path csv = Files.createTempFile("despesas", ".csv");
+        try {
+            long expectedCents = 0;
+            try (BufferedWriter writer = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+                writer.write("descricao,valor\n");
+                writer.write("\"Almoço, cliente \"\"ACME\"\"\",123.4\r\n");
+                expectedCents += 12_340;
+                for (long i = 0; i < lines; i++) {
+                    long cents = (i * 7919) % 2_000_000;
+                    writer.write("Despesa " + i + "," + cents / 100 + "." + String.format("%02d", cents % 100) + "\n");
+                    expectedCents += cents;
+                }
+            }
+
+            ExpenseApprovalChain.ApprovalHandler supervisor = new ExpenseApprovalChain.SupervisorHandler();
+            ExpenseApprovalChain.ApprovalHandler manager = new ExpenseApprovalChain.ManagerHandler();
+            ExpenseApprovalChain.ApprovalHandler director = new ExpenseApprovalChain.DirectorHandler();
+            ExpenseApprovalChain.ApprovalHandler president = new ExpenseApprovalChain.PresidentHandler();
+            supervisor.setNext(manager);
+            manager.setNext(director);
+            director.setNext(president);
+            BulkApprovalService bulk = new BulkApprovalService(new CompiledApprovalChain(supervisor));
+
+            AtomicLong approvedCents = new AtomicLong();
+            ExpenseCsvIngestion ingestion = new ExpenseCsvIngestion(chunk -> {
+                ApprovalSummary summary = bulk.summarizeAll(chunk);
+                for (int i = 0; i < summary.getApproverCount(); i++) {
+                    approvedCents.addAndGet(summary.getTotalCents(i));
+                }
+            });
+
+            long start = System.nanoTime();
+            IngestionReport report = ingestion.ingest(csv);
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+            if (report.getTotalCents() != expectedCents || approvedCents.get() != expectedCents) {
+                throw new IllegalStateException("Soma divergente: esperado " + expectedCents
+                    + ", lido " + report.getTotalCents() + ", aprovado " + approvedCents.get());
+            }
+            if (report.getRecords() != lines + 1) {
+                throw new IllegalStateException("Esperadas " + (lines + 1) + " despesas, lidas " + report.getRecords());
+            }
+            System.out.println(report + " (" + report.getBytes() / (1024 * 1024) + " MB em " + elapsedMillis + " ms)");
+        } finally {
+            Files.deleteIfExists(csv);
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package examples.patterns.strategy;
+
+/**
+ * Camada de idempotência para o checkout
+ * Cenário: o cliente repete o checkout após um timeout e não pode ser cobrado duas vezes
+ */
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Cache limitado por tamanho e TTL, indexado pela chave de idempotência do cliente.
+// Uma requisição repetida com a chave ainda em andamento recebe o resultado da mesma
+// cobrança em vez de disparar uma segunda. Cada chamador recebe uma cópia do future:
+// cancelar ou aplicar timeout nela não afeta a entrada em cache.
+class IdempotentPaymentCache {
+    private final int maxEntries;
+    private final long ttlNanos;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    // Ordem de inserção, usada para expirar e despejar as entradas mais antigas primeiro.
+    // Pode conter entradas que já saíram do mapa (falhas, expiradas em execute); elas são
+    // puladas quando chegam ao início. O tamanho fica num contador: size() da fila é O(n).
+    private final ConcurrentLinkedQueue<Entry> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder joins = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public IdempotentPaymentCache(int maxEntries, Duration ttl) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries deve ser positivo");
+        }
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    // charge só é chamado se não houver resultado válido nem cobrança em andamento para a chave.
+    // Falhas (exceções) não ficam em cache: a próxima tentativa cobra de novo. Por isso charge
+    // deve devolver o future da cobrança em si, sem timeout: um timeout apagaria a chave com a
+    // cobrança ainda em andamento. O timeout vai na cópia devolvida ao chamador.
+    // Pagamentos recusados são resultados definitivos e ficam em cache normalmente.
+    // requester e amountCents identificam a requisição: reutilizar a chave para outra
+    // requisição é rejeitado em vez de devolver o resultado antigo.
+    public CompletableFuture<PaymentResult> execute(String idempotencyKey, Object requester, long amountCents,
+                                                    Supplier<CompletableFuture<PaymentResult>> charge) {
+        if (idempotencyKey == null || idempotencyKey.isEmpty()) {
+            throw new IllegalArgumentException("Chave de idempotência obrigatória");
+        }
+        while (true) {
+            long now = System.nanoTime();
+            Entry existing = entries.get(idempotencyKey);
+            if (existing != null) {
+                if (!existing.isExpired(now)) {
+                    if (!existing.matches(requester, amountCents)) {
+                        throw new IllegalArgumentException(
+                            "Chave de idempotência já usada por outra requisição: " + idempotencyKey);
+                    }
+                    if (existing.future.isDone()) {
+                        hits.increment();
+                    } else {
+                        joins.increment();
+                    }
+                    return existing.future.copy();
+                }
+                if (entries.remove(idempotencyKey, existing)) {
+                    evictions.increment();
+                }
+                continue;
+            }
+
+            Entry created = new Entry(idempotencyKey, requester, amountCents);
+            if (entries.putIfAbsent(idempotencyKey, created) != null) {
+                continue; // outra thread registrou a chave primeiro: junta-se a ela
+            }
+            misses.increment();
+            enqueue(created);
+            evictIfNeeded(now);
+            start(created, charge);
+            return created.future.copy();
+        }
+    }
+
+    // Versão síncrona para ShoppingCart.checkout
+    public PaymentResult executeSync(String idempotencyKey, Object requester, long amountCents,
+                                     Supplier<PaymentResult> charge) {
+        try {
+            return execute(idempotencyKey, requester, amountCents,
+                () -> CompletableFuture.completedFuture(charge.get())).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    public long getHitCount() { return hits.sum(); }
+    public long getJoinCount() { return joins.sum(); }
+    public long getMissCount() { return misses.sum(); }
+    public long getEvictionCount() { return evictions.sum(); }
+    public int size() { return entries.size(); }
+
+    private void start(Entry entry, Supplier<CompletableFuture<PaymentResult>> charge) {
+        CompletableFuture<PaymentResult> call;
+        try {
+            call = charge.get();
+        } catch (RuntimeException e) {
+            fail(entry, e);
+            return;
+        }
+        call.whenComplete((result, error) -> {
+            if (error != null) {
+                fail(entry, error);
+            } else {
+                // O TTL conta a partir do resultado, não do início da cobrança
+                entry.expiresAtNanos = System.nanoTime() + ttlNanos;
+                entry.future.complete(result);
+            }
+        });
+    }
+
+    private void fail(Entry entry, Throwable error) {
+        entries.remove(entry.key, entry);
+        entry.future.completeExceptionally(error);
+    }
+
+    private void enqueue(Entry entry) {
+        insertionOrder.add(entry);
+        queued.incrementAndGet();
+    }
+
+    private Entry dequeue() {
+        Entry entry = insertionOrder.poll();
+        if (entry != null) {
+            queued.decrementAndGet();
+        }
+        return entry;
+    }
+
+    private void evictIfNeeded(long now) {
+        // Expiradas e obsoletas primeiro: com TTL único, elas se acumulam no início da fila.
+        // remove(head) com head no início da fila é O(1)
+        Entry head;
+        while ((head = insertionOrder.peek()) != null
+                && (head.isExpired(now) || entries.get(head.key) != head)) {
+            if (insertionOrder.remove(head)) {
+                queued.decrementAndGet();
+                if (entries.remove(head.key, head)) {
+                    evictions.increment();
+                }
+            }
+        }
+        // Depois, por tamanho; cobranças em andamento nunca são despejadas.
+        // Se obsoletas no meio da fila a deixarem com o dobro do limite, ela é compactada.
+        int attempts = queued.get();
+        while ((entries.size() > maxEntries || queued.get() > 2L * maxEntries) && attempts-- > 0) {
+            Entry oldest = dequeue();
+            if (oldest == null) {
+                break;
+            }
+            if (entries.get(oldest.key) != oldest) {
+                continue; // já saiu do mapa: só descarta da fila
+            }
+            if (!oldest.future.isDone() || entries.size() <= maxEntries) {
+                enqueue(oldest);
+            } else if (entries.remove(oldest.key, oldest)) {
+                evictions.increment();
+            }
+        }
+    }
+
+    private static final class Entry {
+        final String key;
+        final Object requester;
+        final long amountCents;
+        final CompletableFuture<PaymentResult> future = new CompletableFuture<>();
+        // Long.MAX_VALUE enquanto a cobrança estiver em andamento
+        volatile long expiresAtNanos = Long.MAX_VALUE;
+
+        Entry(String key, Object requester, long amountCents) {
+            this.key = key;
+            this.requester = requester;
+            this.amountCents = amountCents;
+        }
+
+        // Valor zero na retentativa é aceito: um checkout aprovado tira do carrinho as
+        // linhas cobradas, e a retentativa de quem não recebeu a resposta chega vazia
+        boolean matches(Object otherRequester, long otherAmountCents) {
+            return requester == otherRequester
+                && (amountCents == otherAmountCents || otherAmountCents == 0);
+        }
+
+        boolean isExpired(long now) {
+            long expiresAt = expiresAtNanos;
+            return expiresAt != Long.MAX_VALUE && now - expiresAt > 0;
+        }
+    }
+}
+
+// Cobrança mais lenta que o timeout do método: o chamador recebe TimeoutException, a
+// retentativa com a mesma chave aguarda a cobrança original e o gateway é chamado uma vez só.
+// Depois da aprovação, as linhas pagas saem do carrinho.
+class IdempotentPaymentCacheCheck {
+    public static void main(String[] args) {
+        java.util.concurrent.atomic.AtomicInteger charges = new java.util.concurrent.atomic.AtomicInteger();
+        PaymentStrategy slowGateway = new PaymentStrategy() {
+            @Override
+            public PaymentResult processPayment(java.math.BigDecimal amount) {
+                charges.incrementAndGet();
+                java.util.concurrent.locks.LockSupport.parkNanos(300_000_000L);
+                return new PaymentResult(true, TransactionIdGenerator.shared().next("LENTO"),
+                    "Pagamento aprovado", java.time.LocalDateTime.now());
+            }
+
+            @Override
+            public String getPaymentMethodName() {
+                return "Gateway lento";
+            }
+        };
+        AsyncCheckoutExecutor executor = new AsyncCheckoutExecutor(10, Duration.ofSeconds(30));
+        executor.setTimeout(slowGateway.getPaymentMethodName(), Duration.ofMillis(50));
+        IdempotentPaymentCache cache = new IdempotentPaymentCache(100, Duration.ofMinutes(10));
+
+        ShoppingCart cart = new ShoppingCart();
+        cart.addItem("Monitor", new java.math.BigDecimal("1200.00"));
+        cart.setPaymentStrategy(slowGateway);
+        try {
+            cart.checkoutAsync("pedido-lento", cache, executor).join();
+            check(false, "Cobrança lenta não estourou o timeout");
+        } catch (CompletionException e) {
+            check(e.getCause() instanceof java.util.concurrent.TimeoutException, "Falha inesperada: " + e.getCause());
+        }
+
+        // Retentativa logo após o timeout, com a cobrança original ainda em andamento
+        PaymentResult retry = cart.checkoutAsync("pedido-lento", cache, AsyncCheckoutExecutor.shared()).join();
+        check(retry.isSuccess(), "Retentativa não recebeu a aprovação");
+        check(charges.get() == 1, "Gateway cobrado " + charges.get() + " vezes");
+        check(cache.getJoinCount() == 1, "Retentativa não aguardou a cobrança em andamento");
+        check(cart.getLineCount() == 0, "Linhas pagas continuam no carrinho");
+        System.out.println("Cobranças no gateway: " + charges.get() + ", transação " + retry.getTransactionId());
+        PaymentEvents.shutdown();
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+}
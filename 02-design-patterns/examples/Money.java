@@ -0,0 +1,25 @@
+package examples.patterns.strategy;
+
+/**
+ * Conversão entre BigDecimal (borda da API) e centavos em long (representação interna)
+ */
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+final class Money {
+    private Money() {
+    }
+
+    // Frações de centavo são arredondadas com HALF_EVEN; valores fora do long lançam ArithmeticException
+    public static long toCents(BigDecimal amount) {
+        if (amount == null) {
+            throw new IllegalArgumentException("Valor não pode ser nulo");
+        }
+        return amount.setScale(2, RoundingMode.HALF_EVEN).unscaledValue().longValueExact();
+    }
+
+    public static BigDecimal fromCents(long cents) {
+        return BigDecimal.valueOf(cents, 2);
+    }
+}
@@ -0,0 +1,372 @@
+package examples.patterns.strategy;
+
+/**
+ * Saída de eventos de pagamento fora do caminho crítico
+ * Cenário: processPayment e o carrinho publicam eventos num ring buffer
+ * pré-alocado; uma única thread de fundo drena para console ou arquivo
+ */
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+enum PaymentEventType {
+    ITEM_ADDED,
+    ITEM_REMOVED,
+    CHECKOUT_STARTED,
+    PAYMENT_REQUESTED,
+    PAYMENT_ARTIFACT; // QR Code, código de barras etc.
+
+    private static final PaymentEventType[] VALUES = values();
+
+    static PaymentEventType of(int ordinal) {
+        return VALUES[ordinal];
+    }
+}
+
+// Contrato plugável: publish nunca bloqueia; devolve false se o evento foi descartado.
+// overflow = recusado por buffer cheio; drop = aceito mas perdido (falha do drenador, sink fechado)
+interface PaymentEventSink {
+    boolean publish(PaymentEventType type, long amountCents, long id, Object subject);
+    long getOverflowCount();
+    long getDropCount();
+    void close();
+}
+
+// Recebe os campos primitivos do registro; só roda na thread drenadora
+interface PaymentEventDrainer {
+    void onEvent(PaymentEventType type, long timestampMillis, long amountCents,
+                 long id, Object subject) throws IOException;
+    void flush() throws IOException;
+    void close() throws IOException;
+}
+
+// Ponto de acesso global, como um logger
+final class PaymentEvents {
+    private static volatile PaymentEventSink sink;
+
+    private PaymentEvents() {
+    }
+
+    public static PaymentEventSink sink() {
+        PaymentEventSink current = sink;
+        if (current == null) {
+            synchronized (PaymentEvents.class) {
+                current = sink;
+                if (current == null) {
+                    current = new RingBufferPaymentEventSink(8192, new ConsolePaymentEventDrainer(System.out));
+                    sink = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    // Troca o sink em uso; o anterior é drenado e fechado
+    public static synchronized void install(PaymentEventSink newSink) {
+        PaymentEventSink previous = sink;
+        sink = newSink;
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    public static synchronized void shutdown() {
+        install(null);
+    }
+}
+
+// Ring buffer multi-produtor / consumidor único.
+// Cada slot é um registro de layout fixo: 4 longs (tipo, timestamp, valor, id)
+// mais uma referência ao "assunto" (nome do item, chave PIX...), que já existe
+// no chamador e não é copiado nem formatado no caminho crítico.
+// Sem eventos, o drenador fica estacionado até um produtor acordá-lo.
+class RingBufferPaymentEventSink implements PaymentEventSink {
+    private static final int FIELDS = 4;
+    // Valor de claimed depois do close: nenhum produtor reserva slot a partir daí
+    private static final long CLOSED = -1;
+
+    private final int mask;
+    private final long[] records;
+    private final Object[] subjects;
+    // Sequência publicada em cada slot; o consumidor só lê quando ela bate com a esperada
+    private final AtomicLongArray published;
+    private final AtomicLong claimed = new AtomicLong();
+    private volatile long consumed;
+
+    private final AtomicLong overflowCount = new AtomicLong();
+    private final AtomicLong dropCount = new AtomicLong();
+
+    private final PaymentEventDrainer drainer;
+    private final Thread drainerThread;
+    private volatile boolean running = true;
+    // Ligado pelo drenador antes de estacionar; o produtor que publica depois disso o acorda
+    private volatile boolean sleeping;
+
+    public RingBufferPaymentEventSink(int capacity, PaymentEventDrainer drainer) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacidade deve ser potência de 2");
+        }
+        this.mask = capacity - 1;
+        this.records = new long[capacity * FIELDS];
+        this.subjects = new Object[capacity];
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, -1);
+        }
+        this.drainer = drainer;
+        this.drainerThread = new Thread(this::drainLoop, "payment-event-drainer");
+        this.drainerThread.setDaemon(true);
+        this.drainerThread.start();
+    }
+
+    @Override
+    public boolean publish(PaymentEventType type, long amountCents, long id, Object subject) {
+        if (!running) {
+            dropCount.incrementAndGet();
+            return false;
+        }
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence == CLOSED) {
+                // O drenador fechou entre a checagem de running e a reserva
+                dropCount.incrementAndGet();
+                return false;
+            }
+            if (sequence - consumed > mask) {
+                // Buffer cheio: descarta o evento em vez de bloquear o pagamento
+                overflowCount.incrementAndGet();
+                return false;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        int slot = (int) (sequence & mask);
+        int base = slot * FIELDS;
+        records[base] = type.ordinal();
+        records[base + 1] = System.currentTimeMillis();
+        records[base + 2] = amountCents;
+        records[base + 3] = id;
+        subjects[slot] = subject;
+        // Escrita volatile (não lazySet): ordena a publicação antes da leitura de sleeping,
+        // então ou o drenador vê o slot antes de estacionar ou o produtor vê sleeping
+        published.set(slot, sequence);
+        if (sleeping) {
+            LockSupport.unpark(drainerThread);
+        }
+        return true;
+    }
+
+    @Override
+    public long getOverflowCount() {
+        return overflowCount.get();
+    }
+
+    @Override
+    public long getDropCount() {
+        return dropCount.get();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(drainerThread);
+        try {
+            drainerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drainLoop() {
+        while (running) {
+            if (drainAvailable() == 0) {
+                flushQuietly();
+                sleeping = true;
+                if (running && !isNextPublished()) {
+                    LockSupport.park(this);
+                }
+                sleeping = false;
+            }
+        }
+        // Fecha a reserva de slots: quem tentar depois disso conta como drop. Produtores
+        // que já reservaram um slot antes ainda podem estar escrevendo; espera por eles.
+        long last = claimed.getAndSet(CLOSED);
+        while (consumed != last) {
+            if (drainAvailable() == 0) {
+                Thread.onSpinWait();
+            }
+        }
+        flushQuietly();
+        try {
+            drainer.close();
+        } catch (IOException e) {
+            // nada mais a fazer com os eventos pendentes
+        }
+    }
+
+    private boolean isNextPublished() {
+        long sequence = consumed;
+        return published.get((int) (sequence & mask)) == sequence;
+    }
+
+    private int drainAvailable() {
+        int drained = 0;
+        long sequence = consumed;
+        while (true) {
+            int slot = (int) (sequence & mask);
+            if (published.get(slot) != sequence) {
+                break;
+            }
+            int base = slot * FIELDS;
+            Object subject = subjects[slot];
+            subjects[slot] = null;
+            try {
+                drainer.onEvent(PaymentEventType.of((int) records[base]), records[base + 1],
+                    records[base + 2], records[base + 3], subject);
+            } catch (IOException | RuntimeException e) {
+                dropCount.incrementAndGet();
+            }
+            sequence++;
+            consumed = sequence; // libera o slot para os produtores
+            drained++;
+        }
+        return drained;
+    }
+
+    private void flushQuietly() {
+        try {
+            drainer.flush();
+        } catch (IOException e) {
+            dropCount.incrementAndGet();
+        }
+    }
+}
+
+// Formata os registros só na thread drenadora, num StringBuilder reutilizado
+class ConsolePaymentEventDrainer implements PaymentEventDrainer {
+    private final PrintStream out;
+    private final StringBuilder buffer = new StringBuilder(4096);
+
+    public ConsolePaymentEventDrainer(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void onEvent(PaymentEventType type, long timestampMillis, long amountCents,
+                        long id, Object subject) {
+        buffer.append('[').append(type).append("] ");
+        if (subject != null) {
+            buffer.append(subject).append(' ');
+        }
+        buffer.append("R$ ");
+        if (amountCents < 0) {
+            // amountCents / 100 é zero entre -99 e -1 centavos e perderia o sinal
+            buffer.append('-');
+        }
+        buffer.append(Math.abs(amountCents / 100)).append('.');
+        long cents = Math.abs(amountCents % 100);
+        if (cents < 10) {
+            buffer.append('0');
+        }
+        buffer.append(cents);
+        if (id != 0) {
+            // Em eventos de item o campo id carrega a quantidade
+            buffer.append(type == PaymentEventType.ITEM_ADDED ? " qtd=" : " id=").append(id);
+        }
+        buffer.append('\n');
+        if (buffer.length() >= 4096) {
+            flush();
+        }
+    }
+
+    @Override
+    public void flush() {
+        if (buffer.length() > 0) {
+            out.print(buffer);
+            out.flush();
+            buffer.setLength(0);
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+}
+
+// Grava registros binários de tamanho variável, sem cortar o assunto:
+// tipo (int) | timestamp (long) | valor em centavos (long) | id (long) | n (int) | assunto (n bytes, UTF-8)
+// Um BR Code PIX completo (valor, txid e CRC) cabe inteiro no registro.
+class FilePaymentEventDrainer implements PaymentEventDrainer {
+    static final int HEADER_BYTES = 4 + 8 + 8 + 8 + 4;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+    private final byte[] scratch = new byte[PixBrCodeTemplate.MAX_PAYLOAD_BYTES];
+
+    public FilePaymentEventDrainer(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public void onEvent(PaymentEventType type, long timestampMillis, long amountCents,
+                        long id, Object subject) throws IOException {
+        byte[] bytes;
+        int length;
+        if (subject instanceof PixBrCodeTemplate.Payload payload) {
+            // Formata direto no buffer de trabalho, sem String intermediária
+            bytes = scratch;
+            length = payload.write(scratch, 0);
+        } else if (subject != null) {
+            bytes = subject.toString().getBytes(StandardCharsets.UTF_8);
+            length = bytes.length;
+        } else {
+            bytes = scratch;
+            length = 0;
+        }
+        ByteBuffer target = buffer;
+        if (buffer.remaining() < HEADER_BYTES + length) {
+            flush();
+            if (buffer.capacity() < HEADER_BYTES + length) {
+                // Assunto maior que o buffer: registro gravado à parte
+                target = ByteBuffer.allocate(HEADER_BYTES + length);
+            }
+        }
+        target.putInt(type.ordinal());
+        target.putLong(timestampMillis);
+        target.putLong(amountCents);
+        target.putLong(id);
+        target.putInt(length);
+        target.put(bytes, 0, length);
+        if (target != buffer) {
+            target.flip();
+            while (target.hasRemaining()) {
+                channel.write(target);
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+}
@@ -0,0 +1,613 @@
+package examples.patterns.strategy;
+
+/**
+ * Journal (write-ahead) de pagamentos em arquivos mapeados em memória
+ * Cenário: registro durável de cada tentativa e resultado de checkout,
+ * bem mais barato que um INSERT por pagamento, com replay rápido na subida
+ *
+ * Registro binário de 40 bytes:
+ *   kind(1) status(1) método(2) checksum(4) | attemptId(8) | transactionId(8) | centavos(8) | epochNanos(8)
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+class PaymentJournal implements AutoCloseable {
+    static final int RECORD_BYTES = 40;
+
+    static final byte KIND_ATTEMPT = 1;
+    static final byte KIND_RESULT = 2;
+
+    static final byte STATUS_PENDING = 0;
+    static final byte STATUS_APPROVED = 1;
+    static final byte STATUS_DECLINED = 2;
+    static final byte STATUS_ERROR = 3;
+
+    private static final String SEGMENT_PREFIX = "payments-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    // Recebe os campos primitivos de cada registro válido, na ordem de escrita
+    interface RecordVisitor {
+        void onRecord(byte kind, byte status, short methodCode, long attemptId,
+                      long transactionId, long amountCents, long epochNanos);
+    }
+
+    private final Path directory;
+    private final int recordsPerSegment;
+    private final long groupCommitMillis;
+
+    // epochNanos = base de relógio de parede + deslocamento monotônico, sem alocar Instant
+    private final long baseEpochNanos = System.currentTimeMillis() * 1_000_000L;
+    private final long baseNanoTime = System.nanoTime();
+
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private long segmentIndex;
+    private int segmentPosition; // em registros
+    private volatile long appendedSequence = -1;
+
+    private final Object durability = new Object();
+    private volatile long durableSequence = -1;
+    private final Thread flusher;
+    private volatile boolean open = true;
+
+    // groupCommitMillis > 0: uma thread faz force() periódico e quem chama awaitDurable
+    // compartilha o mesmo fsync; 0: força a cada awaitDurable (sem agrupamento)
+    public PaymentJournal(Path directory, int recordsPerSegment, long groupCommitMillis) throws IOException {
+        if (recordsPerSegment <= 0) {
+            throw new IllegalArgumentException("recordsPerSegment deve ser positivo");
+        }
+        // Offsets são int e um segmento é um único mapeamento: até 2 GB
+        if (recordsPerSegment > Integer.MAX_VALUE / RECORD_BYTES) {
+            throw new IllegalArgumentException("recordsPerSegment acima de "
+                + Integer.MAX_VALUE / RECORD_BYTES + " excede 2 GB por segmento");
+        }
+        this.directory = directory;
+        this.recordsPerSegment = recordsPerSegment;
+        this.groupCommitMillis = groupCommitMillis;
+        Files.createDirectories(directory);
+
+        List<Path> segments = listSegments(directory);
+        if (segments.isEmpty()) {
+            openSegment(0, 0);
+        } else {
+            // Continua do fim do último segmento (primeiro registro vazio ou inválido)
+            Path last = segments.get(segments.size() - 1);
+            long index = segmentIndexOf(last);
+            openSegment(index, 0);
+            int position = 0;
+            while (position < recordsPerSegment && isValid(segment, position * RECORD_BYTES)) {
+                position++;
+            }
+            segmentPosition = position;
+        }
+        appendedSequence = segmentIndex * recordsPerSegment + segmentPosition - 1;
+        durableSequence = appendedSequence;
+
+        if (groupCommitMillis > 0) {
+            flusher = new Thread(this::flushLoop, "payment-journal-flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+        } else {
+            flusher = null;
+        }
+    }
+
+    // Devolve a sequência global do registro, usada em awaitDurable
+    public long append(byte kind, byte status, short methodCode, long attemptId,
+                       long transactionId, long amountCents) {
+        long epochNanos = baseEpochNanos + (System.nanoTime() - baseNanoTime);
+        appendLock.lock();
+        try {
+            if (!open) {
+                throw new IllegalStateException("Journal fechado");
+            }
+            if (segmentPosition == recordsPerSegment) {
+                rollOver();
+            }
+            int offset = segmentPosition * RECORD_BYTES;
+            // Campos primeiro, cabeçalho por último: um registro só fica válido completo
+            segment.putLong(offset + 8, attemptId);
+            segment.putLong(offset + 16, transactionId);
+            segment.putLong(offset + 24, amountCents);
+            segment.putLong(offset + 32, epochNanos);
+            segment.putShort(offset + 2, methodCode);
+            segment.put(offset + 1, status);
+            segment.putInt(offset + 4, checksum(kind, status, methodCode, attemptId,
+                transactionId, amountCents, epochNanos));
+            segment.put(offset, kind);
+            segmentPosition++;
+            long sequence = segmentIndex * recordsPerSegment + segmentPosition - 1;
+            appendedSequence = sequence;
+            return sequence;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    // Bloqueia até o registro estar em disco. Devolve false se a espera foi interrompida
+    // antes disso: quem chama não pode tratar o registro como durável.
+    public boolean awaitDurable(long sequence) {
+        if (sequence <= durableSequence) {
+            return true;
+        }
+        if (flusher == null) {
+            force();
+            return true;
+        }
+        synchronized (durability) {
+            while (sequence > durableSequence && open) {
+                try {
+                    durability.wait(groupCommitMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            // close() força tudo antes de avisar: fechado, o registro já está em disco
+            return sequence <= durableSequence;
+        }
+    }
+
+    public long getAppendedSequence() {
+        return appendedSequence;
+    }
+
+    public long getDurableSequence() {
+        return durableSequence;
+    }
+
+    @Override
+    public void close() throws IOException {
+        appendLock.lock();
+        try {
+            if (!open) {
+                return;
+            }
+            open = false;
+        } finally {
+            appendLock.unlock();
+        }
+        if (flusher != null) {
+            flusher.interrupt();
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        force();
+        channel.close();
+        synchronized (durability) {
+            durability.notifyAll();
+        }
+    }
+
+    // Varre todos os segmentos em ordem; para no primeiro registro vazio ou corrompido
+    // (escrita interrompida por queda). Devolve o número de registros válidos.
+    public static long replay(Path directory, RecordVisitor visitor) throws IOException {
+        long count = 0;
+        for (Path file : PaymentJournal.listSegments(directory)) {
+            try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+                int records = (int) (in.size() / RECORD_BYTES);
+                for (int i = 0; i < records; i++) {
+                    int offset = i * RECORD_BYTES;
+                    if (!isValid(buffer, offset)) {
+                        return count;
+                    }
+                    visitor.onRecord(buffer.get(offset), buffer.get(offset + 1), buffer.getShort(offset + 2),
+                        buffer.getLong(offset + 8), buffer.getLong(offset + 16),
+                        buffer.getLong(offset + 24), buffer.getLong(offset + 32));
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private void flushLoop() {
+        while (open) {
+            try {
+                Thread.sleep(groupCommitMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (appendedSequence > durableSequence) {
+                force();
+            }
+        }
+    }
+
+    // O fsync roda fora do lock: os appends continuam enquanto o disco trabalha
+    private void force() {
+        MappedByteBuffer current;
+        long target;
+        appendLock.lock();
+        try {
+            current = segment;
+            target = appendedSequence;
+        } finally {
+            appendLock.unlock();
+        }
+        current.force();
+        publishDurable(target);
+    }
+
+    private void publishDurable(long sequence) {
+        synchronized (durability) {
+            if (sequence > durableSequence) {
+                durableSequence = sequence;
+                durability.notifyAll();
+            }
+        }
+    }
+
+    // Chamado com appendLock: fecha o segmento cheio (já forçado) e abre o próximo
+    private void rollOver() {
+        try {
+            long target = appendedSequence;
+            segment.force();
+            channel.close();
+            publishDurable(target);
+            openSegment(segmentIndex + 1, 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void openSegment(long index, int position) throws IOException {
+        Path file = directory.resolve(String.format("%s%012d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+        channel = FileChannel.open(file, StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) recordsPerSegment * RECORD_BYTES);
+        segmentIndex = index;
+        segmentPosition = position;
+    }
+
+    private static boolean isValid(MappedByteBuffer buffer, int offset) {
+        byte kind = buffer.get(offset);
+        if (kind != KIND_ATTEMPT && kind != KIND_RESULT) {
+            return false;
+        }
+        return buffer.getInt(offset + 4) == checksum(kind, buffer.get(offset + 1), buffer.getShort(offset + 2),
+            buffer.getLong(offset + 8), buffer.getLong(offset + 16),
+            buffer.getLong(offset + 24), buffer.getLong(offset + 32));
+    }
+
+    static int checksum(byte kind, byte status, short methodCode, long attemptId,
+                        long transactionId, long amountCents, long epochNanos) {
+        long h = (kind & 0xFFL) | (status & 0xFFL) << 8 | (methodCode & 0xFFFFL) << 16;
+        h = mix(h ^ attemptId);
+        h = mix(h ^ transactionId);
+        h = mix(h ^ amountCents);
+        h = mix(h ^ epochNanos);
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static long mix(long h) {
+        h *= 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    static List<Path> listSegments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return segments;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : stream) {
+                segments.add(file);
+            }
+        }
+        // O índice tem largura fixa: ordem lexicográfica = ordem de escrita
+        segments.sort(null);
+        return segments;
+    }
+
+    private static long segmentIndexOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
+
+// Estado reconstruído a partir do journal: totais por método e tentativas sem resultado
+// (as que podem ter cobrado antes de uma queda e precisam de conciliação)
+class PaymentJournalState implements PaymentJournal.RecordVisitor {
+    private final long[] approvedCentsByMethod = new long[JournaledPaymentStrategy.METHOD_CODES];
+    private final long[] approvedCountByMethod = new long[JournaledPaymentStrategy.METHOD_CODES];
+    private final PendingAttempts pending = new PendingAttempts();
+    private long records;
+
+    @Override
+    public void onRecord(byte kind, byte status, short methodCode, long attemptId,
+                         long transactionId, long amountCents, long epochNanos) {
+        records++;
+        if (kind == PaymentJournal.KIND_ATTEMPT) {
+            pending.add(attemptId);
+            return;
+        }
+        pending.remove(attemptId);
+        if (status == PaymentJournal.STATUS_APPROVED && methodCode >= 0
+                && methodCode < approvedCentsByMethod.length) {
+            approvedCentsByMethod[methodCode] += amountCents;
+            approvedCountByMethod[methodCode]++;
+        }
+    }
+
+    public long getRecordCount() { return records; }
+    public long getApprovedCents(short methodCode) { return approvedCentsByMethod[methodCode]; }
+    public long getApprovedCount(short methodCode) { return approvedCountByMethod[methodCode]; }
+    public int getPendingCount() { return pending.size(); }
+    public boolean isPending(long attemptId) { return pending.contains(attemptId); }
+
+    // Conjunto de long com endereçamento aberto: sem boxing para milhões de tentativas
+    private static final class PendingAttempts {
+        private static final long EMPTY = 0; // attemptIds vêm do gerador Snowflake e nunca são 0
+        private static final long REMOVED = Long.MIN_VALUE;
+        private long[] slots = new long[1024];
+        private int size;
+        private int used;
+
+        void add(long id) {
+            if ((used + 1) * 2 > slots.length) {
+                rehash(size * 4 > slots.length ? slots.length * 2 : slots.length);
+            }
+            int i = indexOf(id, slots);
+            if (slots[i] != id) {
+                if (slots[i] == EMPTY) {
+                    used++;
+                }
+                slots[i] = id;
+                size++;
+            }
+        }
+
+        void remove(long id) {
+            int i = find(id);
+            if (i >= 0) {
+                slots[i] = REMOVED;
+                size--;
+            }
+        }
+
+        boolean contains(long id) {
+            return find(id) >= 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        private int find(long id) {
+            int mask = slots.length - 1;
+            for (int i = hash(id) & mask; slots[i] != EMPTY; i = (i + 1) & mask) {
+                if (slots[i] == id) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        // Posição para inserir: o próprio id, um slot removido ou o primeiro vazio
+        private static int indexOf(long id, long[] table) {
+            int mask = table.length - 1;
+            int firstRemoved = -1;
+            int i = hash(id) & mask;
+            for (; table[i] != EMPTY; i = (i + 1) & mask) {
+                if (table[i] == id) {
+                    return i;
+                }
+                if (table[i] == REMOVED && firstRemoved < 0) {
+                    firstRemoved = i;
+                }
+            }
+            return firstRemoved >= 0 ? firstRemoved : i;
+        }
+
+        private void rehash(int capacity) {
+            long[] table = new long[capacity];
+            for (long id : slots) {
+                if (id != EMPTY && id != REMOVED) {
+                    table[indexOf(id, table)] = id;
+                }
+            }
+            slots = table;
+            used = size;
+        }
+
+        private static int hash(long id) {
+            long h = id * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
+
+// Decorator que registra tentativa e resultado de cada pagamento no journal
+class JournaledPaymentStrategy implements PaymentStrategy {
+    static final int METHOD_CODES = 5;
+    static final short METHOD_OTHER = 0;
+    static final short METHOD_CREDIT_CARD = 1;
+    static final short METHOD_PIX = 2;
+    static final short METHOD_PAYPAL = 3;
+    static final short METHOD_BOLETO = 4;
+
+    private final PaymentStrategy delegate;
+    private final PaymentJournal journal;
+    private final short methodCode;
+    private final boolean durable;
+
+    // durable = true espera o fsync (agrupado) da tentativa antes de cobrar
+    public JournaledPaymentStrategy(PaymentStrategy delegate, PaymentJournal journal, boolean durable) {
+        this.delegate = delegate;
+        this.journal = journal;
+        this.methodCode = methodCodeOf(delegate);
+        this.durable = durable;
+    }
+
+    @Override
+    public PaymentResult processPayment(BigDecimal amount) {
+        long amountCents = Money.toCents(amount);
+        long attemptId = TransactionIdGenerator.shared().nextId();
+        long sequence = journal.append(PaymentJournal.KIND_ATTEMPT, PaymentJournal.STATUS_PENDING,
+            methodCode, attemptId, 0, amountCents);
+        if (durable && !journal.awaitDurable(sequence)) {
+            // Sem a tentativa em disco não há como conciliar depois de uma queda: não cobra.
+            // No replay ela aparece pendente, sem cobrança correspondente no gateway.
+            throw new IllegalStateException("Tentativa " + attemptId + " não ficou durável; pagamento não processado");
+        }
+        PaymentResult result;
+        try {
+            result = delegate.processPayment(amount);
+        } catch (RuntimeException e) {
+            journal.append(PaymentJournal.KIND_RESULT, PaymentJournal.STATUS_ERROR,
+                methodCode, attemptId, 0, amountCents);
+            throw e;
+        }
+        journal.append(PaymentJournal.KIND_RESULT,
+            result.isSuccess() ? PaymentJournal.STATUS_APPROVED : PaymentJournal.STATUS_DECLINED,
+            methodCode, attemptId, result.getTransactionIdValue(), amountCents);
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<PaymentResult> processPaymentAsync(BigDecimal amount) {
+        return BlockingPaymentAdapter.supplyAsync(this, amount);
+    }
+
+    @Override
+    public String getPaymentMethodName() {
+        return delegate.getPaymentMethodName();
+    }
+
+    static short methodCodeOf(PaymentStrategy strategy) {
+        if (strategy instanceof CreditCardPaymentStrategy) return METHOD_CREDIT_CARD;
+        if (strategy instanceof PixPaymentStrategy) return METHOD_PIX;
+        if (strategy instanceof PayPalPaymentStrategy) return METHOD_PAYPAL;
+        if (strategy instanceof BoletoPaymentStrategy) return METHOD_BOLETO;
+        return METHOD_OTHER;
+    }
+}
+
+// Append com rollover, reabertura após registro rasgado, replay cronometrado e
+// espera de durabilidade interrompida (que não pode cobrar).
+// Uso: java PaymentJournalCheck [registros] [registrosPorSegmento]
+class PaymentJournalCheck {
+    public static void main(String[] args) throws IOException {
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int perSegment = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        Path directory = Files.createTempDirectory("payment-journal");
+
+        long start = System.nanoTime();
+        try (PaymentJournal journal = new PaymentJournal(directory, perSegment, 5)) {
+            for (int i = 0; i < records; i++) {
+                long attemptId = i + 1;
+                journal.append(PaymentJournal.KIND_ATTEMPT, PaymentJournal.STATUS_PENDING,
+                    JournaledPaymentStrategy.METHOD_PIX, attemptId, 0, 1_000);
+                journal.append(PaymentJournal.KIND_RESULT, PaymentJournal.STATUS_APPROVED,
+                    JournaledPaymentStrategy.METHOD_PIX, attemptId, attemptId, 1_000);
+            }
+            if (!journal.awaitDurable(journal.getAppendedSequence())) {
+                throw new IllegalStateException("Último registro não ficou durável");
+            }
+        }
+        long appendNanos = System.nanoTime() - start;
+        long written = 2L * records;
+        long segments = PaymentJournal.listSegments(directory).size();
+        check(segments == (written + perSegment - 1) / perSegment, "Segmentos após rollover: " + segments);
+        System.out.printf("%d registros em %d segmentos: %d ms (%.1f M/s)%n",
+            written, segments, appendNanos / 1_000_000, written * 1e3 / appendNanos);
+
+        // Queda no meio da escrita do último resultado: o checksum não fecha
+        List<Path> files = PaymentJournal.listSegments(directory);
+        Path last = files.get(files.size() - 1);
+        int tornOffset = (int) ((written - 1) % perSegment) * PaymentJournal.RECORD_BYTES;
+        try (FileChannel file = FileChannel.open(last, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = file.map(FileChannel.MapMode.READ_WRITE, 0, file.size());
+            buffer.putLong(tornOffset + 24, 0);
+            buffer.force();
+        }
+
+        PaymentJournalState state = new PaymentJournalState();
+        start = System.nanoTime();
+        long replayed = PaymentJournal.replay(directory, state);
+        long replayNanos = System.nanoTime() - start;
+        System.out.printf("Replay de %d registros em %d ms (%.1f M/s), %d pendentes%n",
+            replayed, replayNanos / 1_000_000, replayed * 1e3 / replayNanos, state.getPendingCount());
+        check(replayed == written - 1, "Replay deveria parar no registro rasgado: " + replayed);
+        check(state.getPendingCount() == 1 && state.isPending(records), "Tentativa sem resultado não ficou pendente");
+        check(state.getApprovedCount(JournaledPaymentStrategy.METHOD_PIX) == records - 1, "Aprovados no replay");
+
+        // Reabertura continua no registro rasgado e o sobrescreve
+        try (PaymentJournal journal = new PaymentJournal(directory, perSegment, 5)) {
+            check(journal.getAppendedSequence() == written - 2, "Reabertura fora do fim válido: "
+                + journal.getAppendedSequence());
+            long sequence = journal.append(PaymentJournal.KIND_RESULT, PaymentJournal.STATUS_DECLINED,
+                JournaledPaymentStrategy.METHOD_PIX, records, 0, 1_000);
+            check(sequence == written - 1, "Registro regravado na sequência " + sequence);
+        }
+        state = new PaymentJournalState();
+        check(PaymentJournal.replay(directory, state) == written && state.getPendingCount() == 0,
+            "Replay após reabertura");
+
+        // Espera interrompida: a tentativa não está garantida em disco, então não cobra
+        AtomicInteger charges = new AtomicInteger();
+        PaymentStrategy gateway = new PaymentStrategy() {
+            @Override
+            public PaymentResult processPayment(BigDecimal amount) {
+                charges.incrementAndGet();
+                return new PaymentResult(true, TransactionIdGenerator.shared().next("TST"),
+                    "Pagamento aprovado", LocalDateTime.now());
+            }
+
+            @Override
+            public String getPaymentMethodName() {
+                return "Teste";
+            }
+        };
+        // Diretório novo: o segmento já mapeado recebe a tentativa sem rollover
+        Path fresh = directory.resolve("interrompido");
+        try (PaymentJournal journal = new PaymentJournal(fresh, perSegment, 60_000)) {
+            JournaledPaymentStrategy strategy = new JournaledPaymentStrategy(gateway, journal, true);
+            Thread.currentThread().interrupt();
+            try {
+                strategy.processPayment(new BigDecimal("10.00"));
+                throw new IllegalStateException("Pagamento processado com a espera interrompida");
+            } catch (IllegalStateException e) {
+                check(Thread.interrupted(), "Interrupção perdida");
+                System.out.println("Espera interrompida: " + e.getMessage());
+            }
+            check(charges.get() == 0, "Cobrança feita sem durabilidade");
+        }
+
+        for (Path file : PaymentJournal.listSegments(fresh)) {
+            Files.delete(file);
+        }
+        Files.delete(fresh);
+        for (Path file : PaymentJournal.listSegments(directory)) {
+            Files.delete(file);
+        }
+        Files.delete(directory);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+}
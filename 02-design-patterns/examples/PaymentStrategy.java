@@ -6,14 +6,26 @@ package examples.patterns.strategy;
  */
 
 import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 // Strategy Interface
 interface PaymentStrategy {
     PaymentResult processPayment(BigDecimal amount);
     String getPaymentMethodName();
+    
+    // Versão não bloqueante: estratégias com gateway assíncrono sobrescrevem este método.
+    // As estratégias síncronas usam o adaptador, que executa processPayment numa virtual thread.
+    default CompletableFuture<PaymentResult> processPaymentAsync(BigDecimal amount) {
+        return BlockingPaymentAdapter.supplyAsync(this, amount);
+    }
 }
 
 // Concrete Strategies
@@ -22,6 +34,8 @@ class CreditCardPaymentStrategy implements PaymentStrategy {
     private String cardHolder;
     private String cvv;
     private String expiryDate;
+    // Montado uma vez: os eventos só referenciam o número mascarado
+    private final String maskedCardNumber;
     
     public CreditCardPaymentStrategy(String cardNumber, String cardHolder, 
                                     String cvv, String expiryDate) {
@@ -29,19 +43,20 @@ class CreditCardPaymentStrategy implements PaymentStrategy {
         this.cardHolder = cardHolder;
         this.cvv = cvv;
         this.expiryDate = expiryDate;
+        this.maskedCardNumber = "**** **** **** " + cardNumber.substring(12);
     }
     
     @Override
     public PaymentResult processPayment(BigDecimal amount) {
         // Simular validação e processamento
-        System.out.println("Processing credit card payment...");
-        System.out.println("Card: **** **** **** " + cardNumber.substring(12));
-        System.out.println("Amount: R$ " + amount);
+        TransactionId transactionId = TransactionIdGenerator.shared().next("CC");
+        PaymentEvents.sink().publish(PaymentEventType.PAYMENT_REQUESTED,
+            Money.toCents(amount), transactionId.getValue(), maskedCardNumber);
         
         // Simular aprovação
         return new PaymentResult(
             true,
-            "CC-" + System.currentTimeMillis(),
+            transactionId,
             "Pagamento aprovado",
             LocalDateTime.now()
         );
@@ -55,24 +70,34 @@ class CreditCardPaymentStrategy implements PaymentStrategy {
 
 class PixPaymentStrategy implements PaymentStrategy {
     private String pixKey;
+    // Segmentos estáticos do BR Code (chave, recebedor) montados uma vez por chave
+    private final PixBrCodeTemplate brCodeTemplate;
     
     public PixPaymentStrategy(String pixKey) {
+        this(pixKey, "LOJA EXEMPLO", "SAO PAULO");
+    }
+    
+    public PixPaymentStrategy(String pixKey, String merchantName, String merchantCity) {
         this.pixKey = pixKey;
+        this.brCodeTemplate = PixBrCodeTemplate.forKey(pixKey, merchantName, merchantCity);
     }
     
     @Override
     public PaymentResult processPayment(BigDecimal amount) {
-        System.out.println("Processing PIX payment...");
-        System.out.println("PIX Key: " + pixKey);
-        System.out.println("Amount: R$ " + amount);
+        TransactionId transactionId = TransactionIdGenerator.shared().next("PIX");
+        long amountCents = Money.toCents(amount);
+        PaymentEvents.sink().publish(PaymentEventType.PAYMENT_REQUESTED,
+            amountCents, transactionId.getValue(), pixKey);
         
-        // Gerar QR Code (simulado)
-        String qrCode = "00020126580014BR.GOV.BCB.PIX0136" + pixKey;
-        System.out.println("QR Code: " + qrCode);
+        // Gerar QR Code (BR Code com valor, txid e CRC16); o texto só é montado
+        // pela thread drenadora, num buffer reutilizado, fora do caminho do pagamento
+        PixBrCodeTemplate.Payload qrCode = brCodeTemplate.payload(amountCents, transactionId.getValue());
+        PaymentEvents.sink().publish(PaymentEventType.PAYMENT_ARTIFACT,
+            amountCents, transactionId.getValue(), qrCode);
         
         return new PaymentResult(
             true,
-            "PIX-" + System.currentTimeMillis(),
+            transactionId,
             "Pagamento PIX processado",
             LocalDateTime.now()
         );
@@ -95,13 +120,13 @@ class PayPalPaymentStrategy implements PaymentStrategy {
     
     @Override
     public PaymentResult processPayment(BigDecimal amount) {
-        System.out.println("Processing PayPal payment...");
-        System.out.println("PayPal account: " + email);
-        System.out.println("Amount: $ " + amount);
+        TransactionId transactionId = TransactionIdGenerator.shared().next("PP");
+        PaymentEvents.sink().publish(PaymentEventType.PAYMENT_REQUESTED,
+            Money.toCents(amount), transactionId.getValue(), email);
         
         return new PaymentResult(
             true,
-            "PP-" + System.currentTimeMillis(),
+            transactionId,
             "PayPal payment approved",
             LocalDateTime.now()
         );
@@ -114,25 +139,50 @@ class PayPalPaymentStrategy implements PaymentStrategy {
 }
 
 class BoletoPaymentStrategy implements PaymentStrategy {
+    // Padrão das demonstrações e benchmarks: sequência em memória, que recomeça a cada execução.
+    // Em produção, injete um gerador com FileNossoNumeroSequence (ou informe o arquivo com
+    // -Dboleto.nossoNumero.file) para o nosso número continuar entre execuções
+    private static final BoletoGenerator DEFAULT_GENERATOR = new BoletoGenerator(341, 109, 1234, 5678901L,
+        defaultSequence());
+    
+    private static NossoNumeroSequence defaultSequence() {
+        String file = System.getProperty("boleto.nossoNumero.file");
+        return file == null
+            ? NossoNumeroSequence.startingAfter(0)
+            : new FileNossoNumeroSequence(Path.of(file), 1_000);
+    }
+    
     private String cpf;
+    private final BoletoGenerator generator;
     
     public BoletoPaymentStrategy(String cpf) {
+        this(cpf, DEFAULT_GENERATOR);
+    }
+    
+    public BoletoPaymentStrategy(String cpf, BoletoGenerator generator) {
         this.cpf = cpf;
+        this.generator = generator;
     }
     
     @Override
     public PaymentResult processPayment(BigDecimal amount) {
-        System.out.println("Generating Boleto...");
-        System.out.println("CPF: " + cpf);
-        System.out.println("Amount: R$ " + amount);
+        TransactionId transactionId = TransactionIdGenerator.shared().next("BOL");
+        long amountCents = Money.toCents(amount);
+        PaymentEvents.sink().publish(PaymentEventType.PAYMENT_REQUESTED,
+            amountCents, transactionId.getValue(), cpf);
         
-        String boletoCode = "34191.79001 01043.510047 91020.150008 1 84380000010000";
-        System.out.println("Código de barras: " + boletoCode);
-        System.out.println("Vencimento: 3 dias úteis");
+        // Vencimento: 3 dias úteis
+        int dueFactor = BoletoGenerator.dueFactor(BoletoGenerator.addBusinessDays(LocalDate.now(), 3));
+        byte[] barcode = new byte[BoletoGenerator.BARCODE_DIGITS];
+        byte[] line = new byte[BoletoGenerator.LINE_DIGITS];
+        generator.generate(generator.nextNossoNumero(), amountCents, dueFactor, barcode, line);
+        String boletoCode = BoletoGenerator.formatLine(line);
+        PaymentEvents.sink().publish(PaymentEventType.PAYMENT_ARTIFACT,
+            amountCents, transactionId.getValue(), boletoCode);
         
         return new PaymentResult(
             true,
-            "BOL-" + System.currentTimeMillis(),
+            transactionId,
             "Boleto gerado com sucesso",
             LocalDateTime.now()
         );
@@ -147,11 +197,11 @@ class BoletoPaymentStrategy implements PaymentStrategy {
 // Resultado do pagamento
 class PaymentResult {
     private boolean success;
-    private String transactionId;
+    private TransactionId transactionId;
     private String message;
     private LocalDateTime timestamp;
     
-    public PaymentResult(boolean success, String transactionId, 
+    public PaymentResult(boolean success, TransactionId transactionId, 
                         String message, LocalDateTime timestamp) {
         this.success = success;
         this.transactionId = transactionId;
@@ -161,29 +211,142 @@ class PaymentResult {
     
     // Getters
     public boolean isSuccess() { return success; }
-    public String getTransactionId() { return transactionId; }
+    public String getTransactionId() { return transactionId.toString(); }
+    public long getTransactionIdValue() { return transactionId.getValue(); }
     public String getMessage() { return message; }
     public LocalDateTime getTimestamp() { return timestamp; }
 }
 
+// Linha do carrinho: imutável, valores em centavos
+class CartLine {
+    private final long unitPriceCents;
+    private final int quantity;
+    
+    public CartLine(long unitPriceCents, int quantity) {
+        this.unitPriceCents = unitPriceCents;
+        this.quantity = quantity;
+    }
+    
+    public long getUnitPriceCents() { return unitPriceCents; }
+    public int getQuantity() { return quantity; }
+    public long getSubtotalCents() { return Math.multiplyExact(unitPriceCents, (long) quantity); }
+    
+    // Por valor: o checkout remove a linha se ela ainda é igual à que foi cobrada
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof CartLine line
+            && line.unitPriceCents == unitPriceCents && line.quantity == quantity;
+    }
+    
+    @Override
+    public int hashCode() {
+        return Long.hashCode(unitPriceCents) * 31 + quantity;
+    }
+}
+
 // Context - Carrinho de compras
+// Os valores ficam em centavos (long) e o total é mantido incrementalmente:
+// cada alteração aplica só a diferença da linha, então getTotal() é O(1).
+// BigDecimal aparece apenas na borda da API.
 class ShoppingCart {
-    private Map<String, BigDecimal> items = new HashMap<>();
-    private PaymentStrategy paymentStrategy;
+    // compute() do ConcurrentHashMap serializa alterações na mesma linha
+    // sem bloquear linhas diferentes
+    private final ConcurrentHashMap<String, CartLine> items = new ConcurrentHashMap<>();
+    private final AtomicLong totalCents = new AtomicLong();
+    private volatile PaymentStrategy paymentStrategy;
     
+    // Adicionar um item já existente soma a quantidade e atualiza o preço unitário
     public void addItem(String item, BigDecimal price) {
-        items.put(item, price);
-        System.out.println("Item adicionado: " + item + " - R$ " + price);
+        addItem(item, price, 1);
+    }
+    
+    public void addItem(String item, BigDecimal price, int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantidade deve ser positiva");
+        }
+        long priceCents = Money.toCents(price);
+        items.compute(item, (key, line) -> {
+            int newQuantity = line == null ? quantity : Math.addExact(line.getQuantity(), quantity);
+            return replaceLine(line, new CartLine(priceCents, newQuantity));
+        });
+        PaymentEvents.sink().publish(PaymentEventType.ITEM_ADDED, priceCents, quantity, item);
+    }
+    
+    // Define a quantidade absoluta; zero remove a linha
+    public void updateQuantity(String item, int quantity) {
+        if (quantity < 0) {
+            throw new IllegalArgumentException("Quantidade não pode ser negativa");
+        }
+        items.computeIfPresent(item, (key, line) ->
+            replaceLine(line, quantity == 0 ? null : new CartLine(line.getUnitPriceCents(), quantity)));
+    }
+    
+    // Reprecificação: troca só o preço unitário, mantendo a quantidade
+    public void updatePrice(String item, BigDecimal price) {
+        long priceCents = Money.toCents(price);
+        items.computeIfPresent(item, (key, line) ->
+            replaceLine(line, new CartLine(priceCents, line.getQuantity())));
     }
     
     public void removeItem(String item) {
-        items.remove(item);
-        System.out.println("Item removido: " + item);
+        items.computeIfPresent(item, (key, line) -> replaceLine(line, null));
+        PaymentEvents.sink().publish(PaymentEventType.ITEM_REMOVED, 0, 0, item);
+    }
+    
+    public int getQuantity(String item) {
+        CartLine line = items.get(item);
+        return line == null ? 0 : line.getQuantity();
+    }
+    
+    public int getLineCount() {
+        return items.size();
+    }
+    
+    public long getTotalCents() {
+        return totalCents.get();
     }
     
     public BigDecimal getTotal() {
-        return items.values().stream()
-            .reduce(BigDecimal.ZERO, BigDecimal::add);
+        return Money.fromCents(totalCents.get());
+    }
+    
+    // Remove as linhas uma a uma, descontando cada subtotal do total corrente
+    public void clear() {
+        for (String item : items.keySet()) {
+            items.computeIfPresent(item, (key, line) -> replaceLine(line, null));
+        }
+    }
+    
+    // Linhas capturadas para um checkout; o valor cobrado é a soma delas, não o total
+    // corrente, que pode mudar enquanto o pagamento está em andamento
+    private Map<String, CartLine> snapshot() {
+        return new HashMap<>(items);
+    }
+    
+    private static long totalOf(Map<String, CartLine> lines) {
+        long total = 0;
+        for (CartLine line : lines.values()) {
+            total = Math.addExact(total, line.getSubtotalCents());
+        }
+        return total;
+    }
+    
+    // Depois do pagamento: remove só as linhas cobradas que não mudaram desde a captura.
+    // Linhas adicionadas ou alteradas durante o pagamento ficam no carrinho.
+    private void removeCharged(Map<String, CartLine> charged) {
+        charged.forEach((item, chargedLine) ->
+            items.computeIfPresent(item, (key, line) ->
+                line.equals(chargedLine) ? replaceLine(line, null) : line));
+    }
+    
+    // Chamado dentro do compute(): aplica ao total apenas a diferença da linha
+    private CartLine replaceLine(CartLine oldLine, CartLine newLine) {
+        long oldCents = oldLine == null ? 0 : oldLine.getSubtotalCents();
+        long newCents = newLine == null ? 0 : newLine.getSubtotalCents();
+        if (oldCents != newCents) {
+            totalCents.addAndGet(Math.subtractExact(newCents, oldCents));
+        }
+        return newLine;
     }
     
     public void setPaymentStrategy(PaymentStrategy paymentStrategy) {
@@ -194,21 +357,91 @@ class ShoppingCart {
         if (paymentStrategy == null) {
             throw new IllegalStateException("Payment method not selected");
         }
-        
-        BigDecimal total = getTotal();
-        System.out.println("\n=== CHECKOUT ===");
-        System.out.println("Total: R$ " + total);
-        System.out.println("Método de pagamento: " + paymentStrategy.getPaymentMethodName());
-        System.out.println("================\n");
+        return checkout(paymentStrategy);
+    }
+    
+    // Checkout idempotente: repetir a mesma chave devolve o resultado já obtido
+    // (ou aguarda a cobrança em andamento) sem cobrar de novo
+    // O carrinho e o total identificam a requisição: a mesma chave com outro carrinho
+    // ou outro valor é rejeitada
+    public PaymentResult checkout(String idempotencyKey, IdempotentPaymentCache cache) {
+        return cache.executeSync(idempotencyKey, this, totalCents.get(), this::checkout);
+    }
+    
+    public CompletableFuture<PaymentResult> checkoutAsync(String idempotencyKey, IdempotentPaymentCache cache) {
+        return checkoutAsync(idempotencyKey, cache, AsyncCheckoutExecutor.shared());
+    }
+    
+    // O cache guarda a cobrança real, não a cópia com timeout: estourar o prazo não tira a
+    // chave do cache, e a retentativa aguarda a mesma cobrança em vez de disparar outra
+    public CompletableFuture<PaymentResult> checkoutAsync(String idempotencyKey, IdempotentPaymentCache cache,
+                                                          AsyncCheckoutExecutor executor) {
+        PaymentStrategy strategy = selectedStrategy();
+        return executor.withTimeout(strategy, cache.execute(idempotencyKey, this, totalCents.get(),
+            () -> startCheckout(strategy, executor)));
+    }
+    
+    // Checkout roteado: o registro escolhe a estratégia pelo total e pela saúde dos provedores
+    public PaymentResult checkout(PaymentStrategyRegistry registry, String preferredMethod) {
+        Map<String, CartLine> lines = snapshot();
+        return checkout(registry.route(totalOf(lines), preferredMethod), lines);
+    }
+    
+    private PaymentResult checkout(PaymentStrategy paymentStrategy) {
+        return checkout(paymentStrategy, snapshot());
+    }
+    
+    private PaymentResult checkout(PaymentStrategy paymentStrategy, Map<String, CartLine> lines) {
+        long totalCents = totalOf(lines);
+        BigDecimal total = Money.fromCents(totalCents);
+        PaymentEvents.sink().publish(PaymentEventType.CHECKOUT_STARTED,
+            totalCents, 0, paymentStrategy.getPaymentMethodName());
         
         PaymentResult result = paymentStrategy.processPayment(total);
         
         if (result.isSuccess()) {
-            items.clear(); // Limpar carrinho após pagamento
+            removeCharged(lines); // Limpar do carrinho o que foi pago
         }
         
         return result;
     }
+    
+    public CompletableFuture<PaymentResult> checkoutAsync() {
+        return checkoutAsync(AsyncCheckoutExecutor.shared());
+    }
+    
+    // Checkout não bloqueante: a thread chamadora só calcula o total e recebe o future.
+    // O future falha com TimeoutException no prazo da estratégia, mas a cobrança continua:
+    // se ela for aprovada depois, as linhas pagas saem do carrinho do mesmo jeito
+    public CompletableFuture<PaymentResult> checkoutAsync(AsyncCheckoutExecutor executor) {
+        PaymentStrategy strategy = selectedStrategy();
+        return executor.withTimeout(strategy, startCheckout(strategy, executor));
+    }
+    
+    private PaymentStrategy selectedStrategy() {
+        PaymentStrategy strategy = paymentStrategy;
+        if (strategy == null) {
+            throw new IllegalStateException("Payment method not selected");
+        }
+        return strategy;
+    }
+    
+    // Future da cobrança real, sem timeout: a limpeza do carrinho depende do resultado dela
+    private CompletableFuture<PaymentResult> startCheckout(PaymentStrategy strategy, AsyncCheckoutExecutor executor) {
+        Map<String, CartLine> lines = snapshot();
+        long totalCents = totalOf(lines);
+        BigDecimal total = Money.fromCents(totalCents);
+        PaymentEvents.sink().publish(PaymentEventType.CHECKOUT_STARTED,
+            totalCents, 0, strategy.getPaymentMethodName());
+        
+        return executor.start(strategy, total)
+            .thenApply(result -> {
+                if (result.isSuccess()) {
+                    removeCharged(lines); // Limpar do carrinho o que foi pago
+                }
+                return result;
+            });
+    }
 }
 
 // Demonstração
@@ -261,5 +494,42 @@ class PaymentStrategyDemo {
         ));
         PaymentResult result4 = cart4.checkout();
         System.out.println("Resultado: " + result4.getMessage());
+        
+        // Novo carrinho
+        ShoppingCart cart5 = new ShoppingCart();
+        cart5.addItem("Headset", new BigDecimal("350.00"));
+        
+        System.out.println("\n--- Opção 5: Checkout assíncrono com PIX ---");
+        cart5.setPaymentStrategy(new PixPaymentStrategy("gabriel@example.com"));
+        PaymentResult result5 = cart5.checkoutAsync().join();
+        System.out.println("Resultado: " + result5.getMessage());
+        
+        // Registro com uma instância por método, roteado por faixa de valor
+        PaymentStrategyRegistry registry = new PaymentStrategyRegistry();
+        registry.register(new PixPaymentStrategy("loja@example.com"));
+        registry.register(new BoletoPaymentStrategy("12.345.678/0001-90"),
+            RoutingRule.between(new BigDecimal("100.00"), new BigDecimal("50000.00")));
+        
+        ShoppingCart cart6 = new ShoppingCart();
+        cart6.addItem("Cadeira de escritório", new BigDecimal("900.00"));
+        
+        System.out.println("\n--- Opção 6: Checkout roteado pelo registro ---");
+        PaymentResult result6 = cart6.checkout(registry, "Boleto Bancário");
+        System.out.println("Resultado: " + result6.getMessage());
+        
+        // Retentativa com a mesma chave: não gera segunda cobrança
+        IdempotentPaymentCache idempotency = new IdempotentPaymentCache(10_000, Duration.ofMinutes(10));
+        ShoppingCart cart7 = new ShoppingCart();
+        cart7.addItem("Webcam", new BigDecimal("250.00"));
+        cart7.setPaymentStrategy(new PixPaymentStrategy("gabriel@example.com"));
+        
+        System.out.println("\n--- Opção 7: Checkout idempotente ---");
+        PaymentResult first = cart7.checkout("pedido-7", idempotency);
+        PaymentResult retry = cart7.checkout("pedido-7", idempotency);
+        System.out.println("Mesma transação na retentativa: "
+            + first.getTransactionId().equals(retry.getTransactionId()));
+        
+        // Drena os eventos pendentes antes de encerrar
+        PaymentEvents.shutdown();
     }
 }
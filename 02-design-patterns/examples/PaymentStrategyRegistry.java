@@ -0,0 +1,294 @@
+package examples.patterns.strategy;
+
+/**
+ * Registro de estratégias com roteamento adaptativo
+ * Cenário: uma instância por método de pagamento, escolhida a cada checkout
+ * por faixa de valor, preferência do cliente e saúde medida do provedor
+ */
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Regra estática de elegibilidade: faixa de valor aceita pelo método
+class RoutingRule {
+    private final long minAmountCents;
+    private final long maxAmountCents;
+
+    public RoutingRule(long minAmountCents, long maxAmountCents) {
+        if (minAmountCents > maxAmountCents) {
+            throw new IllegalArgumentException("Faixa de valor inválida");
+        }
+        this.minAmountCents = minAmountCents;
+        this.maxAmountCents = maxAmountCents;
+    }
+
+    public static RoutingRule any() {
+        return new RoutingRule(0, Long.MAX_VALUE);
+    }
+
+    public static RoutingRule between(BigDecimal min, BigDecimal max) {
+        return new RoutingRule(Money.toCents(min), Money.toCents(max));
+    }
+
+    public boolean accepts(long amountCents) {
+        return amountCents >= minAmountCents && amountCents <= maxAmountCents;
+    }
+}
+
+// Métricas por estratégia em contadores lock-free.
+// A janela móvel é dividida em WINDOWS fatias; cada fatia guarda um histograma
+// de latência em buckets de potência de 2 (microssegundos) e a contagem de erros.
+class StrategyHealth {
+    static final int WINDOWS = 6;
+    static final int BUCKETS = 40;
+    // Colunas de cada fatia: BUCKETS de latência + total + erros
+    private static final int STRIDE = BUCKETS + 2;
+    private static final int TOTAL = BUCKETS;
+    private static final int ERRORS = BUCKETS + 1;
+    private static final long REFRESH_NANOS = 100_000_000L; // recalcula no máximo a cada 100ms
+
+    private final long sliceNanos;
+    private final AtomicLongArray counters = new AtomicLongArray(WINDOWS * STRIDE);
+    private final AtomicLongArray sliceEpochs = new AtomicLongArray(WINDOWS);
+    private final AtomicLong lastRefresh = new AtomicLong(System.nanoTime() - REFRESH_NANOS);
+
+    // Snapshot usado pelo roteador; atualizado por quem ganhar o CAS de lastRefresh
+    private volatile long p99Micros;
+    private volatile double errorRate;
+    private volatile long samples;
+
+    public StrategyHealth(long windowMillis) {
+        this.sliceNanos = Math.max(1, windowMillis * 1_000_000L / WINDOWS);
+        for (int w = 0; w < WINDOWS; w++) {
+            sliceEpochs.set(w, Long.MIN_VALUE);
+        }
+    }
+
+    public void record(long latencyNanos, boolean success) {
+        long now = System.nanoTime();
+        int base = slice(Math.floorDiv(now, sliceNanos)) * STRIDE;
+        counters.incrementAndGet(base + bucketOf(latencyNanos / 1_000));
+        counters.incrementAndGet(base + TOTAL);
+        if (!success) {
+            counters.incrementAndGet(base + ERRORS);
+        }
+    }
+
+    public long getP99Micros() {
+        refreshIfStale();
+        return p99Micros;
+    }
+
+    public double getErrorRate() {
+        refreshIfStale();
+        return errorRate;
+    }
+
+    public long getSamples() {
+        refreshIfStale();
+        return samples;
+    }
+
+    // Garante que a fatia da época atual está zerada antes de ser usada.
+    // Incrementos concorrentes com a limpeza podem se perder; para métrica de saúde isso é aceitável.
+    private int slice(long epoch) {
+        int index = (int) Math.floorMod(epoch, (long) WINDOWS);
+        long current = sliceEpochs.get(index);
+        if (current != epoch && sliceEpochs.compareAndSet(index, current, epoch)) {
+            int base = index * STRIDE;
+            for (int i = 0; i < STRIDE; i++) {
+                counters.set(base + i, 0);
+            }
+        }
+        return index;
+    }
+
+    private void refreshIfStale() {
+        long now = System.nanoTime();
+        long last = lastRefresh.get();
+        if (now - last < REFRESH_NANOS || !lastRefresh.compareAndSet(last, now)) {
+            return;
+        }
+        long epoch = Math.floorDiv(now, sliceNanos);
+        long total = 0;
+        long errors = 0;
+        for (int w = 0; w < WINDOWS; w++) {
+            if (sliceEpochs.get(w) > epoch - WINDOWS) {
+                total += counters.get(w * STRIDE + TOTAL);
+                errors += counters.get(w * STRIDE + ERRORS);
+            }
+        }
+        long p99 = 0;
+        if (total > 0) {
+            long target = total - total / 100;
+            long seen = 0;
+            for (int b = 0; b < BUCKETS && p99 == 0; b++) {
+                for (int w = 0; w < WINDOWS; w++) {
+                    if (sliceEpochs.get(w) > epoch - WINDOWS) {
+                        seen += counters.get(w * STRIDE + b);
+                    }
+                }
+                if (seen >= target) {
+                    p99 = 1L << b; // limite superior do bucket
+                }
+            }
+        }
+        samples = total;
+        errorRate = total == 0 ? 0.0 : (double) errors / total;
+        p99Micros = p99;
+    }
+
+    private static int bucketOf(long micros) {
+        int bucket = 64 - Long.numberOfLeadingZeros(Math.max(micros, 1));
+        return Math.min(bucket, BUCKETS - 1);
+    }
+}
+
+class PaymentStrategyRegistry {
+    // Limites de degradação: acima deles o provedor só é usado se não houver alternativa
+    private final long maxP99Micros;
+    private final double maxErrorRate;
+    private final long minSamples;
+    private final long windowMillis;
+
+    // Copy-on-write: registros são raros, o roteamento só lê o array volatile
+    private volatile Entry[] entries = new Entry[0];
+    private volatile Map<String, Entry> byName = new HashMap<>();
+
+    public PaymentStrategyRegistry(long maxP99Millis, double maxErrorRate,
+                                   long minSamples, long windowMillis) {
+        this.maxP99Micros = maxP99Millis * 1_000;
+        this.maxErrorRate = maxErrorRate;
+        this.minSamples = minSamples;
+        this.windowMillis = windowMillis;
+    }
+
+    public PaymentStrategyRegistry() {
+        this(2_000, 0.05, 20, 60_000);
+    }
+
+    // A ordem de registro define a prioridade quando o cliente não tem preferência
+    public synchronized void register(PaymentStrategy strategy, RoutingRule rule) {
+        String name = strategy.getPaymentMethodName();
+        if (byName.containsKey(name)) {
+            throw new IllegalArgumentException("Método já registrado: " + name);
+        }
+        Entry entry = new Entry(strategy, rule, new StrategyHealth(windowMillis));
+        Entry[] updated = Arrays.copyOf(entries, entries.length + 1);
+        updated[updated.length - 1] = entry;
+        Map<String, Entry> updatedByName = new HashMap<>(byName);
+        updatedByName.put(name, entry);
+        byName = updatedByName;
+        entries = updated;
+    }
+
+    public void register(PaymentStrategy strategy) {
+        register(strategy, RoutingRule.any());
+    }
+
+    // Instância em cache (instrumentada) para o método, ou null
+    public PaymentStrategy get(String paymentMethodName) {
+        Entry entry = byName.get(paymentMethodName);
+        return entry == null ? null : entry.instrumented;
+    }
+
+    public StrategyHealth getHealth(String paymentMethodName) {
+        Entry entry = byName.get(paymentMethodName);
+        return entry == null ? null : entry.health;
+    }
+
+    public PaymentStrategy route(BigDecimal amount, String preferredMethod) {
+        return route(Money.toCents(amount), preferredMethod);
+    }
+
+    // Sem alocação: percorre o array de entradas e lê snapshots já calculados.
+    // 1) preferido, se elegível e saudável; 2) primeiro elegível saudável;
+    // 3) se todos estiverem degradados, o elegível com menor taxa de erro.
+    public PaymentStrategy route(long amountCents, String preferredMethod) {
+        if (preferredMethod != null) {
+            Entry preferred = byName.get(preferredMethod);
+            if (preferred != null && preferred.rule.accepts(amountCents) && isHealthy(preferred)) {
+                return preferred.instrumented;
+            }
+        }
+
+        Entry[] snapshot = entries;
+        Entry fallback = null;
+        for (Entry entry : snapshot) {
+            if (!entry.rule.accepts(amountCents)) {
+                continue;
+            }
+            if (isHealthy(entry)) {
+                return entry.instrumented;
+            }
+            if (fallback == null || entry.health.getErrorRate() < fallback.health.getErrorRate()) {
+                fallback = entry;
+            }
+        }
+        if (fallback == null) {
+            throw new IllegalStateException("Nenhum método de pagamento aceita o valor informado");
+        }
+        return fallback.instrumented;
+    }
+
+    private boolean isHealthy(Entry entry) {
+        StrategyHealth health = entry.health;
+        if (health.getSamples() < minSamples) {
+            return true; // poucas amostras: ainda não dá para julgar
+        }
+        return health.getErrorRate() <= maxErrorRate && health.getP99Micros() <= maxP99Micros;
+    }
+
+    private static final class Entry {
+        final RoutingRule rule;
+        final StrategyHealth health;
+        final PaymentStrategy instrumented;
+
+        Entry(PaymentStrategy strategy, RoutingRule rule, StrategyHealth health) {
+            this.rule = rule;
+            this.health = health;
+            this.instrumented = new InstrumentedPaymentStrategy(strategy, health);
+        }
+    }
+}
+
+// Decorator que alimenta as métricas de saúde a cada pagamento
+class InstrumentedPaymentStrategy implements PaymentStrategy {
+    private final PaymentStrategy delegate;
+    private final StrategyHealth health;
+
+    public InstrumentedPaymentStrategy(PaymentStrategy delegate, StrategyHealth health) {
+        this.delegate = delegate;
+        this.health = health;
+    }
+
+    @Override
+    public PaymentResult processPayment(BigDecimal amount) {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            PaymentResult result = delegate.processPayment(amount);
+            success = result.isSuccess();
+            return result;
+        } finally {
+            health.record(System.nanoTime() - start, success);
+        }
+    }
+
+    @Override
+    public CompletableFuture<PaymentResult> processPaymentAsync(BigDecimal amount) {
+        long start = System.nanoTime();
+        return delegate.processPaymentAsync(amount).whenComplete((result, error) ->
+            health.record(System.nanoTime() - start, error == null && result.isSuccess()));
+    }
+
+    @Override
+    public String getPaymentMethodName() {
+        return delegate.getPaymentMethodName();
+    }
+}
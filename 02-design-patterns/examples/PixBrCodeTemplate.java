@@ -0,0 +1,236 @@
+package examples.patterns.strategy;
+
+/**
+ * Gerador de payload PIX (BR Code, padrão EMV MPM)
+ * Cenário: QR Codes válidos em alto volume, escritos direto num byte[] reutilizável
+ *
+ * Estrutura (ID + tamanho com 2 dígitos + valor, IDs em ordem crescente):
+ *   00 formato | 26 conta (GUI + chave) | 52 MCC | 53 moeda |
+ *   54 valor   | 58 país | 59 nome | 60 cidade | 62 txid | 63 CRC16
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+
+class PixBrCodeTemplate {
+    // Maior payload possível: segmentos estáticos limitados pelo TLV + valor + txid + CRC
+    static final int MAX_PAYLOAD_BYTES = 512;
+    // Campo 54 ("reais.centavos") tem no máximo 13 caracteres: até 9.999.999.999,99
+    static final int MAX_AMOUNT_LENGTH = 13;
+
+    private static final ConcurrentHashMap<String, PixBrCodeTemplate> CACHE = new ConcurrentHashMap<>();
+    // Buffer de trabalho de toPayload; quem formata é a thread drenadora de eventos, sempre a mesma
+    private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[MAX_PAYLOAD_BYTES]);
+
+    private static final int[] CRC_TABLE = new int[256];
+
+    static {
+        // CRC16-CCITT (polinômio 0x1021, valor inicial 0xFFFF), exigido pelo BR Code
+        for (int i = 0; i < 256; i++) {
+            int crc = i << 8;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+            }
+            CRC_TABLE[i] = crc & 0xFFFF;
+        }
+    }
+
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NO_TXID = "***".getBytes(StandardCharsets.US_ASCII);
+
+    // IDs 00..53: não dependem do pagamento
+    private final byte[] prefix;
+    // CRC já acumulado sobre o prefixo: cada payload continua a partir daqui
+    private final int prefixCrc;
+    // IDs 58..60
+    private final byte[] merchantSegment;
+
+    private PixBrCodeTemplate(String pixKey, String merchantName, String merchantCity) {
+        byte[] key = ascii(pixKey, 77, "Chave PIX");
+        byte[] name = ascii(merchantName, 25, "Nome do recebedor");
+        byte[] city = ascii(merchantCity, 15, "Cidade do recebedor");
+
+        byte[] gui = "br.gov.bcb.pix".getBytes(StandardCharsets.US_ASCII);
+        int accountLength = 4 + gui.length + 4 + key.length;
+
+        ByteWriter w = new ByteWriter(MAX_PAYLOAD_BYTES);
+        w.field(0, "01".getBytes(StandardCharsets.US_ASCII));
+        w.header(26, accountLength);
+        w.field(0, gui);
+        w.field(1, key);
+        w.field(52, "0000".getBytes(StandardCharsets.US_ASCII));
+        w.field(53, "986".getBytes(StandardCharsets.US_ASCII));
+        this.prefix = w.toArray();
+        this.prefixCrc = crc16(0xFFFF, prefix, 0, prefix.length);
+
+        w = new ByteWriter(MAX_PAYLOAD_BYTES);
+        w.field(58, "BR".getBytes(StandardCharsets.US_ASCII));
+        w.field(59, name);
+        w.field(60, city);
+        this.merchantSegment = w.toArray();
+    }
+
+    // Um template por (chave, nome, cidade), montado uma única vez
+    public static PixBrCodeTemplate forKey(String pixKey, String merchantName, String merchantCity) {
+        String cacheKey = pixKey + '\u0000' + merchantName + '\u0000' + merchantCity;
+        return CACHE.computeIfAbsent(cacheKey, k -> new PixBrCodeTemplate(pixKey, merchantName, merchantCity));
+    }
+
+    // Escreve o payload completo em out a partir de offset e devolve o tamanho.
+    // amountCents <= 0 omite o campo 54 (valor livre); txid 0 vira "***".
+    // Valor acima de 13 caracteres no campo 54 é IllegalArgumentException.
+    public int write(long amountCents, long txid, byte[] out, int offset) {
+        checkAmount(amountCents);
+        int pos = offset;
+        System.arraycopy(prefix, 0, out, pos, prefix.length);
+        pos += prefix.length;
+
+        if (amountCents > 0) {
+            // "reais.centavos" sem zeros à esquerda; o tamanho é conhecido antes de escrever
+            long reais = amountCents / 100;
+            int reaisDigits = digits(reais);
+            pos = writeHeader(out, pos, 54, reaisDigits + 3);
+            pos = writeDigits(out, pos, reais, reaisDigits);
+            out[pos++] = '.';
+            pos = writeDigits(out, pos, amountCents % 100, 2);
+        }
+
+        System.arraycopy(merchantSegment, 0, out, pos, merchantSegment.length);
+        pos += merchantSegment.length;
+
+        int txidLength = txid == 0 ? NO_TXID.length : digits(txid);
+        pos = writeHeader(out, pos, 62, 4 + txidLength);
+        pos = writeHeader(out, pos, 5, txidLength);
+        if (txid == 0) {
+            System.arraycopy(NO_TXID, 0, out, pos, NO_TXID.length);
+            pos += NO_TXID.length;
+        } else {
+            pos = writeDigits(out, pos, txid, txidLength);
+        }
+
+        // O CRC cobre tudo até "6304", inclusive
+        pos = writeHeader(out, pos, 63, 4);
+        int crc = crc16(prefixCrc, out, offset + prefix.length, pos - offset - prefix.length);
+        out[pos++] = HEX[(crc >>> 12) & 0xF];
+        out[pos++] = HEX[(crc >>> 8) & 0xF];
+        out[pos++] = HEX[(crc >>> 4) & 0xF];
+        out[pos++] = HEX[crc & 0xF];
+        return pos - offset;
+    }
+
+    // Conveniência para quem precisa da String (o "copia e cola")
+    public String toPayload(long amountCents, long txid) {
+        byte[] buffer = SCRATCH.get();
+        int length = write(amountCents, txid, buffer, 0);
+        return new String(buffer, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    // Payload ainda não formatado, para o caminho do pagamento: só guarda os dois valores
+    // e gera o texto quando alguém chama toString (a thread drenadora, ao gravar o evento)
+    // O valor é conferido aqui, no caminho do pagamento, e não só ao formatar
+    public Payload payload(long amountCents, long txid) {
+        checkAmount(amountCents);
+        return new Payload(this, amountCents, txid);
+    }
+
+    private static void checkAmount(long amountCents) {
+        if (amountCents > 0 && digits(amountCents / 100) + 3 > MAX_AMOUNT_LENGTH) {
+            throw new IllegalArgumentException("Valor excede " + MAX_AMOUNT_LENGTH
+                + " caracteres no BR Code: " + amountCents + " centavos");
+        }
+    }
+
+    static final class Payload {
+        private final PixBrCodeTemplate template;
+        private final long amountCents;
+        private final long txid;
+
+        private Payload(PixBrCodeTemplate template, long amountCents, long txid) {
+            this.template = template;
+            this.amountCents = amountCents;
+            this.txid = txid;
+        }
+
+        public int write(byte[] out, int offset) {
+            return template.write(amountCents, txid, out, offset);
+        }
+
+        @Override
+        public String toString() {
+            return template.toPayload(amountCents, txid);
+        }
+    }
+
+    static int crc16(int crc, byte[] data, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            crc = ((crc << 8) ^ CRC_TABLE[((crc >>> 8) ^ data[i]) & 0xFF]) & 0xFFFF;
+        }
+        return crc;
+    }
+
+    private static int writeHeader(byte[] out, int pos, int id, int length) {
+        out[pos++] = (byte) ('0' + id / 10);
+        out[pos++] = (byte) ('0' + id % 10);
+        out[pos++] = (byte) ('0' + length / 10);
+        out[pos++] = (byte) ('0' + length % 10);
+        return pos;
+    }
+
+    private static int writeDigits(byte[] out, int pos, long value, int count) {
+        for (int i = pos + count - 1; i >= pos; i--) {
+            out[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return pos + count;
+    }
+
+    private static int digits(long value) {
+        int count = 1;
+        while (value >= 10) {
+            value /= 10;
+            count++;
+        }
+        return count;
+    }
+
+    private static byte[] ascii(String value, int maxLength, String field) {
+        if (value == null || value.isEmpty() || value.length() > maxLength) {
+            throw new IllegalArgumentException(field + " deve ter entre 1 e " + maxLength + " caracteres");
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > 0x7E || value.charAt(i) < 0x20) {
+                throw new IllegalArgumentException(field + " deve conter apenas ASCII imprimível");
+            }
+        }
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // Usado só na montagem do template
+    private static final class ByteWriter {
+        private final byte[] buffer;
+        private int pos;
+
+        ByteWriter(int capacity) {
+            this.buffer = new byte[capacity];
+        }
+
+        void header(int id, int length) {
+            if (length > 99) {
+                throw new IllegalArgumentException("Campo " + id + " excede 99 bytes");
+            }
+            pos = writeHeader(buffer, pos, id, length);
+        }
+
+        void field(int id, byte[] value) {
+            header(id, value.length);
+            System.arraycopy(value, 0, buffer, pos, value.length);
+            pos += value.length;
+        }
+
+        byte[] toArray() {
+            byte[] result = new byte[pos];
+            System.arraycopy(buffer, 0, result, 0, pos);
+            return result;
+        }
+    }
+}
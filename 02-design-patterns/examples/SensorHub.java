@@ -0,0 +1,510 @@
+package examples.patterns.observer;
+
+/**
+ * Hub de sensores com histórico fora do heap
+ * Cenário: centenas de milhares de sensores, mais de 1 milhão de leituras por segundo,
+ * com janelas deslizantes e consultas por intervalo sem pressão no GC
+ */
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+// Recebe cada leitura de uma consulta por intervalo, direto do buffer, sem cópia
+interface SampleConsumer {
+    void accept(long timestampMillis, double value);
+}
+
+// Agregado de uma janela; mutável para ser reaproveitado entre consultas
+class WindowStats {
+    long count;
+    double min;
+    double max;
+    double sum;
+
+    void reset() {
+        count = 0;
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+        sum = 0;
+    }
+
+    public long getCount() { return count; }
+    public double getMin() { return count == 0 ? Double.NaN : min; }
+    public double getMax() { return count == 0 ? Double.NaN : max; }
+    public double getAverage() { return count == 0 ? Double.NaN : sum / count; }
+
+    @Override
+    public String toString() {
+        return String.format("%d leituras, mín %.2f, média %.2f, máx %.2f", count, getMin(), getAverage(), getMax());
+    }
+}
+
+// Percentil de uma consulta; mutável para ser reaproveitado entre consultas
+class PercentileStats {
+    double value;
+    int samples;
+    boolean truncated;
+
+    void reset() {
+        value = Double.NaN;
+        samples = 0;
+        truncated = false;
+    }
+
+    // NaN se não houve leituras
+    public double getValue() { return value; }
+    // Leituras usadas no cálculo
+    public int getSamples() { return samples; }
+    // true se o intervalo começa antes da parte do histórico que pode ser lida: o percentil
+    // é só das leituras mais recentes
+    public boolean isTruncated() { return truncated; }
+
+    @Override
+    public String toString() {
+        return String.format("%.2f (%d leituras%s)", value, samples, truncated ? ", só as mais recentes" : "");
+    }
+}
+
+// Cada sensor tem um bloco fixo em buffers diretos:
+//   [sequência de escrita: long][versão da janela: long]
+//   [histórico: samplesPerSensor x (timestamp long, valor double)]
+//   [janela: windowBuckets x (época long, contagem long, soma, mínimo, máximo)]
+// O histórico é um anel; a janela deslizante é dividida em baldes de tempo, atualizados
+// a cada leitura (min/max/soma/contagem) e combinados na consulta em O(baldes).
+// Percentis são calculados sob demanda sobre o histórico, num buffer reutilizado por thread.
+// Consultas por intervalo só alcançam os 3/4 mais recentes do anel (o resto é folga para o
+// escritor): dimensione samplesPerSensor para o intervalo mais longo que será consultado.
+//
+// Sensores diferentes podem ser gravados em paralelo; um mesmo sensor deve ter um
+// escritor por vez. Leitores não bloqueiam o escritor: uma leitura sobrescrita durante
+// a consulta é descartada. Os baldes da janela são protegidos por um seqlock (versão
+// ímpar durante a escrita): a consulta repete se a versão mudou enquanto lia.
+// Uma leitura atrasada cujo balde já foi reaproveitado por uma época mais nova fica
+// fora da janela (contada em getLateSampleCount), em vez de zerar o balde.
+class SensorHub {
+    static final int SAMPLE_BYTES = 16;
+    static final int BUCKET_BYTES = 40;
+    static final int HEADER_BYTES = 16;
+    private static final int VERSION_OFFSET = 8;
+    // Acesso acquire/release à sequência de escrita e à versão da janela dentro do buffer direto
+    private static final VarHandle SEQUENCE =
+        MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    // Buffers diretos de ~64 MB, alocados conforme os sensores aparecem
+    private static final long SEGMENT_TARGET_BYTES = 64L << 20;
+    // Bit do resultado de scan que indica leituras do intervalo fora do alcance
+    private static final long TRUNCATED = 1L << 32;
+
+    private final int samplesPerSensor;
+    private final int sampleMask;
+    private final int windowBuckets;
+    private final long bucketMillis;
+    private final int blockBytes;
+    private final int sensorsPerSegment;
+
+    private final SensorIndex index = new SensorIndex();
+    private final List<ByteBuffer> segments = new ArrayList<>();
+    private volatile ByteBuffer[] segmentArray = new ByteBuffer[0];
+    private int sensorCount;
+    private final LongAdder lateSamples = new LongAdder();
+
+    private final ThreadLocal<Collector> scratch;
+
+    public SensorHub(int samplesPerSensor, Duration window, int windowBuckets) {
+        if (samplesPerSensor <= 0 || Integer.bitCount(samplesPerSensor) != 1) {
+            throw new IllegalArgumentException("samplesPerSensor deve ser potência de 2");
+        }
+        if (windowBuckets <= 0 || window.toMillis() < windowBuckets) {
+            throw new IllegalArgumentException("Janela deve ter ao menos 1 ms por balde");
+        }
+        this.samplesPerSensor = samplesPerSensor;
+        this.sampleMask = samplesPerSensor - 1;
+        this.windowBuckets = windowBuckets;
+        this.bucketMillis = window.toMillis() / windowBuckets;
+        this.blockBytes = HEADER_BYTES + samplesPerSensor * SAMPLE_BYTES + windowBuckets * BUCKET_BYTES;
+        this.sensorsPerSegment = (int) Math.max(1, SEGMENT_TARGET_BYTES / blockBytes);
+        this.scratch = ThreadLocal.withInitial(() -> new Collector(samplesPerSensor));
+    }
+
+    // Registra o sensor no primeiro uso; ids são livres, exceto Long.MIN_VALUE
+    public void record(long sensorId, long timestampMillis, double value) {
+        int slot = index.get(sensorId);
+        if (slot < 0) {
+            slot = register(sensorId);
+        }
+        ByteBuffer segment = segmentArray[slot / sensorsPerSegment];
+        int header = (slot % sensorsPerSegment) * blockBytes;
+        int base = header + HEADER_BYTES;
+        long sequence = (long) SEQUENCE.get(segment, header);
+
+        int sample = base + (int) (sequence & sampleMask) * SAMPLE_BYTES;
+        segment.putLong(sample, timestampMillis);
+        segment.putDouble(sample + 8, value);
+
+        long epoch = Math.floorDiv(timestampMillis, bucketMillis);
+        int bucket = base + samplesPerSensor * SAMPLE_BYTES
+            + Math.floorMod(epoch, windowBuckets) * BUCKET_BYTES;
+        long bucketEpoch = segment.getLong(bucket);
+        if (bucketEpoch > epoch) {
+            lateSamples.increment();
+        } else {
+            int versionOffset = header + VERSION_OFFSET;
+            long version = (long) SEQUENCE.get(segment, versionOffset);
+            SEQUENCE.setOpaque(segment, versionOffset, version + 1);
+            VarHandle.storeStoreFence();
+            if (bucketEpoch != epoch) {
+                segment.putLong(bucket, epoch);
+                segment.putLong(bucket + 8, 1);
+                segment.putDouble(bucket + 16, value);
+                segment.putDouble(bucket + 24, value);
+                segment.putDouble(bucket + 32, value);
+            } else {
+                segment.putLong(bucket + 8, segment.getLong(bucket + 8) + 1);
+                segment.putDouble(bucket + 16, segment.getDouble(bucket + 16) + value);
+                segment.putDouble(bucket + 24, Math.min(segment.getDouble(bucket + 24), value));
+                segment.putDouble(bucket + 32, Math.max(segment.getDouble(bucket + 32), value));
+            }
+            SEQUENCE.setRelease(segment, versionOffset, version + 2);
+        }
+        SEQUENCE.setRelease(segment, header, sequence + 1);
+    }
+
+    // Observer para um TemperatureSensor existente, que não tem identidade própria
+    public TemperatureMonitorObserver.TemperatureObserver observer(long sensorId) {
+        return temperature -> record(sensorId, System.currentTimeMillis(), temperature);
+    }
+
+    // Janela deslizante que termina em nowMillis; false se o sensor não existe
+    public boolean window(long sensorId, long nowMillis, WindowStats into) {
+        into.reset();
+        int slot = index.get(sensorId);
+        if (slot < 0) {
+            return false;
+        }
+        ByteBuffer segment = segmentArray[slot / sensorsPerSegment];
+        int versionOffset = (slot % sensorsPerSegment) * blockBytes + VERSION_OFFSET;
+        int buckets = (slot % sensorsPerSegment) * blockBytes + HEADER_BYTES + samplesPerSensor * SAMPLE_BYTES;
+        long nowEpoch = Math.floorDiv(nowMillis, bucketMillis);
+        while (true) {
+            long version = (long) SEQUENCE.getAcquire(segment, versionOffset);
+            if ((version & 1) != 0) {
+                Thread.onSpinWait(); // escritor no meio de um balde
+                continue;
+            }
+            into.reset();
+            for (int i = 0; i < windowBuckets; i++) {
+                int bucket = buckets + i * BUCKET_BYTES;
+                long epoch = segment.getLong(bucket);
+                long count = segment.getLong(bucket + 8);
+                if (count == 0 || epoch > nowEpoch || epoch <= nowEpoch - windowBuckets) {
+                    continue;
+                }
+                into.count += count;
+                into.sum += segment.getDouble(bucket + 16);
+                into.min = Math.min(into.min, segment.getDouble(bucket + 24));
+                into.max = Math.max(into.max, segment.getDouble(bucket + 32));
+            }
+            // Os baldes lidos só valem se nenhuma escrita começou durante a leitura
+            VarHandle.acquireFence();
+            if ((long) SEQUENCE.getAcquire(segment, versionOffset) == version) {
+                return true;
+            }
+        }
+    }
+
+    // Percorre as leituras com timestamp em [fromMillis, toMillis] direto do buffer e devolve
+    // quantas entregou. Supõe timestamps crescentes por sensor, o que permite busca binária
+    // no anel. Só os 3/4 mais recentes do anel são lidos; leituras mais antigas do intervalo
+    // ficam de fora (percentile indica quando isso acontece).
+    public int forEach(long sensorId, long fromMillis, long toMillis, SampleConsumer consumer) {
+        return (int) scan(sensorId, fromMillis, toMillis, consumer);
+    }
+
+    // Percentil exato (0..100) das leituras do intervalo que ainda estão no histórico;
+    // false se o sensor não existe
+    public boolean percentile(long sensorId, long fromMillis, long toMillis, double percentile, PercentileStats into) {
+        into.reset();
+        if (index.get(sensorId) < 0) {
+            return false;
+        }
+        Collector collector = scratch.get();
+        collector.count = 0;
+        long result = scan(sensorId, fromMillis, toMillis, collector);
+        int n = collector.count;
+        into.samples = n;
+        into.truncated = (result & TRUNCATED) != 0;
+        if (n > 0) {
+            int rank = (int) Math.min(n - 1, Math.max(0, Math.ceil(percentile / 100 * n) - 1));
+            into.value = select(collector.values, n, rank);
+        }
+        return true;
+    }
+
+    // Leituras fora de ordem que chegaram depois de o balde delas ser reaproveitado
+    public long getLateSampleCount() {
+        return lateSamples.sum();
+    }
+
+    // Devolve a quantidade entregue, com TRUNCATED ligado se parte do intervalo ficou de fora
+    private long scan(long sensorId, long fromMillis, long toMillis, SampleConsumer consumer) {
+        int slot = index.get(sensorId);
+        if (slot < 0) {
+            return 0;
+        }
+        ByteBuffer segment = segmentArray[slot / sensorsPerSegment];
+        int header = (slot % sensorsPerSegment) * blockBytes;
+        int base = header + HEADER_BYTES;
+        long end = (long) SEQUENCE.getAcquire(segment, header);
+        // Deixa 1/4 do anel de folga para o escritor não alcançar o leitor
+        long floor = Math.max(0, end - samplesPerSensor + samplesPerSensor / 4);
+        long low = floor;
+        long high = end;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (segment.getLong(base + (int) (mid & sampleMask) * SAMPLE_BYTES) < fromMillis) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        // A busca parou no piso e há leituras anteriores a ele: o intervalo pode começar
+        // numa parte do anel que não é lida
+        long truncated = low == floor && floor > 0 && low < end
+            && segment.getLong(base + (int) (low & sampleMask) * SAMPLE_BYTES) > fromMillis ? TRUNCATED : 0;
+        long delivered = 0;
+        for (long s = low; s < end; s++) {
+            int sample = base + (int) (s & sampleMask) * SAMPLE_BYTES;
+            long timestamp = segment.getLong(sample);
+            double value = segment.getDouble(sample + 8);
+            VarHandle.acquireFence();
+            if ((long) SEQUENCE.getAcquire(segment, header) - samplesPerSensor >= s) {
+                truncated = TRUNCATED;
+                continue; // sobrescrita durante a leitura
+            }
+            if (timestamp > toMillis) {
+                break;
+            }
+            consumer.accept(timestamp, value);
+            delivered++;
+        }
+        return delivered | truncated;
+    }
+
+    public synchronized int getSensorCount() {
+        return sensorCount;
+    }
+
+    public synchronized long getOffHeapBytes() {
+        return (long) segments.size() * sensorsPerSegment * blockBytes;
+    }
+
+    private synchronized int register(long sensorId) {
+        int existing = index.get(sensorId);
+        if (existing >= 0) {
+            return existing;
+        }
+        int slot = sensorCount;
+        if (slot / sensorsPerSegment >= segments.size()) {
+            ByteBuffer segment = ByteBuffer.allocateDirect(sensorsPerSegment * blockBytes)
+                .order(ByteOrder.nativeOrder());
+            segments.add(segment);
+            segmentArray = segments.toArray(new ByteBuffer[0]);
+        }
+        // Sequência 0 (buffer zerado); baldes vazios e com época impossível
+        ByteBuffer segment = segmentArray[slot / sensorsPerSegment];
+        int buckets = (slot % sensorsPerSegment) * blockBytes + HEADER_BYTES + samplesPerSensor * SAMPLE_BYTES;
+        for (int i = 0; i < windowBuckets; i++) {
+            segment.putLong(buckets + i * BUCKET_BYTES, Long.MIN_VALUE);
+        }
+        sensorCount++;
+        index.put(sensorId, slot);
+        return slot;
+    }
+
+    // Quickselect sobre os n primeiros valores; reordena o array
+    private static double select(double[] values, int n, int rank) {
+        int low = 0;
+        int high = n - 1;
+        while (low < high) {
+            double pivot = values[(low + high) >>> 1];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    i++;
+                }
+                while (values[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    double tmp = values[i];
+                    values[i] = values[j];
+                    values[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            if (rank <= j) {
+                high = j;
+            } else if (rank >= i) {
+                low = i;
+            } else {
+                return values[rank];
+            }
+        }
+        return values[rank];
+    }
+
+    // Destino das leituras do percentil, um por thread, sem lambda nem contador alocados por consulta
+    private static final class Collector implements SampleConsumer {
+        final double[] values;
+        int count;
+
+        Collector(int capacity) {
+            this.values = new double[capacity];
+        }
+
+        @Override
+        public void accept(long timestampMillis, double value) {
+            values[count++] = value;
+        }
+    }
+
+    // Mapa id -> slot com endereçamento aberto. Escritas sob o lock do hub; leituras
+    // sem lock: o slot é gravado antes da chave, e a chave é publicada com release.
+    private static final class SensorIndex {
+        private static final long EMPTY = Long.MIN_VALUE;
+        private static final VarHandle KEYS = MethodHandles.arrayElementVarHandle(long[].class);
+
+        private static final class Table {
+            final long[] keys;
+            final int[] slots;
+
+            Table(int capacity) {
+                keys = new long[capacity];
+                slots = new int[capacity];
+                Arrays.fill(keys, EMPTY);
+            }
+        }
+
+        private volatile Table table = new Table(1024);
+        private int size;
+
+        int get(long id) {
+            Table current = table;
+            int mask = current.keys.length - 1;
+            for (int i = mix(id) & mask; ; i = (i + 1) & mask) {
+                long key = (long) KEYS.getAcquire(current.keys, i);
+                if (key == id) {
+                    return current.slots[i];
+                }
+                if (key == EMPTY) {
+                    return -1;
+                }
+            }
+        }
+
+        void put(long id, int slot) {
+            if (id == EMPTY) {
+                throw new IllegalArgumentException("Id de sensor reservado: " + id);
+            }
+            if ((size + 1) * 2 > table.keys.length) {
+                Table grown = new Table(table.keys.length * 2);
+                for (int i = 0; i < table.keys.length; i++) {
+                    if (table.keys[i] != EMPTY) {
+                        insert(grown, table.keys[i], table.slots[i]);
+                    }
+                }
+                table = grown;
+            }
+            insert(table, id, slot);
+            size++;
+        }
+
+        private static void insert(Table target, long id, int slot) {
+            int mask = target.keys.length - 1;
+            int i = mix(id) & mask;
+            while (target.keys[i] != EMPTY) {
+                i = (i + 1) & mask;
+            }
+            target.slots[i] = slot;
+            KEYS.setRelease(target.keys, i, id);
+        }
+
+        private static int mix(long id) {
+            long h = id * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
+
+// Ingestão de N leituras espalhadas por muitos sensores, medindo taxa e coletas de GC.
+// Uso: java -Xmx64m -XX:MaxDirectMemorySize=512m SensorHubCheck [sensores] [leituras]
+// Os 200 mil sensores padrão ocupam ~300 MB em buffers diretos, e o limite de memória
+// direta é, por padrão, o tamanho máximo do heap: sem a opção, -Xmx64m falha no registro.
+class SensorHubCheck {
+    public static void main(String[] args) {
+        int sensors = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        long samples = args.length > 1 ? Long.parseLong(args[1]) : 20_000_000;
+
+        SensorHub hub = new SensorHub(64, Duration.ofSeconds(60), 12);
+        long baseMillis = 1_700_000_000_000L;
+        for (int s = 0; s < sensors; s++) {
+            hub.record(s, baseMillis, 20);
+        }
+
+        long gcBefore = gcCount();
+        long start = System.nanoTime();
+        for (long i = 0; i < samples; i++) {
+            int sensor = (int) (i % sensors);
+            long timestamp = baseMillis + 1 + i / sensors * 100;
+            hub.record(sensor, timestamp, 20 + (i % 150) / 10.0);
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        long gcDuring = gcCount() - gcBefore;
+
+        long now = baseMillis + samples / sensors * 100;
+        WindowStats stats = new WindowStats();
+        hub.window(42, now, stats);
+        PercentileStats p99 = new PercentileStats();
+        hub.percentile(42, now - 60_000, now, 99, p99);
+        System.out.printf("%d sensores, %d leituras em %d ms (%.1f M/s), %d coletas de GC, %d MB fora do heap%n",
+            hub.getSensorCount(), samples, elapsedNanos / 1_000_000, samples * 1e3 / elapsedNanos,
+            gcDuring, hub.getOffHeapBytes() / (1024 * 1024));
+        System.out.println("Sensor 42, último minuto: " + stats + ", p99 " + p99);
+        // O minuto inteiro não cabe nos 3/4 legíveis do anel de 64 leituras; 2 s cabem
+        if (stats.getCount() > 48 && (!p99.isTruncated() || p99.getSamples() > 48)) {
+            throw new IllegalStateException("Percentil truncado sem aviso: " + p99);
+        }
+        hub.percentile(42, now - 2_000, now, 99, p99);
+        if (p99.isTruncated() || p99.getSamples() != 20) {
+            throw new IllegalStateException("Percentil de 2 s: " + p99);
+        }
+
+        // Leitura atrasada uma janela inteira: cai no balde da última leitura, já de época mais nova
+        long countBefore = stats.getCount();
+        long lastTimestamp = baseMillis + 1 + (samples / sensors - 1) * 100;
+        hub.record(42, lastTimestamp - 60_000, -100);
+        hub.window(42, now, stats);
+        if (stats.getCount() != countBefore || hub.getLateSampleCount() != 1) {
+            throw new IllegalStateException("Leitura atrasada alterou a janela: " + stats);
+        }
+        System.out.println("Leitura atrasada fora da janela: " + hub.getLateSampleCount());
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+}
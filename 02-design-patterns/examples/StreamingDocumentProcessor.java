@@ -0,0 +1,421 @@
+package examples.patterns.template;
+
+/**
+ * Variante em streaming do Template Method
+ * Cenário: PDFs e planilhas de vários GB, que não cabem no heap de uma vez
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Mesmo esqueleto de DocumentProcessor, mas o conteúdo chega em chunks de um buffer
+// direto reutilizado, lido por FileChannel. Sem reescrita, o resultado é copiado
+// de canal para canal com transferTo, sem passar pelo heap.
+//
+// S é o estado de um documento (contadores, progresso entre chunks): criado por
+// newState a cada processDocument e passado a todos os hooks. Subclasses não guardam
+// estado de documento em campos, então a mesma instância atende documentos em paralelo.
+abstract class StreamingDocumentProcessor<S> {
+    static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+    static final int HEADER_BYTES = 512;
+
+    private final int chunkSize;
+    // Um buffer por thread: o mesmo processador pode atender documentos em paralelo
+    private final ThreadLocal<ByteBuffer> buffers;
+
+    protected StreamingDocumentProcessor(int chunkSize) {
+        if (chunkSize < HEADER_BYTES) {
+            throw new IllegalArgumentException("chunkSize deve ter ao menos " + HEADER_BYTES + " bytes");
+        }
+        this.chunkSize = chunkSize;
+        this.buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(chunkSize));
+    }
+
+    protected StreamingDocumentProcessor() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    // Template Method - o heap usado é um chunk, qualquer que seja o tamanho do arquivo
+    public final void processDocument(Path source, Path target) throws IOException {
+        ByteBuffer chunk = buffers.get();
+        S state = newState();
+        try (FileChannel in = openDocument(source)) {
+            chunk.clear().limit(HEADER_BYTES);
+            in.read(chunk, 0);
+            validateFormat(state, chunk.flip());
+
+            boolean rewrite = rewritesContent();
+            try (FileChannel out = rewrite ? openTarget(target) : null) {
+                long position = 0;
+                while (true) {
+                    chunk.clear();
+                    int read = in.read(chunk, position);
+                    if (read < 0) {
+                        break;
+                    }
+                    chunk.flip();
+                    extractContent(state, chunk);
+                    chunk.position(0).limit(read);
+                    processContent(state, chunk);
+                    if (rewrite) {
+                        chunk.position(0).limit(read);
+                        ByteBuffer result = rewriteChunk(state, chunk);
+                        while (result.hasRemaining()) {
+                            out.write(result);
+                        }
+                    }
+                    position += read;
+                }
+                performSpecificOperations(state);
+                if (!rewrite) {
+                    saveResult(in, target);
+                } else {
+                    System.out.println("Salvando resultado...");
+                }
+            }
+        }
+        closeDocument();
+        System.out.println();
+    }
+
+    // Com cache: se este tipo de processador já processou o mesmo conteúdo, o resultado
+    // guardado é copiado para target e validate/extract/process não rodam
+    public final void processDocument(Path source, Path target, DocumentResultCache cache) throws IOException {
+        String key = DocumentResultCache.key(getClass().getName() + "@" + cacheVersion(), hashContent(source));
+        if (cache.copyTo(key, target)) {
+            System.out.println("Resultado de " + source.getFileName() + " reaproveitado do cache");
+            System.out.println();
+            return;
+        }
+        processDocument(source, target);
+        cache.put(key, target);
+    }
+
+    // Hook: mude a versão quando a lógica do processador mudar, invalidando o cache
+    protected String cacheVersion() {
+        return "1";
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    // Métodos concretos (comuns a todos)
+    private FileChannel openDocument(Path source) throws IOException {
+        System.out.println("Abrindo documento: " + source.getFileName());
+        return FileChannel.open(source, StandardOpenOption.READ);
+    }
+
+    // SHA-256 do conteúdo, lido com o mesmo buffer reutilizado dos chunks
+    private byte[] hashContent(Path source) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponível", e);
+        }
+        ByteBuffer chunk = buffers.get();
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+            chunk.clear();
+            while (in.read(chunk) >= 0) {
+                digest.update(chunk.flip());
+                chunk.clear();
+            }
+        }
+        return digest.digest();
+    }
+
+    private static FileChannel openTarget(Path target) throws IOException {
+        return FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    // Conteúdo inalterado: cópia feita pelo kernel quando o sistema suporta
+    private void saveResult(FileChannel in, Path target) throws IOException {
+        System.out.println("Salvando resultado...");
+        try (FileChannel out = openTarget(target)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                position += in.transferTo(position, size - position, out);
+            }
+        }
+    }
+
+    private void closeDocument() {
+        System.out.println("Fechando documento");
+    }
+
+    // Métodos abstratos (específicos de cada tipo).
+    // Os chunks vêm com position = 0 e limit = bytes lidos; o buffer é reutilizado
+    // no próximo chunk, então não guarde referência a ele.
+    protected abstract S newState();
+    protected abstract void validateFormat(S state, ByteBuffer header);
+    protected abstract void extractContent(S state, ByteBuffer chunk);
+    protected abstract void processContent(S state, ByteBuffer chunk);
+
+    // Hook method - pode ser sobrescrito opcionalmente
+    protected void performSpecificOperations(S state) {
+        // Implementação padrão vazia
+    }
+
+    // Hook: true se o resultado difere do original; cada chunk passa por rewriteChunk
+    protected boolean rewritesContent() {
+        return false;
+    }
+
+    // Devolve os bytes a gravar para este chunk; pode alterar o próprio chunk no lugar
+    protected ByteBuffer rewriteChunk(S state, ByteBuffer chunk) {
+        return chunk;
+    }
+
+    // Utilitário para validar assinaturas de formato no cabeçalho
+    protected static boolean startsWith(ByteBuffer header, byte[] magic) {
+        if (header.remaining() < magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if (header.get(header.position() + i) != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
+
+// PDF em streaming: conta objetos sem carregar o arquivo; o resultado é uma cópia
+class StreamingPdfProcessor extends StreamingDocumentProcessor<StreamingPdfProcessor.Counts> {
+    private static final byte[] MAGIC = "%PDF-".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] OBJ = " obj".getBytes(StandardCharsets.US_ASCII);
+
+    static final class Counts {
+        long bytes;
+        long objects;
+        int matched; // prefixo de " obj" já visto no fim do chunk anterior
+    }
+
+    @Override
+    protected Counts newState() {
+        return new Counts();
+    }
+
+    @Override
+    protected void validateFormat(Counts counts, ByteBuffer header) {
+        if (!startsWith(header, MAGIC)) {
+            throw new IllegalArgumentException("Arquivo não é um PDF");
+        }
+        System.out.println("Validando formato PDF...");
+    }
+
+    @Override
+    protected void extractContent(Counts counts, ByteBuffer chunk) {
+        counts.bytes += chunk.remaining();
+    }
+
+    // Procura " obj" mantendo o progresso entre chunks, para não perder ocorrências na borda
+    @Override
+    protected void processContent(Counts counts, ByteBuffer chunk) {
+        int matched = counts.matched;
+        for (int i = chunk.position(); i < chunk.limit(); i++) {
+            byte b = chunk.get(i);
+            if (b == OBJ[matched]) {
+                if (++matched == OBJ.length) {
+                    counts.objects++;
+                    matched = 0;
+                }
+            } else {
+                matched = b == OBJ[0] ? 1 : 0;
+            }
+        }
+        counts.matched = matched;
+    }
+
+    @Override
+    protected void performSpecificOperations(Counts counts) {
+        System.out.println("PDF com " + counts.objects + " objetos em " + counts.bytes + " bytes");
+    }
+}
+
+// Planilha exportada em CSV: normaliza CRLF para LF reescrevendo cada chunk no lugar
+class StreamingCsvSpreadsheetProcessor extends StreamingDocumentProcessor<StreamingCsvSpreadsheetProcessor.Shape> {
+
+    static final class Shape {
+        long rows;
+        long columns = 1;
+        boolean firstRow = true;
+    }
+
+    @Override
+    protected Shape newState() {
+        return new Shape();
+    }
+
+    @Override
+    protected void validateFormat(Shape shape, ByteBuffer header) {
+        for (int i = header.position(); i < header.limit(); i++) {
+            if (header.get(i) == 0) {
+                throw new IllegalArgumentException("Planilha binária: exporte como CSV");
+            }
+        }
+        System.out.println("Validando formato CSV...");
+    }
+
+    @Override
+    protected void extractContent(Shape shape, ByteBuffer chunk) {
+        for (int i = chunk.position(); i < chunk.limit(); i++) {
+            byte b = chunk.get(i);
+            if (b == '\n') {
+                shape.rows++;
+                shape.firstRow = false;
+            } else if (b == ',' && shape.firstRow) {
+                shape.columns++;
+            }
+        }
+    }
+
+    @Override
+    protected void processContent(Shape shape, ByteBuffer chunk) {
+        // A contagem acontece na extração; aqui entraria a validação de células
+    }
+
+    @Override
+    protected boolean rewritesContent() {
+        return true;
+    }
+
+    // Remove os '\r' compactando o chunk no lugar: nenhum buffer extra é alocado
+    @Override
+    protected ByteBuffer rewriteChunk(Shape shape, ByteBuffer chunk) {
+        int write = chunk.position();
+        for (int read = chunk.position(); read < chunk.limit(); read++) {
+            byte b = chunk.get(read);
+            if (b != '\r') {
+                chunk.put(write++, b);
+            }
+        }
+        return chunk.limit(write);
+    }
+
+    @Override
+    protected void performSpecificOperations(Shape shape) {
+        System.out.println("Planilha com " + shape.rows + " linhas e " + shape.columns + " colunas");
+    }
+}
+
+// Gera arquivos grandes e processa com heap pequeno, conferindo o tamanho do resultado.
+// Depois processa os dois arquivos ao mesmo tempo com uma única instância de cada processador.
+// Uso: java -Xmx32m ... StreamingDocumentProcessorCheck [MB]
+class StreamingDocumentProcessorCheck {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+        Path pdf = Files.createTempFile("documento", ".pdf");
+        Path csv = Files.createTempFile("planilha", ".csv");
+        Path pdfOut = Files.createTempFile("documento-saida", ".pdf");
+        Path csvOut = Files.createTempFile("planilha-saida", ".csv");
+        Path pdfOut2 = Files.createTempFile("documento-saida", ".pdf");
+        Path csvOut2 = Files.createTempFile("planilha-saida", ".csv");
+        try {
+            byte[] pdfBlock = "1 0 obj << /Type /Page >> endobj\n".getBytes(StandardCharsets.US_ASCII);
+            byte[] csvRow = "descricao,valor,centro\r\n".getBytes(StandardCharsets.US_ASCII);
+            long pdfBlocks = writeRepeated(pdf, "%PDF-1.7\n".getBytes(StandardCharsets.US_ASCII), pdfBlock, megabytes);
+            long csvRows = writeRepeated(csv, new byte[0], csvRow, megabytes);
+
+            long start = System.nanoTime();
+            new StreamingPdfProcessor().processDocument(pdf, pdfOut);
+            new StreamingCsvSpreadsheetProcessor().processDocument(csv, csvOut);
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+            if (Files.size(pdfOut) != Files.size(pdf)) {
+                throw new IllegalStateException("Cópia do PDF com tamanho diferente");
+            }
+            if (Files.size(csvOut) != Files.size(csv) - csvRows) {
+                throw new IllegalStateException("CSV normalizado com tamanho inesperado");
+            }
+            Runtime runtime = Runtime.getRuntime();
+            System.out.println(pdfBlocks + " objetos PDF e " + csvRows + " linhas CSV em " + elapsedMillis
+                + " ms, heap máximo " + runtime.maxMemory() / (1024 * 1024) + " MB");
+
+            // Mesmas instâncias, dois documentos por vez: cada um com o próprio estado
+            ConcurrentLinkedQueue<Long> objectCounts = new ConcurrentLinkedQueue<>();
+            StreamingPdfProcessor pdfProcessor = new StreamingPdfProcessor() {
+                @Override
+                protected void performSpecificOperations(Counts counts) {
+                    objectCounts.add(counts.objects);
+                }
+            };
+            StreamingCsvSpreadsheetProcessor csvProcessor = new StreamingCsvSpreadsheetProcessor();
+            ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+            Thread[] workers = {
+                inParallel(() -> pdfProcessor.processDocument(pdf, pdfOut), failures),
+                inParallel(() -> pdfProcessor.processDocument(pdf, pdfOut2), failures),
+                inParallel(() -> csvProcessor.processDocument(csv, csvOut), failures),
+                inParallel(() -> csvProcessor.processDocument(csv, csvOut2), failures)
+            };
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            if (!failures.isEmpty()) {
+                throw new IllegalStateException("Falha no processamento em paralelo", failures.peek());
+            }
+            for (long objects : objectCounts) {
+                if (objects != pdfBlocks) {
+                    throw new IllegalStateException("Contagens misturadas entre documentos: " + objectCounts);
+                }
+            }
+            if (Files.size(pdfOut2) != Files.size(pdf) || Files.size(csvOut2) != Files.size(csv) - csvRows) {
+                throw new IllegalStateException("Saída em paralelo com tamanho inesperado");
+            }
+            System.out.println("Em paralelo com instância compartilhada: " + objectCounts);
+        } finally {
+            Files.deleteIfExists(pdf);
+            Files.deleteIfExists(csv);
+            Files.deleteIfExists(pdfOut);
+            Files.deleteIfExists(csvOut);
+            Files.deleteIfExists(pdfOut2);
+            Files.deleteIfExists(csvOut2);
+        }
+    }
+
+    private interface DocumentTask {
+        void run() throws IOException;
+    }
+
+    private static Thread inParallel(DocumentTask task, ConcurrentLinkedQueue<Throwable> failures) {
+        return Thread.ofPlatform().start(() -> {
+            try {
+                task.run();
+            } catch (IOException | RuntimeException e) {
+                failures.add(e);
+            }
+        });
+    }
+
+    private static long writeRepeated(Path file, byte[] prefix, byte[] block, int megabytes) throws IOException {
+        long count = (long) megabytes * 1024 * 1024 / block.length;
+        ByteBuffer buffer = ByteBuffer.allocate(block.length * 8192);
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            out.write(ByteBuffer.wrap(prefix));
+            long written = 0;
+            while (written < count) {
+                buffer.clear();
+                while (buffer.remaining() >= block.length && written < count) {
+                    buffer.put(block);
+                    written++;
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,367 @@
+package examples.patterns.observer;
+
+/**
+ * Entrega conflacionada e em lote para leituras de alta frequência
+ * Cenário: sensores publicando a kHz, com observers que fazem I/O de console
+ */
+
+import java.lang.invoke.VarHandle;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Anel de doubles com um único escritor e qualquer número de leitores.
+// O escritor grava o valor e publica a sequência com escrita volatile (a barreira
+// completa permite ao TemperatureFeed ver, logo depois, quem está esperando); cada
+// leitor tem o próprio cursor e nunca atrasa o escritor. Um leitor que ficar mais de uma volta
+// para trás perde as leituras sobrescritas (contadas em RingReader.getLostCount).
+final class DoubleRingBuffer {
+    private final double[] values;
+    private final int mask;
+    // Próxima sequência a ser escrita; tudo abaixo dela está publicado
+    private final AtomicLong published = new AtomicLong();
+
+    DoubleRingBuffer(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacidade deve ser potência de 2");
+        }
+        this.values = new double[capacity];
+        this.mask = capacity - 1;
+    }
+
+    // Só pode ser chamado por uma thread por vez (o escritor)
+    void publish(double value) {
+        long sequence = published.getPlain();
+        values[(int) (sequence & mask)] = value;
+        published.set(sequence + 1);
+    }
+
+    long getPublished() {
+        return published.getAcquire();
+    }
+
+    // Leitura volatile, para handshakes em que uma escrita volatile anterior não pode ser
+    // reordenada depois dela; getAcquire não dá essa garantia
+    long getPublishedVolatile() {
+        return published.get();
+    }
+
+    int capacity() {
+        return values.length;
+    }
+
+    RingReader newReader() {
+        return new RingReader(this, getPublished());
+    }
+
+    // Copia a partir de from até max valores; devolve a sequência do primeiro valor copiado
+    // (maior que from se o leitor foi ultrapassado) e o total em count[0]
+    long copy(long from, double[] dest, int max, int[] count) {
+        while (true) {
+            long end = getPublished();
+            // Leitor atrasado volta com 3/4 do anel, deixando folga para o escritor
+            long start = Math.max(from, end - values.length + values.length / 4);
+            int n = (int) Math.min(max, end - start);
+            for (int i = 0; i < n; i++) {
+                dest[i] = values[(int) ((start + i) & mask)];
+            }
+            // Os valores lidos só valem se o escritor não deu a volta por cima deles
+            VarHandle.acquireFence();
+            if (getPublished() - values.length < start) {
+                count[0] = n;
+                return start;
+            }
+        }
+    }
+
+}
+
+// Cursor de um leitor; não é thread-safe, cada assinatura tem o seu
+final class RingReader {
+    private final DoubleRingBuffer ring;
+    private final int[] count = new int[1];
+    private long cursor;
+    private long lost;
+
+    RingReader(DoubleRingBuffer ring, long start) {
+        this.ring = ring;
+        this.cursor = start;
+    }
+
+    long available() {
+        return ring.getPublished() - cursor;
+    }
+
+    long cursor() {
+        return cursor;
+    }
+
+    // Copia até dest.length leituras ainda não vistas e avança o cursor
+    int read(double[] dest, int max) {
+        long start = ring.copy(cursor, dest, Math.min(max, dest.length), count);
+        lost += start - cursor;
+        cursor = start + count[0];
+        return count[0];
+    }
+
+    // Pula até a leitura mais recente e a copia em dest[0], validada por copy: o cursor
+    // para logo depois da sequência de fato copiada. Devolve quantas leituras foram
+    // puladas antes dela, ou -1 se não havia leitura nova.
+    long readLatest(double[] dest) {
+        long end = ring.getPublished();
+        if (end == cursor) {
+            return -1;
+        }
+        long start = ring.copy(end - 1, dest, 1, count);
+        long skipped = start - cursor;
+        cursor = start + count[0];
+        return skipped;
+    }
+
+    long getLostCount() {
+        return lost;
+    }
+}
+
+// Registrado no sensor como um observer comum: cada leitura vai para o anel e o sensor
+// segue em frente. Cada assinatura roda numa virtual thread que lê o anel no seu ritmo:
+// - conflacionada: o observer recebe só a leitura mais recente; as intermediárias são puladas
+// - em lote: o observer recebe um double[] a cada N leituras ou a cada período, o que vier antes
+// O custo de console passa a ser por janela, não por leitura.
+//
+// Sem nada a entregar, a virtual thread da assinatura fica estacionada. Antes de
+// estacionar ela anuncia em wakeAt a sequência que a interessa (a próxima leitura, ou
+// a que completa a janela); o escritor só chama unpark quando a publicação alcança
+// esse ponto, então uma janela de N leituras custa um unpark, não N.
+//
+// update deve ser chamado por uma única thread (a do sensor), como em setTemperature.
+class TemperatureFeed implements TemperatureMonitorObserver.TemperatureObserver, AutoCloseable {
+    static final int DEFAULT_CAPACITY = 8_192;
+
+    private final DoubleRingBuffer ring;
+    private final AtomicReference<Subscription[]> subscriptions = new AtomicReference<>(new Subscription[0]);
+    private volatile boolean closed;
+
+    public TemperatureFeed(int capacity) {
+        this.ring = new DoubleRingBuffer(capacity);
+    }
+
+    public TemperatureFeed() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    @Override
+    public void update(double temperature) {
+        ring.publish(temperature);
+        long published = ring.getPublished();
+        for (Subscription subscription : subscriptions.get()) {
+            if (published >= subscription.wakeAt) {
+                subscription.wakeAt = Long.MAX_VALUE;
+                LockSupport.unpark(subscription.thread);
+            }
+        }
+    }
+
+    public Subscription subscribeLatest(TemperatureMonitorObserver.TemperatureObserver observer) {
+        // Conflacionada: window[0] guarda a leitura a entregar
+        return add(new Subscription(ring.newReader(), observer, null, 1, 0));
+    }
+
+    // Janela fecha com windowSamples leituras ou após window, o que vier antes
+    public Subscription subscribeBatch(TemperatureMonitorObserver.BatchTemperatureObserver observer,
+                                       int windowSamples, Duration window) {
+        if (windowSamples <= 0 || windowSamples > ring.capacity()) {
+            throw new IllegalArgumentException("windowSamples deve estar entre 1 e " + ring.capacity());
+        }
+        return add(new Subscription(ring.newReader(), null, observer, windowSamples, window.toNanos()));
+    }
+
+    // Encerra as assinaturas depois de entregar o que já foi publicado
+    @Override
+    public void close() {
+        closed = true;
+        for (Subscription subscription : subscriptions.get()) {
+            LockSupport.unpark(subscription.thread);
+        }
+        for (Subscription subscription : subscriptions.get()) {
+            subscription.join();
+        }
+    }
+
+    private Subscription add(Subscription subscription) {
+        if (closed) {
+            throw new IllegalStateException("Feed encerrado");
+        }
+        Subscription[] current;
+        Subscription[] updated;
+        do {
+            current = subscriptions.get();
+            updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = subscription;
+        } while (!subscriptions.compareAndSet(current, updated));
+        subscription.start();
+        return subscription;
+    }
+
+    private void remove(Subscription subscription) {
+        Subscription[] current;
+        Subscription[] updated;
+        do {
+            current = subscriptions.get();
+            int index = Arrays.asList(current).indexOf(subscription);
+            if (index < 0) {
+                return;
+            }
+            updated = new Subscription[current.length - 1];
+            System.arraycopy(current, 0, updated, 0, index);
+            System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+        } while (!subscriptions.compareAndSet(current, updated));
+    }
+
+    class Subscription implements AutoCloseable {
+        private final RingReader reader;
+        private final TemperatureMonitorObserver.TemperatureObserver latestObserver;
+        private final TemperatureMonitorObserver.BatchTemperatureObserver batchObserver;
+        private final double[] window;
+        private final long windowNanos;
+        private volatile Thread thread;
+        private volatile boolean cancelled;
+        // Sequência publicada que deve acordar a assinatura; MAX_VALUE = não está esperando
+        volatile long wakeAt = Long.MAX_VALUE;
+
+        private final LongAdder deliveries = new LongAdder();
+        private final LongAdder skipped = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+
+        Subscription(RingReader reader, TemperatureMonitorObserver.TemperatureObserver latestObserver,
+                     TemperatureMonitorObserver.BatchTemperatureObserver batchObserver,
+                     int windowSamples, long windowNanos) {
+            this.reader = reader;
+            this.latestObserver = latestObserver;
+            this.batchObserver = batchObserver;
+            this.window = new double[windowSamples];
+            this.windowNanos = windowNanos;
+        }
+
+        // Chamadas ao observer (uma por leitura conflacionada ou por janela)
+        public long getDeliveryCount() { return deliveries.sum(); }
+        // Leituras que o observer não viu: puladas pela conflação ou perdidas por atraso
+        public long getSkippedCount() { return skipped.sum(); }
+        public long getFailureCount() { return failures.sum(); }
+
+        // Cancela a assinatura depois de entregar o que já foi publicado para ela
+        @Override
+        public void close() {
+            cancelled = true;
+            remove(this);
+            LockSupport.unpark(thread);
+            join();
+        }
+
+        void start() {
+            thread = Thread.ofVirtual().name("temperature-feed").unstarted(
+                batchObserver != null ? this::runBatch : this::runLatest);
+            thread.start();
+        }
+
+        void join() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    thread.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private boolean stopping() {
+            return closed || cancelled;
+        }
+
+        // Anuncia o ponto de interesse e só estaciona se ele ainda não foi alcançado.
+        // A escrita de wakeAt e a releitura da sequência publicada são voláteis (a releitura
+        // não pode ser acquire, que poderia subir antes da escrita): ou o escritor vê wakeAt
+        // depois de publicar, ou esta thread vê a publicação na releitura. timeoutNanos <= 0: sem prazo
+        private void await(long wakeSequence, long timeoutNanos) {
+            wakeAt = wakeSequence;
+            if (ring.getPublishedVolatile() < wakeSequence && !stopping()) {
+                if (timeoutNanos > 0) {
+                    LockSupport.parkNanos(this, timeoutNanos);
+                } else {
+                    LockSupport.park(this);
+                }
+            }
+            wakeAt = Long.MAX_VALUE;
+        }
+
+        private void runLatest() {
+            while (true) {
+                boolean stopping = stopping();
+                long pending = reader.available();
+                long passed = pending > 0 ? reader.readLatest(window) : -1;
+                if (passed >= 0) {
+                    skipped.add(passed);
+                    deliver(window[0]);
+                } else if (stopping) {
+                    return;
+                } else {
+                    await(reader.cursor() + 1, 0);
+                }
+            }
+        }
+
+        // A janela começa a contar na primeira leitura pendente
+        private void runBatch() {
+            long deadline = 0;
+            boolean open = false;
+            while (true) {
+                boolean stopping = stopping();
+                long pending = reader.available();
+                if (pending > 0 && !open) {
+                    open = true;
+                    deadline = System.nanoTime() + windowNanos;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (pending >= window.length || (pending > 0 && (remaining <= 0 || stopping))) {
+                    long lostBefore = reader.getLostCount();
+                    int count = reader.read(window, window.length);
+                    skipped.add(reader.getLostCount() - lostBefore);
+                    deliverBatch(count);
+                    open = false;
+                } else if (stopping) {
+                    return;
+                } else if (pending == 0) {
+                    await(reader.cursor() + 1, 0);
+                } else {
+                    await(reader.cursor() + window.length, remaining);
+                }
+            }
+        }
+
+        private void deliver(double value) {
+            try {
+                latestObserver.update(value);
+                deliveries.increment();
+            } catch (RuntimeException e) {
+                failures.increment();
+            }
+        }
+
+        private void deliverBatch(int count) {
+            try {
+                batchObserver.update(window, count);
+                deliveries.increment();
+            } catch (RuntimeException e) {
+                failures.increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package examples.patterns.strategy;
+
+/**
+ * Gerador de IDs de transação no estilo Snowflake
+ * Cenário: vários pagamentos no mesmo milissegundo sem colisão de transactionId
+ *
+ * Layout do long (63 bits úteis):
+ *   41 bits - milissegundos desde EPOCH_MILLIS
+ *   10 bits - id do nó (0..1023)
+ *   12 bits - sequência dentro do milissegundo (0..4095)
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+class TransactionIdGenerator {
+    static final long EPOCH_MILLIS = 1704067200000L; // 2024-01-01T00:00:00Z
+
+    static final int NODE_BITS = 10;
+    static final int SEQUENCE_BITS = 12;
+    static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+    static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private static final TransactionIdGenerator SHARED =
+        new TransactionIdGenerator(Long.getLong("payment.node.id", 0L));
+
+    private final long nodeBits;
+    // Estado = (timestamp << SEQUENCE_BITS) | sequência; atualizado apenas por CAS
+    private final AtomicLong lastState = new AtomicLong();
+
+    public TransactionIdGenerator(long nodeId) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("nodeId deve estar entre 0 e " + MAX_NODE_ID);
+        }
+        this.nodeBits = nodeId << SEQUENCE_BITS;
+    }
+
+    public static TransactionIdGenerator shared() {
+        return SHARED;
+    }
+
+    public TransactionId next(String prefix) {
+        return new TransactionId(prefix, nextId());
+    }
+
+    public long nextId() {
+        long now = System.currentTimeMillis() - EPOCH_MILLIS;
+        while (true) {
+            long last = lastState.get();
+            long lastTimestamp = last >>> SEQUENCE_BITS;
+            long next;
+            if (now > lastTimestamp) {
+                next = now << SEQUENCE_BITS;
+            } else {
+                // Mesmo milissegundo ou relógio voltou: incrementa a sequência.
+                // Se a sequência estourar, o carry avança o timestamp em 1ms
+                // (empresta do futuro) em vez de esperar o relógio.
+                next = last + 1;
+            }
+            if (lastState.compareAndSet(last, next)) {
+                long timestamp = next >>> SEQUENCE_BITS;
+                long sequence = next & SEQUENCE_MASK;
+                return (timestamp << (NODE_BITS + SEQUENCE_BITS)) | nodeBits | sequence;
+            }
+        }
+    }
+
+    static long timestampOf(long id) {
+        return (id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH_MILLIS;
+    }
+
+    static long nodeOf(long id) {
+        return (id >>> SEQUENCE_BITS) & MAX_NODE_ID;
+    }
+}
+
+// ID de transação: o long é a identidade, a String só é montada quando alguém pede
+class TransactionId {
+    private final String prefix;
+    private final long value;
+    private String rendered;
+
+    public TransactionId(String prefix, long value) {
+        this.prefix = prefix;
+        this.value = value;
+    }
+
+    public String getPrefix() { return prefix; }
+    public long getValue() { return value; }
+
+    @Override
+    public String toString() {
+        String s = rendered;
+        if (s == null) {
+            // Corrida benigna: duas threads podem renderizar o mesmo valor imutável
+            s = prefix + "-" + value;
+            rendered = s;
+        }
+        return s;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof TransactionId)) return false;
+        TransactionId other = (TransactionId) o;
+        return value == other.value && prefix.equals(other.prefix);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(value) * 31 + prefix.hashCode();
+    }
+}
+
+// Verificação de concorrência: muitas threads gerando milhões de IDs sem duplicatas.
+// Os exemplos não têm suíte de testes; roda-se à mão depois de mvn compile e termina
+// com exceção (código de saída diferente de zero) se achar duplicata ou IDs fora de ordem.
+// Uso: java -cp 02-design-patterns/target/classes examples.patterns.strategy.TransactionIdGeneratorCheck [threads] [idsPorThread]
+class TransactionIdGeneratorCheck {
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int idsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 250_000;
+
+        TransactionIdGenerator generator = new TransactionIdGenerator(7);
+        long[][] generated = new long[threads][idsPerThread];
+        Thread[] workers = new Thread[threads];
+
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            long[] out = generated[t];
+            workers[t] = new Thread(() -> {
+                for (int i = 0; i < out.length; i++) {
+                    out[i] = generator.nextId();
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        long[] all = new long[threads * idsPerThread];
+        for (int t = 0; t < threads; t++) {
+            System.arraycopy(generated[t], 0, all, t * idsPerThread, idsPerThread);
+            // Dentro de uma thread os IDs precisam ser estritamente crescentes
+            for (int i = 1; i < idsPerThread; i++) {
+                if (generated[t][i] <= generated[t][i - 1]) {
+                    throw new IllegalStateException("IDs fora de ordem na thread " + t);
+                }
+            }
+        }
+        Arrays.sort(all);
+        int duplicates = 0;
+        for (int i = 1; i < all.length; i++) {
+            if (all[i] == all[i - 1]) {
+                duplicates++;
+            }
+        }
+
+        System.out.println("IDs gerados: " + all.length + " em " + elapsedMillis + " ms");
+        System.out.println("Duplicatas: " + duplicates);
+        System.out.println("Nó do primeiro ID: " + TransactionIdGenerator.nodeOf(all[0]));
+        if (duplicates > 0) {
+            throw new IllegalStateException("Foram encontrados IDs duplicados");
+        }
+    }
+}
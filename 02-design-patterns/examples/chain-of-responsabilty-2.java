@@ -1,17 +1,41 @@
+package examples.patterns.chain;
+
 // Implementação COM Chain of Responsibility
-public class ExpenseApprovalChain {
+class ExpenseApprovalChain {
     
+    // O valor exato fica em centavos (long); o double é mantido para a cadeia,
+    // que compara com limites em double. Somas devem usar getAmountCents.
     public static class Expense {
         private String description;
         private double amount;
+        private long amountCents;
         
         public Expense(String description, double amount) {
+            this(description, amount, Math.round(amount * 100));
+        }
+        
+        private Expense(String description, double amount, long amountCents) {
             this.description = description;
             this.amount = amount;
+            this.amountCents = amountCents;
+        }
+        
+        // Valor exato em centavos, sem passar por double
+        public static Expense ofCents(String description, long amountCents) {
+            return new Expense(description, amountCents / 100.0, amountCents);
         }
         
         public String getDescription() { return description; }
         public double getAmount() { return amount; }
+        public long getAmountCents() { return amountCents; }
+    }
+    
+    // Valor NaN não é aprovado por nenhum nível nem passa por regras customizadas:
+    // a cadeia, a versão compilada e o lote o recusam com este motivo
+    static final String INVALID_AMOUNT_REASON = "Valor inválido (NaN)";
+    
+    static void rejectInvalid(Expense expense) {
+        System.out.println("Recusada: " + expense.getDescription() + " - " + INVALID_AMOUNT_REASON);
     }
     
     // Handler abstrato
@@ -22,51 +46,76 @@ public class ExpenseApprovalChain {
             this.nextHandler = handler;
         }
         
+        public ApprovalHandler getNext() {
+            return nextHandler;
+        }
+        
         public abstract void approve(Expense expense);
     }
     
-    // Handlers concretos
-    public static class SupervisorHandler extends ApprovalHandler {
+    // Handler com limite fixo: aprova até o limite, acima disso repassa.
+    // Expor o limite permite compilar a cadeia numa tabela (ver CompiledApprovalChain).
+    public static abstract class ThresholdApprovalHandler extends ApprovalHandler {
+        private final double limit;
+        private final String approver;
+        
+        protected ThresholdApprovalHandler(double limit, String approver) {
+            this.limit = limit;
+            this.approver = approver;
+        }
+        
+        public double getLimit() { return limit; }
+        public String getApprover() { return approver; }
+        
         @Override
         public void approve(Expense expense) {
-            if (expense.getAmount() <= 1000) {
-                System.out.println("Supervisor aprovou: " + expense.getDescription() 
-                                 + " - R$" + expense.getAmount());
+            if (Double.isNaN(expense.getAmount())) {
+                rejectInvalid(expense);
+            } else if (expense.getAmount() <= limit) {
+                decide(expense);
             } else if (nextHandler != null) {
                 nextHandler.approve(expense);
             }
         }
+        
+        // Decisão final deste nível, sem consultar o resto da cadeia
+        public void decide(Expense expense) {
+            System.out.println(approver + " aprovou: " + expense.getDescription() 
+                             + " - R$" + expense.getAmount());
+        }
     }
     
-    public static class ManagerHandler extends ApprovalHandler {
-        @Override
-        public void approve(Expense expense) {
-            if (expense.getAmount() <= 5000) {
-                System.out.println("Gerente aprovou: " + expense.getDescription() 
-                                 + " - R$" + expense.getAmount());
-            } else if (nextHandler != null) {
-                nextHandler.approve(expense);
-            }
+    // Handlers concretos
+    public static class SupervisorHandler extends ThresholdApprovalHandler {
+        public SupervisorHandler() {
+            super(1000, "Supervisor");
         }
     }
     
-    public static class DirectorHandler extends ApprovalHandler {
-        @Override
-        public void approve(Expense expense) {
-            if (expense.getAmount() <= 10000) {
-                System.out.println("Diretor aprovou: " + expense.getDescription() 
-                                 + " - R$" + expense.getAmount());
-            } else if (nextHandler != null) {
-                nextHandler.approve(expense);
-            }
+    public static class ManagerHandler extends ThresholdApprovalHandler {
+        public ManagerHandler() {
+            super(5000, "Gerente");
         }
     }
     
-    public static class PresidentHandler extends ApprovalHandler {
+    public static class DirectorHandler extends ThresholdApprovalHandler {
+        public DirectorHandler() {
+            super(10000, "Diretor");
+        }
+    }
+    
+    public static class PresidentHandler extends ThresholdApprovalHandler {
+        public PresidentHandler() {
+            super(Double.POSITIVE_INFINITY, "Presidente");
+        }
+        
         @Override
         public void approve(Expense expense) {
-            System.out.println("Presidente aprovou: " + expense.getDescription() 
-                             + " - R$" + expense.getAmount());
+            if (Double.isNaN(expense.getAmount())) {
+                rejectInvalid(expense);
+            } else {
+                decide(expense);
+            }
         }
     }
     
@@ -85,9 +134,30 @@ public class ExpenseApprovalChain {
         Expense exp1 = new Expense("Material de escritório", 500);
         Expense exp2 = new Expense("Novo servidor", 8000);
         Expense exp3 = new Expense("Reforma do prédio", 50000);
+        // Valor inválido: recusado igual nos três caminhos
+        Expense exp4 = new Expense("Importação com erro", Double.NaN);
         
         supervisor.approve(exp1);
         supervisor.approve(exp2);
         supervisor.approve(exp3);
+        supervisor.approve(exp4);
+        
+        // Mesma cadeia compilada: busca binária nos limites em vez de percorrer a lista
+        System.out.println("\n=== Cadeia compilada ===");
+        CompiledApprovalChain compiled = new CompiledApprovalChain(supervisor);
+        compiled.approve(exp1);
+        compiled.approve(exp2);
+        compiled.approve(exp3);
+        compiled.approve(exp4);
+        
+        // Lote: decisões estruturadas e totais por aprovador, sem imprimir cada despesa
+        System.out.println("\n=== Aprovação em lote ===");
+        BulkApprovalService bulk = new BulkApprovalService(compiled);
+        BulkApprovalResult result = bulk.approveAll(java.util.List.of(exp1, exp2, exp3, exp4));
+        for (ApprovalDecision decision : result.getDecisions()) {
+            System.out.println(decision.getApprover() + " - R$" + decision.getAmount() 
+                             + " (" + decision.getReason() + ")");
+        }
+        System.out.print(result.getSummary());
     }
 }
@@ -1,8 +1,22 @@
- // Interface Observer
+package examples.patterns.observer;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Implementação COM Observer Pattern
+class TemperatureMonitorObserver {
+    
+    // Interface Observer
     public interface TemperatureObserver {
         void update(double temperature);
     }
     
+    // Observer em lote: recebe uma janela de leituras de uma vez (ver TemperatureFeed).
+    // O array é reutilizado entre janelas; só as count primeiras posições são válidas.
+    public interface BatchTemperatureObserver {
+        void update(double[] temperatures, int count);
+    }
+    
     // Interface Subject
     public interface TemperatureSubject {
         void registerObserver(TemperatureObserver observer);
@@ -11,34 +25,68 @@
     }
     
     // Concrete Subject
+    // Registro copy-on-write sem lock: cada alteração publica um novo array via CAS,
+    // e a notificação percorre o snapshot que leu, mesmo com registros concorrentes
     public static class TemperatureSensor implements TemperatureSubject {
-        private List<TemperatureObserver> observers;
-        private double temperature;
+        private static final TemperatureObserver[] NONE = new TemperatureObserver[0];
         
-        public TemperatureSensor() {
-            this.observers = new ArrayList<>();
-        }
+        private final AtomicReference<TemperatureObserver[]> observers = new AtomicReference<>(NONE);
+        private volatile double temperature;
         
         @Override
         public void registerObserver(TemperatureObserver observer) {
-            observers.add(observer);
+            TemperatureObserver[] current;
+            TemperatureObserver[] updated;
+            do {
+                current = observers.get();
+                updated = Arrays.copyOf(current, current.length + 1);
+                updated[current.length] = observer;
+            } while (!observers.compareAndSet(current, updated));
         }
         
         @Override
         public void removeObserver(TemperatureObserver observer) {
-            observers.remove(observer);
+            TemperatureObserver[] current;
+            TemperatureObserver[] updated;
+            do {
+                current = observers.get();
+                int index = indexOf(current, observer);
+                if (index < 0) {
+                    return;
+                }
+                updated = new TemperatureObserver[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, index);
+                System.arraycopy(current, index + 1, updated, index, updated.length - index);
+            } while (!observers.compareAndSet(current, updated));
         }
         
         @Override
         public void notifyObservers() {
-            for (TemperatureObserver observer : observers) {
-                observer.update(temperature);
-            }
+            notifyObservers(temperature);
         }
         
         public void setTemperature(double temp) {
             this.temperature = temp;
-            notifyObservers();
+            notifyObservers(temp);
+        }
+        
+        public int getObserverCount() {
+            return observers.get().length;
+        }
+        
+        private void notifyObservers(double value) {
+            for (TemperatureObserver observer : observers.get()) {
+                observer.update(value);
+            }
+        }
+        
+        private static int indexOf(TemperatureObserver[] array, TemperatureObserver observer) {
+            for (int i = 0; i < array.length; i++) {
+                if (array[i].equals(observer)) {
+                    return i;
+                }
+            }
+            return -1;
         }
         
         public double getTemperature() {
@@ -47,11 +95,19 @@
     }
     
     // Concrete Observers
-    public static class Display implements TemperatureObserver {
+    public static class Display implements TemperatureObserver, BatchTemperatureObserver {
         @Override
         public void update(double temperature) {
             System.out.println("Display: Temperatura atual é " + temperature + "°C");
         }
+        
+        // O display só mostra a leitura mais recente da janela
+        @Override
+        public void update(double[] temperatures, int count) {
+            if (count > 0) {
+                update(temperatures[count - 1]);
+            }
+        }
     }
     
     public static class AlarmSystem implements TemperatureObserver {
@@ -65,11 +121,29 @@
         }
     }
     
-    public static class Logger implements TemperatureObserver {
+    public static class Logger implements TemperatureObserver, BatchTemperatureObserver {
         @Override
         public void update(double temperature) {
             System.out.println("Logger: Registrando temperatura " + temperature + "°C");
         }
+        
+        // Uma linha por janela: quantidade, mínima, média e máxima
+        @Override
+        public void update(double[] temperatures, int count) {
+            if (count == 0) {
+                return;
+            }
+            double min = temperatures[0];
+            double max = temperatures[0];
+            double sum = 0;
+            for (int i = 0; i < count; i++) {
+                min = Math.min(min, temperatures[i]);
+                max = Math.max(max, temperatures[i]);
+                sum += temperatures[i];
+            }
+            System.out.printf("Logger: %d leituras, mín %.1f°C, média %.1f°C, máx %.1f°C%n",
+                              count, min, sum / count, max);
+        }
     }
     
     public static class MobileApp implements TemperatureObserver {
@@ -104,5 +178,41 @@
         
         System.out.println("\n=== Mudança de temperatura para 40°C ===");
         sensor.setTemperature(40);
+        
+        // App lento isolado em fila própria: o sensor não espera por ele
+        System.out.println("\n=== App Mobile assíncrono ===");
+        sensor.removeObserver(mobileApp);
+        try (AsyncTemperatureObserver asyncApp =
+                 new AsyncTemperatureObserver(mobileApp, 16, OverflowPolicy.DROP_OLDEST)) {
+            sensor.registerObserver(asyncApp);
+            sensor.setTemperature(42);
+            sensor.removeObserver(asyncApp);
+        }
+        
+        // Alta frequência: 10 mil leituras viram uma linha por janela no Logger
+        // e só a leitura mais recente no Display
+        System.out.println("\n=== Feed conflacionado e em lote ===");
+        TemperatureSensor fastSensor = new TemperatureSensor();
+        try (TemperatureFeed feed = new TemperatureFeed(16_384)) {
+            fastSensor.registerObserver(feed);
+            feed.subscribeBatch(logger, 2_500, java.time.Duration.ofMillis(100));
+            feed.subscribeLatest(display);
+            for (int i = 0; i < 10_000; i++) {
+                fastSensor.setTemperature(20 + (i % 100) / 10.0);
+            }
+        }
+        
+        // Regras indexadas no lugar de um AlarmSystem por limite
+        System.out.println("\n=== Motor de regras de alarme ===");
+        AlarmRuleEngine rules = new AlarmRuleEngine((rule, sensorId, value, raised) ->
+            System.out.println((raised ? "Alarme " : "Normalizado ") + rule + ": " + value + "°C"));
+        rules.replaceRules(java.util.List.of(
+            AlarmRule.above(1, 1, 30).withHysteresis(1),
+            AlarmRule.below(2, 1, 10).withDebounce(2)));
+        TemperatureSensor ruledSensor = new TemperatureSensor();
+        ruledSensor.registerObserver(rules.observer(1));
+        for (double temperature : new double[] {25, 31, 29.5, 28, 9, 8}) {
+            ruledSensor.setTemperature(temperature);
+        }
     }
 }
@@ -1,21 +1,44 @@
+package examples.patterns.template;
+
 // Implementação COM Template Method
-public class DocumentProcessorTemplate {
+class DocumentProcessorTemplate {
     
     // Classe abstrata com o Template Method
     public static abstract class DocumentProcessor {
         
         // Template Method - define o esqueleto do algoritmo
         public final void processDocument(String filename) {
-            openDocument(filename);
-            validateFormat();
-            extractContent();
-            processContent();
-            performSpecificOperations();
-            saveResult();
-            closeDocument();
+            runStep(DocumentStep.OPEN, filename);
+            runStep(DocumentStep.VALIDATE, filename);
+            runStep(DocumentStep.EXTRACT, filename);
+            runStep(DocumentStep.PROCESS, filename);
+            runStep(DocumentStep.SPECIFIC_OPERATIONS, filename);
+            runStep(DocumentStep.SAVE, filename);
+            runStep(DocumentStep.CLOSE, filename);
             System.out.println();
         }
         
+        // Executa um único passo do template e registra sua latência por tipo de
+        // processador. Também usado pelo DocumentPipeline, que roda cada passo como
+        // um estágio; a ordem dos passos continua definida em processDocument.
+        // Passos que lançam exceção também entram na latência: costumam ser os lentos.
+        final void runStep(DocumentStep step, String filename) {
+            long start = System.nanoTime();
+            try {
+                switch (step) {
+                    case OPEN -> openDocument(filename);
+                    case VALIDATE -> validateFormat();
+                    case EXTRACT -> extractContent();
+                    case PROCESS -> processContent();
+                    case SPECIFIC_OPERATIONS -> performSpecificOperations();
+                    case SAVE -> saveResult();
+                    case CLOSE -> closeDocument();
+                }
+            } finally {
+                DocumentStepMetrics.shared().record(getClass(), step, System.nanoTime() - start, filename);
+            }
+        }
+        
         // Métodos concretos (comuns a todos)
         private void openDocument(String filename) {
             System.out.println("Abrindo documento: " + filename);
@@ -112,5 +135,18 @@ public class DocumentProcessorTemplate {
         pdfProcessor.processDocument("relatorio.pdf");
         wordProcessor.processDocument("proposta.docx");
         excelProcessor.processDocument("planilha.xlsx");
+        
+        // Mesmos processadores em pipeline: cada passo é um estágio com seus workers,
+        // então os passos de documentos diferentes se intercalam na saída
+        System.out.println("=== Pipeline ===");
+        try (DocumentPipeline pipeline = new DocumentPipeline(16, 2, 2)) {
+            pipeline.submit(pdfProcessor, "relatorio.pdf");
+            pipeline.submit(wordProcessor, "proposta.docx");
+            pipeline.submit(excelProcessor, "planilha.xlsx");
+        }
+        
+        // Latência de cada passo por tipo de processador (também exposta via JMX)
+        System.out.println();
+        System.out.print(DocumentStepMetrics.shared().dump());
     }
 }
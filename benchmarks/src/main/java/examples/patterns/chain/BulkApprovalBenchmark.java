@@ -0,0 +1,84 @@
+package examples.patterns.chain;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Lote inteiro: despacho sequencial pela tabela x fork/join com totais por aprovador
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BulkApprovalBenchmark {
+
+    @Param({"100000", "1000000"})
+    int batchSize;
+
+    private CompiledApprovalChain compiled;
+    private BulkApprovalService bulk;
+    private List<ExpenseApprovalChain.Expense> expenses;
+    private PrintStream originalOut;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        ExpenseApprovalChain.ApprovalHandler supervisor = new ExpenseApprovalChain.SupervisorHandler();
+        ExpenseApprovalChain.ApprovalHandler manager = new ExpenseApprovalChain.ManagerHandler();
+        ExpenseApprovalChain.ApprovalHandler director = new ExpenseApprovalChain.DirectorHandler();
+        ExpenseApprovalChain.ApprovalHandler president = new ExpenseApprovalChain.PresidentHandler();
+        supervisor.setNext(manager);
+        manager.setNext(director);
+        director.setNext(president);
+        compiled = new CompiledApprovalChain(supervisor);
+        bulk = new BulkApprovalService(compiled);
+
+        ExpenseApprovalChain.Expense[] array = new ExpenseApprovalChain.Expense[batchSize];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = new ExpenseApprovalChain.Expense("Despesa " + i, (i * 7919L) % 20_000);
+        }
+        expenses = Arrays.asList(array);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(originalOut);
+    }
+
+    @Benchmark
+    public void sequentialApprove() {
+        for (ExpenseApprovalChain.Expense expense : expenses) {
+            compiled.approve(expense);
+        }
+    }
+
+    @Benchmark
+    public void bulkApprove(Blackhole blackhole) {
+        blackhole.consume(bulk.approveAll(expenses));
+    }
+
+    @Benchmark
+    public long bulkSummarize() {
+        return bulk.summarizeAll(expenses).getTotalCount();
+    }
+}
@@ -0,0 +1,93 @@
+package examples.patterns.chain;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Lista encadeada x tabela compilada numa cadeia com muitos níveis
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xss16m")
+@State(Scope.Thread)
+public class CompiledApprovalChainBenchmark {
+
+    @Param({"4", "100", "1000"})
+    int levels;
+
+    private ExpenseApprovalChain.ApprovalHandler linked;
+    private CompiledApprovalChain compiled;
+    private ExpenseApprovalChain.Expense[] expenses;
+    private int cursor;
+    private PrintStream originalOut;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        ExpenseApprovalChain.ApprovalHandler head = null;
+        ExpenseApprovalChain.ApprovalHandler tail = null;
+        for (int i = 1; i <= levels; i++) {
+            ExpenseApprovalChain.ApprovalHandler level = i == levels
+                ? new ExpenseApprovalChain.PresidentHandler()
+                : new ThresholdLevel(i * 1000.0);
+            if (head == null) {
+                head = level;
+            } else {
+                tail.setNext(level);
+            }
+            tail = level;
+        }
+        linked = head;
+        compiled = new CompiledApprovalChain(head);
+
+        // Valores espalhados por todos os níveis
+        expenses = new ExpenseApprovalChain.Expense[1024];
+        for (int i = 0; i < expenses.length; i++) {
+            expenses[i] = new ExpenseApprovalChain.Expense("Despesa " + i, (i * 7919L) % (levels * 1000L));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(originalOut);
+    }
+
+    @Benchmark
+    public void linkedList() {
+        linked.approve(next());
+    }
+
+    @Benchmark
+    public void compiledTable() {
+        compiled.approve(next());
+    }
+
+    private ExpenseApprovalChain.Expense next() {
+        int i = cursor;
+        cursor = (i + 1) & (expenses.length - 1);
+        return expenses[i];
+    }
+
+    static final class ThresholdLevel extends ExpenseApprovalChain.ThresholdApprovalHandler {
+        ThresholdLevel(double limit) {
+            super(limit, "Nível " + (long) limit);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package examples.patterns.chain;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Despacho pela cadeia; o valor define quantos handlers são percorridos
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ExpenseApprovalChainBenchmark {
+
+    @Param({"500", "8000", "50000"})
+    double amount;
+
+    private ExpenseApprovalChain.ApprovalHandler chain;
+    private ExpenseApprovalChain.Expense expense;
+    private PrintStream originalOut;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // Os handlers imprimem o veredito; o console ficaria dominando a medição
+        originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        ExpenseApprovalChain.ApprovalHandler supervisor = new ExpenseApprovalChain.SupervisorHandler();
+        ExpenseApprovalChain.ApprovalHandler manager = new ExpenseApprovalChain.ManagerHandler();
+        ExpenseApprovalChain.ApprovalHandler director = new ExpenseApprovalChain.DirectorHandler();
+        ExpenseApprovalChain.ApprovalHandler president = new ExpenseApprovalChain.PresidentHandler();
+        supervisor.setNext(manager);
+        manager.setNext(director);
+        director.setNext(president);
+
+        chain = supervisor;
+        expense = new ExpenseApprovalChain.Expense("Despesa de benchmark", amount);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(originalOut);
+    }
+
+    @Benchmark
+    public void approve() {
+        chain.approve(expense);
+    }
+}
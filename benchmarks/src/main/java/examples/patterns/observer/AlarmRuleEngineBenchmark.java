@@ -0,0 +1,74 @@
+package examples.patterns.observer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Uma leitura contra N regras de limite do mesmo sensor:
+// um observer por regra no sensor x AlarmRuleEngine indexado
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AlarmRuleEngineBenchmark {
+
+    @Param({"100", "10000"})
+    int rules;
+
+    private TemperatureMonitorObserver.TemperatureSensor perRuleObservers;
+    private AlarmRuleEngine engine;
+    private double temperature;
+    private long timestamp;
+
+    @Setup(Level.Trial)
+    public void setUp(Blackhole blackhole) {
+        Random random = new Random(42);
+        perRuleObservers = new TemperatureMonitorObserver.TemperatureSensor();
+        List<AlarmRule> list = new ArrayList<>();
+        for (int i = 0; i < rules; i++) {
+            double threshold = random.nextDouble() * 1000;
+            list.add(i % 2 == 0 ? AlarmRule.above(i, 1, threshold) : AlarmRule.below(i, 1, threshold));
+            boolean above = i % 2 == 0;
+            perRuleObservers.registerObserver(value -> {
+                if (above ? value > threshold : value < threshold) {
+                    blackhole.consume(value);
+                }
+            });
+        }
+        engine = new AlarmRuleEngine((rule, sensorId, value, raised) -> blackhole.consume(rule));
+        engine.replaceRules(list);
+    }
+
+    // Oscila devagar: a maior parte das leituras não cruza limite nenhum
+    private double next() {
+        temperature = temperature >= 1000 ? 0 : temperature + 0.01;
+        return temperature;
+    }
+
+    @Benchmark
+    public void observerPerRule() {
+        perRuleObservers.setTemperature(next());
+    }
+
+    @Benchmark
+    public void indexedEngine() {
+        engine.onReading(1, timestamp += 10, next());
+    }
+}
@@ -0,0 +1,64 @@
+package examples.patterns.observer;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Custo de setTemperature com um observer lento entre observers rápidos:
+// entrega síncrona x o observer lento isolado em AsyncTemperatureObserver
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AsyncTemperatureObserverBenchmark {
+
+    @Param({"false", "true"})
+    boolean async;
+
+    private TemperatureMonitorObserver.TemperatureSensor sensor;
+    private AsyncTemperatureObserver isolated;
+    private double temperature;
+
+    @Setup(Level.Trial)
+    public void setUp(Blackhole blackhole) {
+        sensor = new TemperatureMonitorObserver.TemperatureSensor();
+        TemperatureMonitorObserver.TemperatureObserver slow = value -> Blackhole.consumeCPU(20_000);
+        if (async) {
+            isolated = new AsyncTemperatureObserver(slow, 1024, OverflowPolicy.DROP_OLDEST);
+            sensor.registerObserver(isolated);
+        } else {
+            sensor.registerObserver(slow);
+        }
+        for (int i = 0; i < 4; i++) {
+            sensor.registerObserver(blackhole::consume);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (isolated != null) {
+            isolated.close();
+        }
+    }
+
+    @Benchmark
+    public void setTemperature() {
+        temperature = temperature > 50 ? 0 : temperature + 0.5;
+        sensor.setTemperature(temperature);
+    }
+}
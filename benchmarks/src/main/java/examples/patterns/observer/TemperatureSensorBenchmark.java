@@ -0,0 +1,47 @@
+package examples.patterns.observer;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// notifyObservers com 1..10k observers que só consomem o valor
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TemperatureSensorBenchmark {
+
+    @Param({"1", "10", "100", "1000", "10000"})
+    int observers;
+
+    private TemperatureMonitorObserver.TemperatureSensor sensor;
+    private double temperature;
+
+    @Setup(Level.Trial)
+    public void setUp(Blackhole blackhole) {
+        sensor = new TemperatureMonitorObserver.TemperatureSensor();
+        for (int i = 0; i < observers; i++) {
+            sensor.registerObserver(blackhole::consume);
+        }
+    }
+
+    @Benchmark
+    public void setTemperature() {
+        temperature = temperature > 50 ? 0 : temperature + 0.5;
+        sensor.setTemperature(temperature);
+    }
+}
@@ -0,0 +1,27 @@
+package examples.patterns.strategy;
+
+import java.io.IOException;
+
+// Utilitários compartilhados pelos benchmarks do pacote
+final class BenchmarkSupport {
+    private BenchmarkSupport() {
+    }
+
+    // Mantém a publicação no ring buffer (faz parte do caminho medido), mas descarta na drenagem
+    static void silenceEvents() {
+        PaymentEvents.install(new RingBufferPaymentEventSink(1 << 16, new PaymentEventDrainer() {
+            @Override
+            public void onEvent(PaymentEventType type, long timestampMillis, long amountCents,
+                                long id, Object subject) {
+            }
+
+            @Override
+            public void flush() throws IOException {
+            }
+
+            @Override
+            public void close() throws IOException {
+            }
+        }));
+    }
+}
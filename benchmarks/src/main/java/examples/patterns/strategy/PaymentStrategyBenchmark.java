@@ -0,0 +1,65 @@
+package examples.patterns.strategy;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// processPayment de cada estratégia concreta
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PaymentStrategyBenchmark {
+
+    @Param({"CREDIT_CARD", "PIX", "PAYPAL", "BOLETO"})
+    String method;
+
+    private PaymentStrategy strategy;
+    private final BigDecimal amount = new BigDecimal("1234.56");
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkSupport.silenceEvents();
+        switch (method) {
+            case "CREDIT_CARD":
+                strategy = new CreditCardPaymentStrategy("1234567890123456", "Gabriel Silva", "123", "12/25");
+                break;
+            case "PIX":
+                strategy = new PixPaymentStrategy("gabriel@example.com");
+                break;
+            case "PAYPAL":
+                strategy = new PayPalPaymentStrategy("gabriel@paypal.com", "password");
+                break;
+            case "BOLETO":
+                strategy = new BoletoPaymentStrategy("123.456.789-00");
+                break;
+            default:
+                throw new IllegalArgumentException("Método desconhecido: " + method);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        PaymentEvents.shutdown();
+    }
+
+    @Benchmark
+    public Object processPayment() {
+        return strategy.processPayment(amount);
+    }
+}
@@ -0,0 +1,73 @@
+package examples.patterns.strategy;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// BR Code via template pré-computado x montagem por concatenação de Strings
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PixBrCodeBenchmark {
+    private static final String KEY = "123e4567-e12b-12d1-a456-426655440000";
+    private static final String NAME = "LOJA EXEMPLO";
+    private static final String CITY = "SAO PAULO";
+
+    private final PixBrCodeTemplate template = PixBrCodeTemplate.forKey(KEY, NAME, CITY);
+    private final byte[] buffer = new byte[PixBrCodeTemplate.MAX_PAYLOAD_BYTES];
+    private final BigDecimal amount = new BigDecimal("350.00");
+    private long txid = 369565540710088704L;
+
+    @Benchmark
+    public int templateIntoBuffer() {
+        return template.write(35_000, txid++, buffer, 0);
+    }
+
+    @Benchmark
+    public String templateToString() {
+        return template.toPayload(35_000, txid++);
+    }
+
+    @Benchmark
+    public String stringConcatenation() {
+        return concatPayload(KEY, NAME, CITY, amount, Long.toString(txid++));
+    }
+
+    // Abordagem ingênua: cada campo vira uma String e o CRC é calculado bit a bit
+    static String concatPayload(String key, String name, String city, BigDecimal amount, String txid) {
+        String account = tlv("00", "br.gov.bcb.pix") + tlv("01", key);
+        String payload = tlv("00", "01") + tlv("26", account) + tlv("52", "0000") + tlv("53", "986")
+            + tlv("54", amount.toPlainString()) + tlv("58", "BR") + tlv("59", name)
+            + tlv("60", city) + tlv("62", tlv("05", txid)) + "6304";
+        return payload + String.format("%04X", crc16(payload.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    private static String tlv(String id, String value) {
+        return id + String.format("%02d", value.length()) + value;
+    }
+
+    private static int crc16(byte[] data) {
+        int crc = 0xFFFF;
+        for (byte b : data) {
+            crc ^= (b & 0xFF) << 8;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+            }
+            crc &= 0xFFFF;
+        }
+        return crc;
+    }
+}
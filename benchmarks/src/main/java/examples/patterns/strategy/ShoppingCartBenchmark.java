@@ -0,0 +1,90 @@
+package examples.patterns.strategy;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// ShoppingCart.addItem / getTotal / checkout em função do tamanho do carrinho
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ShoppingCartBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    int cartSize;
+
+    private ShoppingCart cart;
+    private String[] names;
+    private BigDecimal[] prices;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkSupport.silenceEvents();
+        names = new String[cartSize];
+        prices = new BigDecimal[cartSize];
+        cart = new ShoppingCart();
+        for (int i = 0; i < cartSize; i++) {
+            names[i] = "item-" + i;
+            prices[i] = BigDecimal.valueOf(1_000 + i, 2);
+            cart.addItem(names[i], prices[i]);
+        }
+        // Recusar o pagamento mantém o carrinho cheio entre as chamadas de checkout
+        cart.setPaymentStrategy(new DecliningPaymentStrategy());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        PaymentEvents.shutdown();
+    }
+
+    @Benchmark
+    public int addItem() {
+        int i = cursor;
+        cursor = i + 1 == cartSize ? 0 : i + 1;
+        cart.addItem(names[i], prices[i]);
+        return i;
+    }
+
+    @Benchmark
+    public BigDecimal getTotal() {
+        return cart.getTotal();
+    }
+
+    @Benchmark
+    public Object checkout() {
+        return cart.checkout();
+    }
+
+    static final class DecliningPaymentStrategy implements PaymentStrategy {
+        private final PaymentResult declined =
+            new PaymentResult(false, new TransactionId("BENCH", 1), "Recusado", LocalDateTime.now());
+
+        @Override
+        public PaymentResult processPayment(BigDecimal amount) {
+            return declined;
+        }
+
+        @Override
+        public String getPaymentMethodName() {
+            return "Benchmark";
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package examples.patterns.template;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Lote de documentos: processDocument sequencial x DocumentPipeline.
+// Validar espera 200 us (simula leitura do disco); extrair e processar gastam CPU.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DocumentPipelineBenchmark {
+
+    @Param({"200"})
+    int documents;
+
+    private DocumentProcessorTemplate.DocumentProcessor processor;
+    private PrintStream originalOut;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        processor = new SimulatedProcessor();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(originalOut);
+    }
+
+    @Benchmark
+    public void sequential() {
+        for (int i = 0; i < documents; i++) {
+            processor.processDocument("doc-" + i);
+        }
+    }
+
+    @Benchmark
+    public void pipeline() {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[documents];
+        try (DocumentPipeline pipeline = new DocumentPipeline(64, 4, 4)) {
+            for (int i = 0; i < documents; i++) {
+                futures[i] = pipeline.submit(processor, "doc-" + i);
+            }
+        }
+        CompletableFuture.allOf(futures).join();
+    }
+
+    static final class SimulatedProcessor extends DocumentProcessorTemplate.DocumentProcessor {
+        @Override
+        protected void validateFormat() {
+            LockSupport.parkNanos(200_000);
+        }
+
+        @Override
+        protected void extractContent() {
+            Blackhole.consumeCPU(20_000);
+        }
+
+        @Override
+        protected void processContent() {
+            Blackhole.consumeCPU(20_000);
+        }
+    }
+}